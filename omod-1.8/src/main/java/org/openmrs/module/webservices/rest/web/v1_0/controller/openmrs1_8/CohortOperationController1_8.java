@@ -0,0 +1,150 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Cohort;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.util.CompressedBitmap;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestUtil;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.CohortBitmapCache1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.CohortResource1_8;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Combines cohorts with union, intersection or difference. The member ids of the cohorts are taken
+ * from the {@link CohortBitmapCache1_8}, so no patients are loaded. A GET returns the number of
+ * members of the result and a POST saves the result as a new cohort.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/cohortoperation")
+public class CohortOperationController1_8 extends BaseRestController {
+	
+	public static final String UNION = "union";
+	
+	public static final String INTERSECTION = "intersection";
+	
+	public static final String DIFFERENCE = "difference";
+	
+	/**
+	 * @param operation one of union, intersection or difference
+	 * @param cohortUuids the cohorts to combine, the difference removes all but the first from the
+	 *            first one
+	 * @return the number of members of the result
+	 * @throws ResponseException
+	 * @should return the member count of the union of cohorts
+	 * @should return the member count of the intersection of cohorts
+	 * @should return the member count of the difference of cohorts
+	 * @should fail for an unknown operation
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public SimpleObject count(@RequestParam("operation") String operation, @RequestParam("cohorts") String[] cohortUuids)
+	        throws ResponseException {
+		CompressedBitmap members = evaluate(operation, Arrays.asList(cohortUuids));
+		SimpleObject ret = new SimpleObject();
+		ret.add("operation", operation);
+		ret.add("cohorts", cohortUuids);
+		ret.add("memberCount", members.getCardinality());
+		return ret;
+	}
+	
+	/**
+	 * @param post with the operation, the cohorts to combine and the name and (optional) description
+	 *            of the new cohort
+	 * @param response
+	 * @return the new cohort
+	 * @throws ResponseException
+	 * @should save the result as a new cohort
+	 */
+	@RequestMapping(method = RequestMethod.POST)
+	@ResponseBody
+	public Object create(@RequestBody SimpleObject post, HttpServletResponse response) throws ResponseException {
+		String operation = (String) post.get("operation");
+		List<String> cohortUuids = new ArrayList<String>();
+		if (post.get("cohorts") instanceof List) {
+			for (Object cohortUuid : (List<?>) post.get("cohorts")) {
+				cohortUuids.add(cohortUuid.toString());
+			}
+		}
+		String name = (String) post.get("name");
+		if (StringUtils.isBlank(name))
+			throw new IllegalArgumentException("The name of the new cohort is required");
+		
+		CompressedBitmap members = evaluate(operation, cohortUuids);
+		Set<Integer> memberIds = new HashSet<Integer>(members.getCardinality() * 4 / 3 + 1);
+		for (int memberId : members.toArray()) {
+			memberIds.add(memberId);
+		}
+		
+		Cohort cohort = new Cohort();
+		cohort.setName(name);
+		String description = (String) post.get("description");
+		cohort.setDescription(StringUtils.isBlank(description) ? operation + " of " + StringUtils.join(cohortUuids, ", ")
+		        : description);
+		cohort.setMemberIds(memberIds);
+		cohort = Context.getCohortService().saveCohort(cohort);
+		
+		return RestUtil.created(response, ConversionUtil.convertToRepresentation(cohort, Representation.DEFAULT));
+	}
+	
+	private CompressedBitmap evaluate(String operation, List<String> cohortUuids) {
+		if (!UNION.equals(operation) && !INTERSECTION.equals(operation) && !DIFFERENCE.equals(operation))
+			throw new IllegalArgumentException("The operation must be one of " + UNION + ", " + INTERSECTION + " or "
+			        + DIFFERENCE);
+		if (cohortUuids.size() < 2)
+			throw new IllegalArgumentException("At least two cohorts must be specified");
+		
+		CohortResource1_8 resource = (CohortResource1_8) Context.getService(RestService.class)
+		        .getResourceBySupportedClass(Cohort.class);
+		CompressedBitmap result = null;
+		for (String cohortUuid : cohortUuids) {
+			Cohort cohort = resource.getByUniqueId(cohortUuid);
+			if (cohort == null)
+				throw new ObjectNotFoundException();
+			CompressedBitmap members = CohortBitmapCache1_8.getMembers(cohort);
+			if (result == null) {
+				result = members;
+			} else if (UNION.equals(operation)) {
+				result = result.or(members);
+			} else if (INTERSECTION.equals(operation)) {
+				result = result.and(members);
+			} else {
+				result = result.andNot(members);
+			}
+		}
+		return result;
+	}
+}
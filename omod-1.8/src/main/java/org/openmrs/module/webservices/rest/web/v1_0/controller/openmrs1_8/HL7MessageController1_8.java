@@ -21,17 +21,21 @@ import javax.servlet.http.HttpServletResponse;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.openmrs.api.context.Context;
-import org.openmrs.hl7.HL7Source;
+import org.openmrs.hl7.HL7Constants;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestUtil;
+import org.openmrs.module.webservices.rest.web.RestWriteJournal;
 import org.openmrs.module.webservices.rest.web.api.RestService;
 import org.openmrs.module.webservices.rest.web.response.ConversionException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.module.webservices.rest.web.response.ServiceUnavailableException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceController;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.HL7IngestionQueue1_8;
 import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.HL7MessageResource1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.wrapper.openmrs1_8.IncomingHl7Message1_8;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Controller;
@@ -40,17 +44,18 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.model.Message;
-import ca.uhn.hl7v2.parser.GenericParser;
-import ca.uhn.hl7v2.parser.Parser;
-import ca.uhn.hl7v2.util.Terser;
-
 /**
  * Controller for {@link HL7MessageResource1_8}.
  * <p>
  * It is provided, because we want to support posting plain HL7 messages in addition to those in
  * json.
+ * <p>
+ * If the client asks for an asynchronous response, the message is only parsed and checked before
+ * it is put in the {@link HL7IngestionQueue1_8} and 202 (Accepted) is returned. The queue saves
+ * messages with proxy privileges, so the privilege to add to the HL7 in queue is required up front
+ * and the source of the message must be known to the user. If the queue is full, 503 (Service
+ * Unavailable) is returned with a <code>Retry-After</code> header. If hl7 is journaled, the
+ * message is put in the {@link RestWriteJournal} instead, which survives restarts.
  */
 @Controller
 public class HL7MessageController1_8 extends BaseRestController {
@@ -59,12 +64,19 @@ public class HL7MessageController1_8 extends BaseRestController {
 	@Qualifier("mainResourceController")
 	MainResourceController mainResourceController;
 	
+	@Autowired
+	HL7IngestionQueue1_8 ingestionQueue;
+	
+	@Autowired
+	RestWriteJournal writeJournal;
+	
 	@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/hl7", method = RequestMethod.POST)
 	@ResponseBody
 	public Object create(@RequestBody String hl7, HttpServletRequest request, HttpServletResponse response)
 	        throws ResponseException, JsonParseException, JsonMappingException, IOException {
 		RequestContext context = RestUtil.getRequestContext(request, response);
-		SimpleObject post = new SimpleObject();
+		if (context.isRespondAsync())
+			Context.requirePrivilege(HL7Constants.PRIV_ADD_HL7_IN_QUEUE);
 		
 		if (hl7.trim().startsWith("{")) {
 			//hl7 is wrapped up in a json format
@@ -75,29 +87,29 @@ public class HL7MessageController1_8 extends BaseRestController {
 			}
 		}
 		
-		try {
-			Parser parser = new GenericParser();
-			Message msg = parser.parse(hl7);
-			Terser terser = new Terser(msg);
-			
-			String source = terser.get("MSH-4");
-			String sourceKey = terser.get("MSH-10");
-			
-			post.add("source", source);
-			post.add("sourceKey", sourceKey);
-			post.add("data", hl7);
-			
-			HL7Source hl7Source = Context.getHL7Service().getHL7SourceByName(source);
-			if (hl7Source == null) {
-				throw new ConversionException("The " + source + " source was not recognized");
+		// resolves the source as the current user, failing if it is unknown
+		IncomingHl7Message1_8 message = ingestionQueue.toMessage(hl7);
+		SimpleObject post = new SimpleObject();
+		post.add("source", message.getSource().getName());
+		post.add("sourceKey", message.getSourceKey());
+		post.add("data", hl7);
+		
+		String resourceName = RestConstants.VERSION_1 + "/hl7";
+		if (context.isRespondAsync() && writeJournal.isJournaled(resourceName)) {
+			return writeJournal.accept(resourceName, post, response);
+		} else if (context.isRespondAsync()) {
+			if (!ingestionQueue.offer(message)) {
+				response.addHeader(RestConstants.HEADER_RETRY_AFTER, "1");
+				throw new ServiceUnavailableException("The HL7 ingestion queue is full");
 			}
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			response.addHeader(RestConstants.HEADER_PREFERENCE_APPLIED, RestConstants.PREFER_RESPOND_ASYNC);
+			return new SimpleObject().add("source", message.getSource().getName()).add("sourceKey",
+			    message.getSourceKey()).add("status", "queued");
 		}
-		catch (HL7Exception e) {
-			throw new ConversionException(e.getMessage(), e);
-		}
-		
-		Object created = ((HL7MessageResource1_8) Context.getService(RestService.class).getResourceByName(RestConstants.VERSION_1 + "/hl7")).create(post,
-		    context);
+			
+		Object created = ((HL7MessageResource1_8) Context.getService(RestService.class).getResourceByName(resourceName))
+		        .create(post, context);
 		return RestUtil.created(response, created);
 	}
 	
@@ -0,0 +1,335 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Person;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.UuidResolutionCache;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.ObsResource1_8;
+import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.validator.ValidateUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Creates many obs in one request. The posted object has an <code>obs</code> list, each entry
+ * having the <code>person</code>, <code>concept</code>, <code>obsDatetime</code> and
+ * <code>value</code> and optionally the <code>encounter</code>, <code>location</code>,
+ * <code>comment</code> and <code>accessionNumber</code> of an obs as they would be posted to
+ * {@link ObsResource1_8}.
+ * <p>
+ * The obs are created in chunks of {@link #BATCH_SIZE} posted obs. The concepts, persons, encounters
+ * and locations referenced by a chunk are loaded with one query per type, the chunk is saved in its
+ * own transaction and the session is cleared, so neither the number of transactions nor the size
+ * of the session grows with every obs. Every chunk loads its references again, so that none of
+ * them is used after it was detached by clearing the session. Since these queries bypass the
+ * services, the privileges to view the referenced objects are checked before.
+ * <p>
+ * An obs that cannot be created does not abort the import. If a chunk fails to be saved, its obs
+ * are saved again one per transaction, so that only those that fail are reported. The response
+ * has a <code>results</code> list with either the uuid or the error of each obs, in the posted
+ * order.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/obs/bulk")
+public class ObsBulkController1_8 extends BaseRestController {
+	
+	public static final int BATCH_SIZE = 50;
+	
+	private static final Set<String> SUPPORTED_PROPERTIES = new HashSet<String>(Arrays.asList("person", "concept",
+	    "obsDatetime", "value", "encounter", "location", "comment", "accessionNumber"));
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	@Autowired
+	@Qualifier("transactionManager")
+	PlatformTransactionManager transactionManager;
+	
+	/**
+	 * @param post
+	 * @return the uuid or error of each obs and the number of created and failed obs
+	 * @throws ResponseException
+	 * @should create all valid obs
+	 * @should report errors of invalid obs without aborting the import
+	 * @should load the references of every chunk again after the session is cleared
+	 * @should report only the obs that fail to be saved with their chunk
+	 * @should fail if the user may not view the referenced objects
+	 */
+	@RequestMapping(method = RequestMethod.POST)
+	@ResponseBody
+	public SimpleObject create(@RequestBody SimpleObject post) throws ResponseException {
+		if (!(post.get("obs") instanceof List))
+			throw new IllegalArgumentException("The posted object must have a list of obs");
+		List<?> items = (List<?>) post.get("obs");
+		
+		SimpleObject[] results = new SimpleObject[items.size()];
+		int created = 0;
+		for (int start = 0; start < items.size(); start += BATCH_SIZE) {
+			created += createChunk(items, start, Math.min(start + BATCH_SIZE, items.size()), results);
+			Context.clearSession();
+		}
+		
+		SimpleObject ret = new SimpleObject();
+		ret.add("results", Arrays.asList(results));
+		ret.add("created", created);
+		ret.add("failed", items.size() - created);
+		return ret;
+	}
+	
+	/**
+	 * Creates the obs from start to end in one transaction, with references loaded for them alone
+	 * 
+	 * @param items the posted obs
+	 * @param start the index of the first obs of the chunk
+	 * @param end the index after the last obs of the chunk
+	 * @param results the uuid or error of each obs, set for the obs of the chunk
+	 * @return the number of created obs
+	 */
+	private int createChunk(List<?> items, int start, int end, final SimpleObject[] results) {
+		final Map<Integer, Obs> chunk = new LinkedHashMap<Integer, Obs>();
+		UuidResolutionCache.open();
+		try {
+			References references = new References(items.subList(start, end));
+			for (int i = start; i < end; i++) {
+				try {
+					Obs obs = references.newObs((Map<?, ?>) items.get(i));
+					ValidateUtil.validate(obs);
+					chunk.put(i, obs);
+				}
+				catch (Exception ex) {
+					results[i] = error(ex);
+				}
+			}
+			if (chunk.isEmpty())
+				return 0;
+			
+			try {
+				new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+					
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						for (Map.Entry<Integer, Obs> entry : chunk.entrySet()) {
+							Obs saved = Context.getObsService().saveObs(entry.getValue(), "REST web service");
+							results[entry.getKey()] = new SimpleObject().add("uuid", saved.getUuid());
+						}
+						Context.flushSession();
+					}
+				});
+				return chunk.size();
+			}
+			catch (Exception ex) {
+				// the whole chunk was rolled back, so none of its obs were created
+				log.debug("Failed to save a chunk of obs, saving them one by one", ex);
+				Context.clearSession();
+				return createOneByOne(items, chunk.keySet(), results);
+			}
+		}
+		finally {
+			UuidResolutionCache.close();
+		}
+	}
+	
+	/**
+	 * Creates obs of a chunk that failed to be saved, each in its own transaction
+	 * 
+	 * @param items the posted obs
+	 * @param indexes the indexes of the obs to create
+	 * @param results the uuid or error of each obs, set for the given obs
+	 * @return the number of created obs
+	 */
+	private int createOneByOne(List<?> items, Collection<Integer> indexes, final SimpleObject[] results) {
+		List<Object> chunk = new ArrayList<Object>();
+		for (Integer index : indexes) {
+			chunk.add(items.get(index));
+		}
+		int created = 0;
+		References references = null;
+		for (final Integer index : indexes) {
+			try {
+				if (references == null)
+					references = new References(chunk);
+				final Obs obs = references.newObs((Map<?, ?>) items.get(index));
+				new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+					
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						Obs saved = Context.getObsService().saveObs(obs, "REST web service");
+						Context.flushSession();
+						results[index] = new SimpleObject().add("uuid", saved.getUuid());
+					}
+				});
+				created++;
+			}
+			catch (APIAuthenticationException ex) {
+				throw ex;
+			}
+			catch (Exception ex) {
+				results[index] = error(ex);
+				// neither the session nor the references in it may be used after a rollback
+				Context.clearSession();
+				references = null;
+			}
+		}
+		return created;
+	}
+	
+	private SimpleObject error(Exception ex) {
+		return new SimpleObject().add("error", ex.getMessage());
+	}
+	
+	/**
+	 * Resolves all references of a chunk of posted obs once per distinct uuid. The references are
+	 * only valid until the session is cleared.
+	 */
+	private static class References {
+		
+		private final Map<String, Person> persons;
+		
+		private final Map<String, Concept> concepts;
+		
+		private final Map<String, Encounter> encounters;
+		
+		private final Map<String, Location> locations;
+		
+		public References(List<?> items) {
+			Set<String> personUuids = new HashSet<String>();
+			Set<String> conceptUuids = new HashSet<String>();
+			Set<String> encounterUuids = new HashSet<String>();
+			Set<String> locationUuids = new HashSet<String>();
+			for (Object item : items) {
+				if (item instanceof Map) {
+					Map<?, ?> map = (Map<?, ?>) item;
+					addUuid(personUuids, map.get("person"));
+					addUuid(conceptUuids, map.get("concept"));
+					addUuid(encounterUuids, map.get("encounter"));
+					addUuid(locationUuids, map.get("location"));
+				}
+			}
+			persons = load(Person.class, PrivilegeConstants.VIEW_PATIENTS, personUuids);
+			concepts = load(Concept.class, PrivilegeConstants.VIEW_CONCEPTS, conceptUuids);
+			encounters = load(Encounter.class, PrivilegeConstants.VIEW_ENCOUNTERS, encounterUuids);
+			locations = load(Location.class, PrivilegeConstants.VIEW_LOCATIONS, locationUuids);
+			
+			// the answers of coded obs are concepts too, but can only be told apart once the questions are loaded
+			Set<String> answerUuids = new HashSet<String>();
+			for (Object item : items) {
+				if (item instanceof Map) {
+					Concept concept = concepts.get(((Map<?, ?>) item).get("concept"));
+					if (concept != null && concept.getDatatype().isCoded())
+						addUuid(answerUuids, ((Map<?, ?>) item).get("value"));
+				}
+			}
+			answerUuids.removeAll(concepts.keySet());
+			concepts.putAll(load(Concept.class, PrivilegeConstants.VIEW_CONCEPTS, answerUuids));
+		}
+		
+		public Obs newObs(Map<?, ?> item) throws Exception {
+			for (Object property : item.keySet()) {
+				if (!SUPPORTED_PROPERTIES.contains(property))
+					throw new IllegalArgumentException("The property " + property + " is not supported for bulk creation");
+			}
+			
+			Obs obs = new Obs();
+			obs.setPerson(get(persons, "person", item, true));
+			obs.setConcept(get(concepts, "concept", item, true));
+			obs.setEncounter(get(encounters, "encounter", item, false));
+			obs.setLocation(get(locations, "location", item, false));
+			if (item.get("obsDatetime") == null)
+				throw new IllegalArgumentException("obsDatetime is required");
+			obs.setObsDatetime((Date) ConversionUtil.convert(item.get("obsDatetime"), Date.class));
+			
+			Object value = item.get("value");
+			if (obs.getConcept().getDatatype().isCoded() && concepts.containsKey(value))
+				obs.setValueCoded(concepts.get(value));
+			else
+				ObsResource1_8.setValue(obs, value);
+			
+			if (item.get("comment") != null)
+				obs.setComment(item.get("comment").toString());
+			if (item.get("accessionNumber") != null)
+				obs.setAccessionNumber(item.get("accessionNumber").toString());
+			return obs;
+		}
+		
+		private <T> T get(Map<String, T> loaded, String property, Map<?, ?> item, boolean required) {
+			Object uuid = item.get(property);
+			if (uuid == null) {
+				if (required)
+					throw new IllegalArgumentException(property + " is required");
+				return null;
+			}
+			T object = loaded.get(uuid);
+			if (object == null)
+				throw new APIException("No " + property + " found with uuid " + uuid);
+			return object;
+		}
+		
+		private static void addUuid(Set<String> uuids, Object uuid) {
+			if (uuid instanceof String)
+				uuids.add((String) uuid);
+		}
+		
+		/**
+		 * @throws APIAuthenticationException if the user lacks the privilege to view the objects
+		 */
+		private static <T extends OpenmrsObject> Map<String, T> load(Class<T> type, String privilege, Set<String> uuids) {
+			Map<String, T> loaded = new HashMap<String, T>();
+			if (!uuids.isEmpty()) {
+				// the services would check the privilege, but the query bypasses them
+				if (!Context.hasPrivilege(privilege))
+					throw new APIAuthenticationException("Privilege required: " + privilege);
+				List<T> objects = Context.getService(RestHelperService.class).getObjectsByUuids(type, uuids);
+				for (T object : objects) {
+					loaded.put(object.getUuid(), object);
+				}
+			}
+			return loaded;
+		}
+	}
+}
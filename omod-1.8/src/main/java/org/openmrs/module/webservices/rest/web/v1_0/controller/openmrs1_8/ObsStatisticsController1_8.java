@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Patient;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.CohortResource1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.PatientResource1_8;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Exposes count, min, max, mean and last value of the numeric obs per concept for a patient or a
+ * cohort. The statistics are computed by the database, so no obs are loaded or converted.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/obs/statistics")
+public class ObsStatisticsController1_8 extends BaseRestController {
+	
+	/**
+	 * @param patientUuid the patient whose obs to aggregate (either this or cohortUuid is required)
+	 * @param cohortUuid the cohort whose members' obs to aggregate
+	 * @param conceptUuids the concepts to aggregate (optional, defaults to all)
+	 * @param fromDate the earliest obsDatetime to include (optional)
+	 * @param toDate the latest obsDatetime to include (optional)
+	 * @return the statistics per concept
+	 * @throws ResponseException
+	 * @should return statistics per concept for a patient
+	 * @should return statistics per concept for a cohort
+	 * @should only include obs within the date window
+	 * @should fail if neither patient nor cohort is given
+	 * @should fail if the user may not view obs
+	 * @should fail if the user may not view cohorts
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public SimpleObject get(@RequestParam(value = "patient", required = false) String patientUuid,
+	        @RequestParam(value = "cohort", required = false) String cohortUuid,
+	        @RequestParam(value = "concept", required = false) String[] conceptUuids,
+	        @RequestParam(value = "fromdate", required = false) String fromDate,
+	        @RequestParam(value = "todate", required = false) String toDate) throws ResponseException {
+		if ((patientUuid == null) == (cohortUuid == null))
+			throw new IllegalArgumentException("Exactly one of patient or cohort must be specified");
+		
+		RestService restService = Context.getService(RestService.class);
+		Patient patient = null;
+		Cohort cohort = null;
+		if (patientUuid != null) {
+			patient = ((PatientResource1_8) restService.getResourceBySupportedClass(Patient.class))
+			        .getByUniqueId(patientUuid);
+			if (patient == null)
+				throw new ObjectNotFoundException();
+		} else {
+			cohort = ((CohortResource1_8) restService.getResourceBySupportedClass(Cohort.class)).getByUniqueId(cohortUuid);
+			if (cohort == null)
+				throw new ObjectNotFoundException();
+		}
+		
+		ConceptService conceptService = Context.getConceptService();
+		List<Concept> concepts = null;
+		if (conceptUuids != null) {
+			concepts = new ArrayList<Concept>();
+			for (String conceptUuid : conceptUuids) {
+				Concept concept = conceptService.getConceptByUuid(conceptUuid);
+				if (concept == null)
+					throw new ObjectNotFoundException();
+				concepts.add(concept);
+			}
+		}
+		
+		Date from = (Date) ConversionUtil.convert(fromDate, Date.class);
+		Date to = (Date) ConversionUtil.convert(toDate, Date.class);
+		List<Object[]> rows = Context.getService(RestHelperService.class).getNumericObsStatistics(patient, cohort,
+		    concepts, from, to);
+		
+		List<SimpleObject> results = new ArrayList<SimpleObject>(rows.size());
+		for (Object[] row : rows) {
+			Concept concept = conceptService.getConcept((Integer) row[0]);
+			ConceptNumeric conceptNumeric = conceptService.getConceptNumeric(concept.getConceptId());
+			SimpleObject result = new SimpleObject();
+			result.add("concept", concept.getUuid());
+			result.add("display", concept.getName() != null ? concept.getName().getName() : null);
+			result.add("units", conceptNumeric != null ? conceptNumeric.getUnits() : null);
+			result.add("count", ((Number) row[1]).longValue());
+			result.add("min", row[2]);
+			result.add("max", row[3]);
+			result.add("mean", row[4]);
+			result.add("last", row[5]);
+			result.add("lastObsDatetime", ConversionUtil.convertToRepresentation(row[6], null));
+			results.add(result);
+		}
+		
+		SimpleObject ret = new SimpleObject();
+		ret.add("patient", patientUuid);
+		ret.add("cohort", cohortUuid);
+		ret.add("results", results);
+		return ret;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.ObsResource1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.PatientResource1_8;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Exposes the numeric obs of a patient for a single concept as a compact time series.
+ * <p>
+ * Unlike {@link ObsResource1_8} it does not convert each obs to a representation. Points are
+ * returned as arrays of the form <code>[time, value]</code>, where time is in milliseconds since
+ * the epoch. If the <code>buckets</code> parameter is given and there are more points than
+ * buckets, the series is downsampled into that many equally wide time buckets, each returned as
+ * <code>[bucketStart, min, max, avg, count]</code>.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/obs/timeseries")
+public class ObsTimeSeriesController1_8 extends BaseRestController {
+	
+	public static final List<String> RAW_COLUMNS = Arrays.asList("time", "value");
+	
+	public static final List<String> BUCKET_COLUMNS = Arrays.asList("time", "min", "max", "avg", "count");
+	
+	/**
+	 * @param patientUuid
+	 * @param conceptUuid
+	 * @param fromDate the earliest obsDatetime to include (optional)
+	 * @param toDate the latest obsDatetime to include (optional)
+	 * @param buckets the maximum number of points to return (optional)
+	 * @return the time series
+	 * @throws ResponseException
+	 * @should return all numeric values of the patient for the concept ordered by time
+	 * @should downsample the series if there are more values than buckets
+	 * @should fail if the concept is not numeric
+	 * @should fail if the user may not view obs
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public SimpleObject get(@RequestParam("patient") String patientUuid, @RequestParam("concept") String conceptUuid,
+	        @RequestParam(value = "fromdate", required = false) String fromDate,
+	        @RequestParam(value = "todate", required = false) String toDate,
+	        @RequestParam(value = "buckets", required = false) Integer buckets) throws ResponseException {
+		Patient patient = ((PatientResource1_8) Context.getService(RestService.class).getResourceBySupportedClass(
+		    Patient.class)).getByUniqueId(patientUuid);
+		if (patient == null)
+			throw new ObjectNotFoundException();
+		
+		Concept concept = Context.getConceptService().getConceptByUuid(conceptUuid);
+		if (concept == null)
+			throw new ObjectNotFoundException();
+		if (!concept.isNumeric())
+			throw new IllegalArgumentException("The concept " + conceptUuid + " is not numeric");
+		
+		if (buckets != null && buckets <= 0)
+			throw new IllegalArgumentException("If you specify a number of buckets, it must be >0");
+		
+		Date from = (Date) ConversionUtil.convert(fromDate, Date.class);
+		Date to = (Date) ConversionUtil.convert(toDate, Date.class);
+		List<Object[]> rows = Context.getService(RestHelperService.class).getNumericObsValues(patient, concept, from,
+		    to);
+		
+		ConceptNumeric conceptNumeric = Context.getConceptService().getConceptNumeric(concept.getConceptId());
+		
+		SimpleObject ret = new SimpleObject();
+		ret.add("patient", patient.getUuid());
+		ret.add("concept", concept.getUuid());
+		ret.add("units", conceptNumeric != null ? conceptNumeric.getUnits() : null);
+		if (buckets != null && rows.size() > buckets) {
+			ret.add("columns", BUCKET_COLUMNS);
+			ret.add("data", downsample(rows, buckets));
+		} else {
+			ret.add("columns", RAW_COLUMNS);
+			ret.add("data", toPoints(rows));
+		}
+		return ret;
+	}
+	
+	/**
+	 * @param rows { Date, Double } rows ordered by date
+	 * @return a list of <code>[time, value]</code> points
+	 */
+	static List<Object[]> toPoints(List<Object[]> rows) {
+		List<Object[]> points = new ArrayList<Object[]>(rows.size());
+		for (Object[] row : rows) {
+			points.add(new Object[] { ((Date) row[0]).getTime(), row[1] });
+		}
+		return points;
+	}
+	
+	/**
+	 * Splits the time range covered by rows into equally wide buckets and aggregates the values
+	 * in each of them. Empty buckets are omitted.
+	 *
+	 * @param rows { Date, Double } rows ordered by date
+	 * @param buckets the number of buckets
+	 * @return a list of <code>[bucketStart, min, max, avg, count]</code> points
+	 * @should aggregate values into the given number of buckets
+	 * @should omit empty buckets
+	 */
+	static List<Object[]> downsample(List<Object[]> rows, int buckets) {
+		List<Object[]> points = new ArrayList<Object[]>(buckets);
+		if (rows.isEmpty()) {
+			return points;
+		}
+		
+		long start = ((Date) rows.get(0)[0]).getTime();
+		long end = ((Date) rows.get(rows.size() - 1)[0]).getTime();
+		// round up, so that the last value falls into the last bucket
+		long width = Math.max(1, (end - start) / buckets + 1);
+		
+		int bucket = -1;
+		double min = 0, max = 0, sum = 0;
+		int count = 0;
+		for (Object[] row : rows) {
+			long time = ((Date) row[0]).getTime();
+			double value = ((Number) row[1]).doubleValue();
+			int current = (int) ((time - start) / width);
+			if (current != bucket) {
+				if (count > 0) {
+					points.add(new Object[] { start + bucket * width, min, max, sum / count, count });
+				}
+				bucket = current;
+				min = value;
+				max = value;
+				sum = 0;
+				count = 0;
+			}
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sum += value;
+			count++;
+		}
+		points.add(new Object[] { start + bucket * width, min, max, sum / count, count });
+		return points;
+	}
+}
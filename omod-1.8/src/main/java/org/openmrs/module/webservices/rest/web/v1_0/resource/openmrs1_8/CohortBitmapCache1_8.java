@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openmrs.Cohort;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.util.CompressedBitmap;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Caches the member ids of saved cohorts as {@link CompressedBitmap}s, so that large cohorts can be
+ * combined and paged through without loading their member sets or patients.
+ * <p>
+ * An entry is reused as long as the date changed of the cohort and its number of members are the
+ * same as when it was built. Dates are only stored to the second, so the count catches members
+ * added or removed elsewhere within the same second. Changes to the membership made through this
+ * module evict the entry right away.
+ */
+public class CohortBitmapCache1_8 {
+	
+	private static final int MAX_ENTRIES = 100;
+	
+	@SuppressWarnings("serial")
+	private static final Map<String, Entry> cache = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16,
+	        0.75f, true) {
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	});
+	
+	/**
+	 * The returned bitmap may be shared with other callers and must not be modified.
+	 * 
+	 * @param cohort
+	 * @return the member ids of the cohort
+	 * @should rebuild the members if their number changed within the same second
+	 */
+	public static CompressedBitmap getMembers(Cohort cohort) {
+		if (cohort.getId() == null) {
+			return CompressedBitmap.of(cohort.getMemberIds());
+		}
+		
+		Date date = cohort.getDateChanged() != null ? cohort.getDateChanged() : cohort.getDateCreated();
+		Long version = date != null ? date.getTime() : null;
+		RestHelperService service = Context.getService(RestHelperService.class);
+		int count = service.getCohortMemberCount(cohort);
+		Entry entry = cache.get(cohort.getUuid());
+		if (entry != null && OpenmrsUtil.nullSafeEquals(entry.version, version)
+		        && entry.members.getCardinality() == count) {
+			return entry.members;
+		}
+		
+		CompressedBitmap members = CompressedBitmap.of(service.getCohortMemberIds(cohort));
+		cache.put(cohort.getUuid(), new Entry(version, members));
+		return members;
+	}
+	
+	/**
+	 * Must be called whenever the membership of a cohort is changed.
+	 * 
+	 * @param cohort
+	 */
+	public static void evict(Cohort cohort) {
+		cache.remove(cohort.getUuid());
+	}
+	
+	public static void clear() {
+		cache.clear();
+	}
+	
+	private static class Entry {
+		
+		private final Long version;
+		
+		private final CompressedBitmap members;
+		
+		public Entry(Long version, CompressedBitmap members) {
+			this.version = version;
+			this.members = members;
+		}
+	}
+}
@@ -14,23 +14,31 @@
 package org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Cohort;
 import org.openmrs.Patient;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
-import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.util.CompressedBitmap;
+import org.openmrs.module.webservices.rest.web.Hyperlink;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.annotation.SubResource;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
 import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingSubResource;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
 import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
@@ -43,16 +51,83 @@ import org.openmrs.module.webservices.rest.web.v1_0.wrapper.openmrs1_8.CohortMem
 public class CohortMemberResource1_8 extends DelegatingSubResource<CohortMember1_8, Cohort, CohortResource1_8> {
 	
 	/**
+	 * An optional request parameter for paging by patient id: only members with a greater patient id
+	 * are returned and the next link continues after the last member of the page.
+	 */
+	public static final String REQUEST_PROPERTY_FOR_AFTER_ID = "afterId";
+	
+	/**
+	 * The property of a post with the uuids of patients to add to the cohort
+	 */
+	public static final String ADD_PATIENTS = "addPatients";
+	
+	/**
+	 * The property of a post with the uuids of patients to remove from the cohort
+	 */
+	public static final String REMOVE_PATIENTS = "removePatients";
+	
+	/**
+	 * Members are ordered by patient id. The page of ids is sliced out of the sorted member ids
+	 * first, so only the patients of that page are loaded, in one query.
+	 * 
 	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingSubResource#doGetAll(java.lang.Object,
 	 *      org.openmrs.module.webservices.rest.web.RequestContext)
+	 * @should return a page of members ordered by patient id
+	 * @should return the members after the given patient id
 	 */
 	@Override
-	public NeedsPaging<CohortMember1_8> doGetAll(Cohort parent, RequestContext context) throws ResponseException {
-		List<CohortMember1_8> members = new ArrayList<CohortMember1_8>();
-		for (Patient cohortMember : Context.getPatientSetService().getPatients(parent.getMemberIds())) {
-			members.add(new CohortMember1_8(cohortMember, parent));
+	public PageableResult doGetAll(Cohort parent, RequestContext context) throws ResponseException {
+		CompressedBitmap memberIds = CohortBitmapCache1_8.getMembers(parent);
+		String afterId = context.getRequest() != null ? context.getParameter(REQUEST_PROPERTY_FOR_AFTER_ID) : null;
+		int offset = context.getStartIndex();
+		if (afterId != null) {
+			try {
+				offset = memberIds.rank(Integer.parseInt(afterId));
+			}
+			catch (NumberFormatException ex) {
+				throw new IllegalArgumentException(REQUEST_PROPERTY_FOR_AFTER_ID + " must be a patient id");
+			}
+		}
+		int[] page = memberIds.select(offset, context.getLimit());
+		final boolean hasMoreResults = offset + page.length < memberIds.getCardinality();
+		
+		List<Integer> pageIds = new ArrayList<Integer>(page.length);
+		for (int id : page) {
+			pageIds.add(id);
+		}
+		Map<Integer, Patient> patients = new HashMap<Integer, Patient>();
+		if (!pageIds.isEmpty()) {
+			for (Patient patient : Context.getPatientSetService().getPatients(pageIds)) {
+				patients.put(patient.getPatientId(), patient);
+			}
+		}
+		List<CohortMember1_8> members = new ArrayList<CohortMember1_8>(page.length);
+		for (Integer id : pageIds) {
+			Patient patient = patients.get(id);
+			if (patient != null) {
+				members.add(new CohortMember1_8(patient, parent));
+			}
+		}
+		
+		if (afterId == null) {
+			return new AlreadyPaged<CohortMember1_8>(context, members, hasMoreResults);
 		}
-		return new NeedsPaging<CohortMember1_8>(members, context);
+		final RequestContext requestContext = context;
+		final AlreadyPaged<CohortMember1_8> results = new AlreadyPaged<CohortMember1_8>(context, members, false);
+		final Integer lastId = page.length > 0 ? page[page.length - 1] : null;
+		return new PageableResult() {
+			
+			@Override
+			public SimpleObject toSimpleObject() throws ResponseException {
+				SimpleObject ret = results.toSimpleObject();
+				if (hasMoreResults) {
+					List<Hyperlink> links = new ArrayList<Hyperlink>();
+					links.add(requestContext.getNextLink(REQUEST_PROPERTY_FOR_AFTER_ID, lastId));
+					ret.add("links", links);
+				}
+				return ret;
+			}
+		};
 	}
 	
 	/**
@@ -167,6 +242,7 @@ public class CohortMemberResource1_8 extends DelegatingSubResource<CohortMember1
 	public void addMemberToCohort(CohortMember1_8 member) {
 		getParent(member).addMember(member.getPatient().getId());
 		Context.getCohortService().saveCohort(getParent(member));
+		CohortBitmapCache1_8.evict(getParent(member));
 	}
 	
 	/**
@@ -175,9 +251,59 @@ public class CohortMemberResource1_8 extends DelegatingSubResource<CohortMember1
 	public void removeMemberFromCohort(CohortMember1_8 member) {
 		getParent(member).removeMember(member.getPatient().getId());
 		Context.getCohortService().saveCohort(getParent(member));
+		CohortBitmapCache1_8.evict(getParent(member));
 	}
 	
 	/**
+	 * Adds all given patients to the cohort and removes all given patients from it, with a single
+	 * save of the cohort.
+	 * 
+	 * @param cohort
+	 * @param addedPatientUuids the uuids of the patients to add (may be null)
+	 * @param removedPatientUuids the uuids of the patients to remove (may be null)
+	 * @return the number of members of the cohort after the change
+	 * @throws ObjectNotFoundException if any of the patients does not exist
+	 * @should add and remove all given patients with a single save
+	 * @should fail if a patient does not exist
+	 */
+	public int updateMembers(Cohort cohort, Collection<String> addedPatientUuids, Collection<String> removedPatientUuids)
+	        throws ObjectNotFoundException {
+		Collection<Integer> added = getPatientIds(addedPatientUuids);
+		Collection<Integer> removed = getPatientIds(removedPatientUuids);
+		cohort.getMemberIds().addAll(added);
+		cohort.getMemberIds().removeAll(removed);
+		Context.getCohortService().saveCohort(cohort);
+		CohortBitmapCache1_8.evict(cohort);
+		return cohort.getMemberIds().size();
+	}
+	
+	private Collection<Integer> getPatientIds(Collection<String> patientUuids) throws ObjectNotFoundException {
+		if (patientUuids == null || patientUuids.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Map<String, Integer> ids = Context.getService(RestHelperService.class).getIdsByUuids(Patient.class, patientUuids);
+		if (ids.size() < new HashSet<String>(patientUuids).size()) {
+			throw new ObjectNotFoundException();
+		}
+		return ids.values();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Collection<String> getUuids(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (!(value instanceof Collection)) {
+			throw new IllegalArgumentException("A list of patient uuids is expected");
+		}
+		return (Collection<String>) value;
+	}
+	
+	/**
+	 * Besides adding a single patient, it supports adding and removing many patients at once when
+	 * the post has lists of patient uuids in {@link #ADD_PATIENTS} and/or {@link #REMOVE_PATIENTS}
+	 * instead of a patient.
+	 * 
 	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingSubResource#create(java.lang.String,
 	 *      org.openmrs.module.webservices.rest.SimpleObject,
 	 *      org.openmrs.module.webservices.rest.web.RequestContext)
@@ -185,11 +311,17 @@ public class CohortMemberResource1_8 extends DelegatingSubResource<CohortMember1
 	@Override
 	public Object create(String parentUniqueId, SimpleObject post, RequestContext context) throws ResponseException {
 		Cohort parent = Context.getCohortService().getCohortByUuid(parentUniqueId);
+		if (post.get("patient") == null && (post.containsKey(ADD_PATIENTS) || post.containsKey(REMOVE_PATIENTS))) {
+			if (parent == null)
+				throw new ObjectNotFoundException();
+			int memberCount = updateMembers(parent, getUuids(post.get(ADD_PATIENTS)), getUuids(post.get(REMOVE_PATIENTS)));
+			return new SimpleObject().add("memberCount", memberCount);
+		}
 		CohortMember1_8 delegate = newDelegate();
 		setParent(delegate, parent);
 		delegate.setPatient(Context.getPatientService().getPatientByUuid(post.get("patient").toString()));
 		delegate = save(delegate);
-		return ConversionUtil.convertToRepresentation(delegate, Representation.DEFAULT);
+		return asCreatedRepresentation(delegate, context);
 	}
 	
 	/**
@@ -135,6 +135,7 @@ public class CohortResource1_8 extends DataDelegatingCrudResource<Cohort> {
 			return;
 		}
 		Context.getCohortService().purgeCohort(cohort);
+		CohortBitmapCache1_8.evict(cohort);
 	}
 	
 	/**
@@ -142,7 +143,9 @@ public class CohortResource1_8 extends DataDelegatingCrudResource<Cohort> {
 	 */
 	@Override
 	public Cohort save(Cohort cohort) {
-		return Context.getCohortService().saveCohort(cohort);
+		cohort = Context.getCohortService().saveCohort(cohort);
+		CohortBitmapCache1_8.evict(cohort);
+		return cohort;
 	}
 	
 	/**
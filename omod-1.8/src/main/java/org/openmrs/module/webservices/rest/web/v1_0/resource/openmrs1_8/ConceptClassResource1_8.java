@@ -88,4 +88,11 @@ public class ConceptClassResource1_8 extends MetadataDelegatingCrudResource<Conc
 		        context);
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
@@ -131,4 +131,11 @@ public class ConceptDatatypeResource1_8 extends MetadataDelegatingCrudResource<C
 		        context);
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
@@ -31,6 +31,7 @@ import org.openmrs.ConceptDescription;
 import org.openmrs.ConceptMap;
 import org.openmrs.ConceptName;
 import org.openmrs.ConceptSearchResult;
+import org.openmrs.ConceptSet;
 import org.openmrs.Drug;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
@@ -42,6 +43,7 @@ import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
 import org.openmrs.module.webservices.rest.web.annotation.PropertySetter;
 import org.openmrs.module.webservices.rest.web.annotation.RepHandler;
 import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
 import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
@@ -279,6 +281,16 @@ public class ConceptResource1_8 extends DelegatingCrudResource<Concept> {
 		return new Concept();
 	}
 	
+	/**
+	 * Refs only show the name, and names are always saved through the concept service
+	 * 
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.BaseDelegatingResource#isRefCacheable()
+	 */
+	@Override
+	protected boolean isRefCacheable() {
+		return true;
+	}
+	
 	/**
 	 * @see DelegatingCrudResource#save(java.lang.Object)
 	 */
@@ -319,6 +331,20 @@ public class ConceptResource1_8 extends DelegatingCrudResource<Concept> {
 		return new NeedsPaging<Concept>(allConcepts, context);
 	}
 	
+	/**
+	 * Lists of refs only show the preferred names, but searches may also use the answers and set
+	 * members
+	 * 
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#getCollectionVersion(org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	protected Object[] getCollectionVersion(RequestContext context) {
+		if (!(context.getRepresentation() instanceof RefRepresentation))
+			return null;
+		return Context.getService(RestHelperService.class).getCollectionVersion(Concept.class, ConceptName.class,
+		    ConceptAnswer.class, ConceptSet.class);
+	}
+	
 	/**
 	 * Concept searches support the following additional query parameters:
 	 * <ul>
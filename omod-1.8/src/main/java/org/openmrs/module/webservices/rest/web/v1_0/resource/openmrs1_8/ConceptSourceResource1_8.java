@@ -158,4 +158,12 @@ public class ConceptSourceResource1_8 extends MetadataDelegatingCrudResource<Con
 		}
 		return new NeedsPaging<ConceptSource>(sources, context);
 	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
@@ -112,4 +112,12 @@ public class EncounterTypeResource1_8 extends MetadataDelegatingCrudResource<Enc
 		return new NeedsPaging<EncounterType>(Context.getEncounterService().findEncounterTypes(context.getParameter("q")),
 		        context);
 	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
@@ -104,4 +104,12 @@ public class FieldTypeResource1_8 extends MetadataDelegatingCrudResource<FieldTy
 	protected NeedsPaging<FieldType> doGetAll(RequestContext context) throws ResponseException {
 		return new NeedsPaging<FieldType>(Context.getFormService().getAllFieldTypes(), context);
 	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
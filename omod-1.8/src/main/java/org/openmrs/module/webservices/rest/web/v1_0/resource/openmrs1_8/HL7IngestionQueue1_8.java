@@ -0,0 +1,327 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.hl7.HL7Constants;
+import org.openmrs.hl7.HL7Source;
+import org.openmrs.module.webservices.rest.web.response.ConversionException;
+import org.openmrs.module.webservices.rest.web.v1_0.wrapper.openmrs1_8.IncomingHl7Message1_8;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.GenericParser;
+import ca.uhn.hl7v2.util.Terser;
+
+/**
+ * Turns plain HL7 messages into {@link IncomingHl7Message1_8}s and optionally queues them, so that
+ * they can be accepted right away and be saved to the HL7 in queue in batches.
+ * <p>
+ * Parsers are expensive to create and not thread safe, so one is kept per thread. The ids of HL7
+ * sources are cached by name and checked against the source they load, so renaming a source does
+ * not require a restart.
+ * <p>
+ * The queue holds at most {@link #CAPACITY} messages. When it is full, {@link #offer} fails and the
+ * caller must tell the sender to retry later. Queued messages are saved by a single background
+ * thread, up to {@link #BATCH_SIZE} of them in one transaction, loading each of their sources once
+ * per batch. If a batch fails, its messages are saved one by one, so that a bad message does not
+ * take the others with it.
+ */
+@Component("hl7IngestionQueue1_8")
+public class HL7IngestionQueue1_8 implements DisposableBean {
+	
+	public static final int CAPACITY = 1000;
+	
+	public static final int BATCH_SIZE = 100;
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private final BlockingQueue<IncomingHl7Message1_8> queue = new ArrayBlockingQueue<IncomingHl7Message1_8>(CAPACITY);
+	
+	private final Map<String, Integer> sourceIds = new ConcurrentHashMap<String, Integer>();
+	
+	private final ThreadLocal<GenericParser> parsers = new ThreadLocal<GenericParser>() {
+		
+		@Override
+		protected GenericParser initialValue() {
+			return new GenericParser();
+		}
+	};
+	
+	@Autowired
+	@Qualifier("transactionManager")
+	PlatformTransactionManager transactionManager;
+	
+	private volatile Thread worker;
+	
+	private boolean workerEnabled = true;
+	
+	/**
+	 * Parses the header of a message and resolves its source
+	 * 
+	 * @param hl7 a plain HL7 message
+	 * @return an unsaved message with the source, source key and data
+	 * @throws ConversionException if the message cannot be parsed or its source is unknown
+	 */
+	public IncomingHl7Message1_8 toMessage(String hl7) throws ConversionException {
+		String sourceName;
+		String sourceKey;
+		try {
+			Message msg = parsers.get().parse(hl7);
+			Terser terser = new Terser(msg);
+			sourceName = terser.get("MSH-4");
+			sourceKey = terser.get("MSH-10");
+		}
+		catch (HL7Exception e) {
+			throw new ConversionException(e.getMessage(), e);
+		}
+		
+		HL7Source source = getSource(sourceName);
+		if (source == null) {
+			throw new ConversionException("The " + sourceName + " source was not recognized");
+		}
+		return new IncomingHl7Message1_8(source, sourceKey, hl7, null);
+	}
+	
+	/**
+	 * @param name
+	 * @return the source with the given name or null if there is none
+	 */
+	public HL7Source getSource(String name) {
+		if (name == null)
+			return null;
+		Integer id = sourceIds.get(name);
+		if (id != null) {
+			HL7Source source = Context.getHL7Service().getHL7Source(id);
+			if (source != null && name.equals(source.getName()))
+				return source;
+			sourceIds.remove(name);
+		}
+		HL7Source source = Context.getHL7Service().getHL7SourceByName(name);
+		if (source != null)
+			sourceIds.put(name, source.getHL7SourceId());
+		return source;
+	}
+	
+	/**
+	 * Queues a message to be saved in the background
+	 * 
+	 * @param message
+	 * @return false if the queue is full
+	 */
+	public boolean offer(IncomingHl7Message1_8 message) {
+		if (!queue.offer(message))
+			return false;
+		startWorker();
+		return true;
+	}
+	
+	/**
+	 * @return the number of messages waiting to be saved
+	 */
+	public int size() {
+		return queue.size();
+	}
+	
+	/**
+	 * Saves all queued messages in the current thread
+	 * 
+	 * @return the number of messages taken from the queue
+	 */
+	public int drain() {
+		int drained = 0;
+		List<IncomingHl7Message1_8> batch = new ArrayList<IncomingHl7Message1_8>(BATCH_SIZE);
+		while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+			drained += batch.size();
+			save(batch);
+			batch.clear();
+		}
+		return drained;
+	}
+	
+	/**
+	 * Whether queued messages are saved by a background thread. If it is disabled, they are only
+	 * saved by {@link #drain()}.
+	 * 
+	 * @param workerEnabled
+	 */
+	public synchronized void setWorkerEnabled(boolean workerEnabled) {
+		this.workerEnabled = workerEnabled;
+		if (workerEnabled && !queue.isEmpty())
+			startWorker();
+		else if (!workerEnabled)
+			stopWorker();
+	}
+	
+	/**
+	 * Stops the background thread and saves the messages that are still queued
+	 * 
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public void destroy() {
+		stopWorker();
+		if (!queue.isEmpty()) {
+			Context.openSession();
+			try {
+				addProxyPrivileges();
+				drain();
+			}
+			catch (Exception ex) {
+				log.error("Failed to save " + queue.size() + " queued HL7 messages", ex);
+			}
+			finally {
+				removeProxyPrivileges();
+				Context.closeSession();
+			}
+		}
+	}
+	
+	private synchronized void startWorker() {
+		if (!workerEnabled || (worker != null && worker.isAlive()))
+			return;
+		worker = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				process();
+			}
+		}, "HL7 ingestion queue");
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	private synchronized void stopWorker() {
+		Thread stopped = worker;
+		if (stopped == null)
+			return;
+		// the worker finishes the batch it is saving and then notices that it has been replaced
+		worker = null;
+		try {
+			stopped.join(TimeUnit.SECONDS.toMillis(30));
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Saves batches of messages as they are queued until the current thread is no longer the worker
+	 */
+	private void process() {
+		List<IncomingHl7Message1_8> batch = new ArrayList<IncomingHl7Message1_8>(BATCH_SIZE);
+		while (worker == Thread.currentThread()) {
+			try {
+				IncomingHl7Message1_8 message = queue.poll(1, TimeUnit.SECONDS);
+				if (message == null)
+					continue;
+				batch.add(message);
+			}
+			catch (InterruptedException ex) {
+				return;
+			}
+			queue.drainTo(batch, BATCH_SIZE - 1);
+			
+			Context.openSession();
+			try {
+				addProxyPrivileges();
+				save(batch);
+			}
+			catch (Exception ex) {
+				log.error("Failed to save a batch of HL7 messages", ex);
+			}
+			finally {
+				removeProxyPrivileges();
+				Context.closeSession();
+			}
+			batch.clear();
+		}
+	}
+	
+	private void save(final List<IncomingHl7Message1_8> batch) {
+		try {
+			new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+				
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					Map<Integer, HL7Source> sources = new HashMap<Integer, HL7Source>();
+					for (IncomingHl7Message1_8 message : batch) {
+						saveInQueue(message, sources);
+					}
+					Context.flushSession();
+				}
+			});
+		}
+		catch (Exception ex) {
+			if (batch.size() == 1) {
+				log.error("Failed to save the HL7 message " + batch.get(0).getSourceKey() + ": " + batch.get(0).getData(),
+				    ex);
+				return;
+			}
+			log.debug("Failed to save a batch of HL7 messages, saving them one by one", ex);
+			for (IncomingHl7Message1_8 message : batch) {
+				save(Collections.singletonList(message));
+			}
+		}
+		finally {
+			Context.clearSession();
+		}
+	}
+	
+	/**
+	 * @param message
+	 * @param sources the sources loaded in this transaction by id, because the queued source may be
+	 *            detached by now
+	 */
+	private void saveInQueue(IncomingHl7Message1_8 message, Map<Integer, HL7Source> sources) {
+		Integer sourceId = message.getSource().getHL7SourceId();
+		HL7Source source = sources.get(sourceId);
+		if (source == null) {
+			source = Context.getHL7Service().getHL7Source(sourceId);
+			sources.put(sourceId, source);
+		}
+		message.setSource(source);
+		Context.getHL7Service().saveHL7InQueue(message.toHL7InQueue());
+	}
+	
+	private void addProxyPrivileges() {
+		Context.addProxyPrivilege(HL7Constants.PRIV_VIEW_HL7_SOURCE);
+		Context.addProxyPrivilege(HL7Constants.PRIV_ADD_HL7_IN_QUEUE);
+	}
+	
+	private void removeProxyPrivileges() {
+		Context.removeProxyPrivilege(HL7Constants.PRIV_VIEW_HL7_SOURCE);
+		Context.removeProxyPrivilege(HL7Constants.PRIV_ADD_HL7_IN_QUEUE);
+	}
+}
@@ -109,4 +109,11 @@ public class LocationTagResource1_8 extends MetadataDelegatingCrudResource<Locat
 		return null;
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
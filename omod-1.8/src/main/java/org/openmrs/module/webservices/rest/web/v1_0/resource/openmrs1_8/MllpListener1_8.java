@@ -0,0 +1,210 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8;
+
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.hl7.HL7Constants;
+import org.openmrs.module.webservices.rest.util.MllpServer;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestUtil;
+import org.openmrs.module.webservices.rest.web.response.ConversionException;
+import org.openmrs.module.webservices.rest.web.v1_0.wrapper.openmrs1_8.IncomingHl7Message1_8;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Accepts HL7 messages over MLLP, so that lab analyzers and interface engines can send them
+ * without an HTTP bridge. It is only started if the
+ * {@link RestConstants#MLLP_PORT_GLOBAL_PROPERTY_NAME} global property is set to a port, which is
+ * read whenever the application context is refreshed, e.g. when the module is started. It binds to
+ * the {@link RestConstants#MLLP_BIND_ADDRESS_GLOBAL_PROPERTY_NAME}, by default the loopback
+ * interface, and only accepts connections from the IPs allowed to use the REST API.
+ * <p>
+ * Messages are handled like those posted asynchronously to the hl7 resource: they are parsed,
+ * their source is checked and they are put in the {@link HL7IngestionQueue1_8}. The sender gets an
+ * <code>AA</code> acknowledgment once a message is queued, <code>AE</code> if it cannot be parsed
+ * or its source is unknown and <code>AR</code> if the queue is full and it should be sent again
+ * later.
+ */
+@Component("mllpListener1_8")
+public class MllpListener1_8 implements MllpServer.Handler, MllpServer.ConnectionFilter,
+        ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+	
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	private final AtomicLong controlIds = new AtomicLong(System.currentTimeMillis());
+	
+	@Autowired
+	HL7IngestionQueue1_8 ingestionQueue;
+	
+	private MllpServer server;
+	
+	private String boundHost;
+	
+	/**
+	 * Starts, stops or moves the listener according to the global property whenever the web
+	 * application context is refreshed
+	 * 
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		try {
+			configure();
+		}
+		catch (Exception ex) {
+			log.warn("Failed to configure the MLLP listener", ex);
+		}
+	}
+	
+	/**
+	 * Makes the listener match the {@link RestConstants#MLLP_PORT_GLOBAL_PROPERTY_NAME} and
+	 * {@link RestConstants#MLLP_BIND_ADDRESS_GLOBAL_PROPERTY_NAME} global properties
+	 * 
+	 * @throws Exception if the port cannot be bound
+	 */
+	public synchronized void configure() throws Exception {
+		String property = Context.getAdministrationService().getGlobalProperty(
+		    RestConstants.MLLP_PORT_GLOBAL_PROPERTY_NAME);
+		Integer port = StringUtils.isBlank(property) ? null : Integer.valueOf(property.trim());
+		String host = StringUtils.trimToNull(Context.getAdministrationService().getGlobalProperty(
+		    RestConstants.MLLP_BIND_ADDRESS_GLOBAL_PROPERTY_NAME));
+		
+		if (server != null && (port == null || port != server.getPort() || !StringUtils.equals(host, boundHost))) {
+			server.stop();
+			server = null;
+			log.info("Stopped the MLLP listener");
+		}
+		if (port != null && server == null) {
+			MllpServer started = new MllpServer(this, CHARSET);
+			started.setConnectionFilter(this);
+			started.start(host, port);
+			server = started;
+			boundHost = host;
+			log.info("Started the MLLP listener on " + started.getAddress() + " port " + port);
+		}
+	}
+	
+	/**
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+	
+	/**
+	 * Called by the {@link MllpServer} in its selector thread, which has no session of its own
+	 * 
+	 * @see org.openmrs.module.webservices.rest.util.MllpServer.ConnectionFilter#isAllowed(java.net.InetAddress)
+	 */
+	@Override
+	public boolean isAllowed(InetAddress address) {
+		Context.openSession();
+		try {
+			return RestUtil.isIpAllowed(address.getHostAddress());
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+	
+	/**
+	 * Called by the {@link MllpServer} in its handler thread, which has no session of its own
+	 * 
+	 * @see org.openmrs.module.webservices.rest.util.MllpServer.Handler#handle(java.lang.String)
+	 */
+	@Override
+	public String handle(String hl7) {
+		Context.openSession();
+		try {
+			Context.addProxyPrivilege(HL7Constants.PRIV_VIEW_HL7_SOURCE);
+			return acknowledge(hl7);
+		}
+		finally {
+			Context.removeProxyPrivilege(HL7Constants.PRIV_VIEW_HL7_SOURCE);
+			Context.closeSession();
+		}
+	}
+	
+	/**
+	 * Queues a message
+	 * 
+	 * @param hl7
+	 * @return the acknowledgment for the sender
+	 * @should accept and queue a message from a known source
+	 * @should return an error acknowledgment if the source does not exist
+	 */
+	public String acknowledge(String hl7) {
+		IncomingHl7Message1_8 message;
+		try {
+			message = ingestionQueue.toMessage(hl7);
+		}
+		catch (ConversionException ex) {
+			return ack(hl7, "AE", ex.getMessage());
+		}
+		if (!ingestionQueue.offer(message))
+			return ack(hl7, "AR", "The HL7 ingestion queue is full, retry later");
+		return ack(hl7, "AA", null);
+	}
+	
+	/**
+	 * Builds an acknowledgment from the header of the received message without parsing it, so that
+	 * even unparsable messages can be answered
+	 */
+	private String ack(String hl7, String code, String text) {
+		String header = hl7 != null && hl7.startsWith("MSH") ? hl7.split("[\r\n]", 2)[0] : "MSH|^~\\&";
+		String separator = header.length() > 3 ? header.substring(3, 4) : "|";
+		String[] fields = header.split(Pattern.quote(separator), -1);
+		
+		StringBuilder ack = new StringBuilder("MSH");
+		// the receiving and sending application and facility swap places
+		append(ack, separator, field(fields, 1), field(fields, 4), field(fields, 5), field(fields, 2), field(fields, 3),
+		    new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()), "", "ACK", String.valueOf(controlIds
+		            .incrementAndGet()), field(fields, 10), field(fields, 11));
+		ack.append('\r').append("MSA");
+		append(ack, separator, code, field(fields, 9));
+		if (text != null)
+			append(ack, separator, text.replace(separator, " ").replace('\r', ' ').replace('\n', ' '));
+		return ack.append('\r').toString();
+	}
+	
+	private static String field(String[] fields, int index) {
+		return index < fields.length ? fields[index] : "";
+	}
+	
+	private static void append(StringBuilder segment, String separator, String... fields) {
+		for (String field : fields) {
+			segment.append(separator).append(field);
+		}
+	}
+}
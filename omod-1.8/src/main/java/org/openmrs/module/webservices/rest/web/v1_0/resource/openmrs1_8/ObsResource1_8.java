@@ -29,6 +29,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.UuidResolutionCache;
 import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
 import org.openmrs.module.webservices.rest.web.annotation.PropertySetter;
 import org.openmrs.module.webservices.rest.web.annotation.Resource;
@@ -243,7 +244,14 @@ public class ObsResource1_8 extends DataDelegatingCrudResource<Obs> {
 	 */
 	@PropertySetter("concept")
 	public static void setConcept(Obs obs, Object value) {
-		obs.setConcept(Context.getConceptService().getConceptByUuid((String) value));
+		String uuid = (String) value;
+		Concept concept = UuidResolutionCache.get(Concept.class, uuid);
+		if (concept == null) {
+			concept = Context.getConceptService().getConceptByUuid(uuid);
+			if (concept != null)
+				UuidResolutionCache.put(Concept.class, uuid, concept);
+		}
+		obs.setConcept(concept);
 	}
 	
 	/**
@@ -253,6 +261,7 @@ public class ObsResource1_8 extends DataDelegatingCrudResource<Obs> {
 	 * @param value
 	 * @throws ParseException
 	 * @throws ConversionException
+	 * @should cache the numeric concept by its uuid
 	 */
 	@PropertySetter("value")
 	public static void setValue(Obs obs, Object value) throws ParseException, ConversionException {
@@ -264,7 +273,12 @@ public class ObsResource1_8 extends DataDelegatingCrudResource<Obs> {
 			} else {
 				if (obs.getConcept().isNumeric()) {
 					//get the actual persistent object rather than the hibernate proxy
-					ConceptNumeric concept = Context.getConceptService().getConceptNumeric(obs.getConcept().getId());
+					String conceptUuid = obs.getConcept().getUuid();
+					ConceptNumeric concept = UuidResolutionCache.get(ConceptNumeric.class, conceptUuid);
+					if (concept == null) {
+						concept = Context.getConceptService().getConceptNumeric(obs.getConcept().getId());
+						UuidResolutionCache.put(ConceptNumeric.class, conceptUuid, concept);
+					}
 					String units = concept.getUnits();
 					if (StringUtils.isNotBlank(units)) {
 						String originalValue = value.toString().trim();
@@ -155,4 +155,11 @@ public class PatientIdentifierTypeResource1_8 extends MetadataDelegatingCrudReso
 		service().purgePatientIdentifierType(delegate);
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
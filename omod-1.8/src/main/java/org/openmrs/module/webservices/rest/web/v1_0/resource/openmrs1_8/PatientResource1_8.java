@@ -24,7 +24,6 @@ import org.openmrs.Person;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
-import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
@@ -174,7 +173,7 @@ public class PatientResource1_8 extends DataDelegatingCrudResource<Patient> {
 		
 		setConvertedProperties(delegate, propertiesToCreate, getCreatableProperties(), true);
 		delegate = save(delegate);
-		return ConversionUtil.convertToRepresentation(delegate, Representation.DEFAULT);
+		return asCreatedRepresentation(delegate, context);
 	}
 	
 	/**
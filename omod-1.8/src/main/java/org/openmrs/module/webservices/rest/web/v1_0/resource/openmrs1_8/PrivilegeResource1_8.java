@@ -141,4 +141,11 @@ public class PrivilegeResource1_8 extends MetadataDelegatingCrudResource<Privile
 		return new NeedsPaging<Privilege>(Context.getUserService().getAllPrivileges(), context);
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
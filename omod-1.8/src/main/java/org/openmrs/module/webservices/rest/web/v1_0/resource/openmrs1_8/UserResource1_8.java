@@ -129,6 +129,15 @@ public class UserResource1_8 extends MetadataDelegatingCrudResource<UserAndPassw
 		return new UserAndPassword1_8();
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.MetadataDelegatingCrudResource#isResponseCacheable()
+	 */
+	@Override
+	public boolean isResponseCacheable() {
+		// users include their person, which is not metadata
+		return false;
+	}
+	
 	/**
 	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#save(java.lang.Object)
 	 */
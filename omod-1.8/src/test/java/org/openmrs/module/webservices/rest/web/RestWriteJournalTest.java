@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.io.File;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Entry;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Status;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests functionality of {@link RestWriteJournal}.
+ */
+public class RestWriteJournalTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String RESOURCE_NAME = RestConstants.VERSION_1 + "/location";
+	
+	@Autowired
+	private RestWriteJournal writeJournal;
+	
+	private LocationService service;
+	
+	private File file;
+	
+	@Before
+	public void before() throws Exception {
+		service = Context.getLocationService();
+		file = File.createTempFile("journal", ".dat");
+		file.delete();
+		writeJournal.setDrainerEnabled(false);
+		writeJournal.open(file, "location");
+	}
+	
+	@After
+	public void after() throws Exception {
+		writeJournal.destroy();
+		writeJournal.setDrainerEnabled(true);
+		file.delete();
+	}
+	
+	private String accept(String name) throws Exception {
+		return (String) writeJournal.accept(RESOURCE_NAME, new SimpleObject().add("name", name),
+		    new MockHttpServletResponse()).get("uuid");
+	}
+	
+	/**
+	 * @see RestWriteJournal#accept(String,SimpleObject,HttpServletResponse)
+	 * @verifies journal the object and apply it when drained
+	 */
+	@Test
+	public void accept_shouldJournalTheObjectAndApplyItWhenDrained() throws Exception {
+		int originalCount = service.getAllLocations().size();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		SimpleObject entry = writeJournal.accept(RESOURCE_NAME, new SimpleObject().add("name", "Journaled location"),
+		    response);
+		
+		Assert.assertEquals(HttpServletResponse.SC_ACCEPTED, response.getStatus());
+		Assert.assertEquals(entry.get("uri"), response.getHeader("Location"));
+		Assert.assertEquals("pending", entry.get("status"));
+		Assert.assertEquals(originalCount, service.getAllLocations().size());
+		
+		Assert.assertEquals(1, writeJournal.drain());
+		Entry applied = writeJournal.getEntry((String) entry.get("uuid"));
+		Assert.assertEquals(Status.APPLIED, applied.getStatus());
+		Assert.assertEquals("Journaled location", service.getLocationByUuid(applied.getResult()).getName());
+	}
+	
+	/**
+	 * @see RestWriteJournal#accept(String,SimpleObject,HttpServletResponse)
+	 * @verifies reject an anonymous user
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void accept_shouldRejectAnAnonymousUser() throws Exception {
+		Context.logout();
+		accept("Journaled location");
+	}
+	
+	/**
+	 * @see RestWriteJournal#drain()
+	 * @verifies give the created object the uuid of the entry
+	 */
+	@Test
+	public void drain_shouldGiveTheCreatedObjectTheUuidOfTheEntry() throws Exception {
+		String uuid = accept("Journaled location");
+		
+		Assert.assertEquals(1, writeJournal.drain());
+		Assert.assertEquals(uuid, writeJournal.getEntry(uuid).getResult());
+		Assert.assertEquals("Journaled location", service.getLocationByUuid(uuid).getName());
+	}
+	
+	/**
+	 * @see RestWriteJournal#drain()
+	 * @verifies not create the object again if the entry was applied before
+	 */
+	@Test
+	public void drain_shouldNotCreateTheObjectAgainIfTheEntryWasAppliedBefore() throws Exception {
+		String uuid = accept("Journaled location");
+		// as if the server stopped after the object was created but before the entry was resolved
+		Location location = new Location();
+		location.setName("Journaled location");
+		location.setUuid(uuid);
+		service.saveLocation(location);
+		int count = service.getAllLocations().size();
+		
+		Assert.assertEquals(1, writeJournal.drain());
+		Assert.assertEquals(Status.APPLIED, writeJournal.getEntry(uuid).getStatus());
+		Assert.assertEquals(uuid, writeJournal.getEntry(uuid).getResult());
+		Assert.assertEquals(count, service.getAllLocations().size());
+	}
+}
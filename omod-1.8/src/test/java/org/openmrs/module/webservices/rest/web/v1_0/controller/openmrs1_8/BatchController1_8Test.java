@@ -0,0 +1,145 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.controller.BatchController;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests functionality of {@link BatchController}.
+ */
+public class BatchController1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	@Autowired
+	private BatchController controller;
+	
+	private SimpleObject operation(String method, String path, SimpleObject body) {
+		return new SimpleObject().add("method", method).add("path", path).add("body", body);
+	}
+	
+	private SimpleObject batch(List<SimpleObject> operations, MockHttpServletResponse response) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest/v1/batch");
+		SimpleObject result = controller.batch(new SimpleObject().add("requests", operations), request, response);
+		Util.log("Batch result", result);
+		return result;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<SimpleObject> getResults(SimpleObject result) {
+		return (List<SimpleObject>) result.get("results");
+	}
+	
+	/**
+	 * @see BatchController#batch(SimpleObject,javax.servlet.http.HttpServletRequest,javax.servlet.http.HttpServletResponse)
+	 * @verifies execute all operations in order
+	 * @verifies resolve references to the uuids of earlier results
+	 */
+	@Test
+	public void batch_shouldExecuteAllOperationsInOrderAndResolveReferencesToEarlierResults() throws Exception {
+		List<SimpleObject> operations = new ArrayList<SimpleObject>();
+		operations.add(operation("POST", "location", new SimpleObject().add("name", "Batch location")));
+		operations.add(operation("POST", "location/${0}", new SimpleObject().add("description", "Created in a batch")));
+		operations.add(operation("GET", "location/${0}", null));
+		
+		SimpleObject result = batch(operations, new MockHttpServletResponse());
+		
+		Assert.assertEquals(false, result.get("rolledBack"));
+		List<SimpleObject> results = getResults(result);
+		Assert.assertEquals(3, results.size());
+		Assert.assertEquals(201, results.get(0).get("status"));
+		Assert.assertEquals(200, results.get(1).get("status"));
+		String uuid = (String) ((Map<?, ?>) results.get(0).get("body")).get("uuid");
+		Assert.assertEquals(uuid, ((Map<?, ?>) results.get(2).get("body")).get("uuid"));
+		
+		Location location = Context.getLocationService().getLocationByUuid(uuid);
+		Assert.assertEquals("Batch location", location.getName());
+		Assert.assertEquals("Created in a batch", location.getDescription());
+	}
+	
+	/**
+	 * @see BatchController#batch(SimpleObject,javax.servlet.http.HttpServletRequest,javax.servlet.http.HttpServletResponse)
+	 * @verifies stop at the first failing operation and report its error
+	 */
+	@Test
+	public void batch_shouldStopAtTheFirstFailingOperationAndReportItsError() throws Exception {
+		List<SimpleObject> operations = new ArrayList<SimpleObject>();
+		operations.add(operation("POST", "location", new SimpleObject().add("name", "Batch location")));
+		operations.add(operation("GET", "location/not-a-location-uuid", null));
+		operations.add(operation("POST", "location", new SimpleObject().add("name", "Another batch location")));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		SimpleObject result = batch(operations, response);
+		
+		Assert.assertEquals(true, result.get("rolledBack"));
+		List<SimpleObject> results = getResults(result);
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals(404, results.get(1).get("status"));
+		Assert.assertEquals(404, response.getStatus());
+	}
+	
+	/**
+	 * @see BatchController#batch(SimpleObject,javax.servlet.http.HttpServletRequest,javax.servlet.http.HttpServletResponse)
+	 * @verifies return the location of a created object in its result and not on the batch response
+	 */
+	@Test
+	public void batch_shouldReturnTheLocationOfACreatedObjectInItsResultAndNotOnTheBatchResponse() throws Exception {
+		List<SimpleObject> operations = new ArrayList<SimpleObject>();
+		operations.add(operation("POST", "location", new SimpleObject().add("name", "Batch location")));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		SimpleObject result = batch(operations, response);
+		
+		SimpleObject created = getResults(result).get(0);
+		String uuid = (String) ((Map<?, ?>) created.get("body")).get("uuid");
+		String location = (String) ((Map<?, ?>) created.get("headers")).get("Location");
+		Assert.assertTrue(location.endsWith("/location/" + uuid));
+		Assert.assertNull(response.getHeader("Location"));
+	}
+	
+	/**
+	 * @see BatchController#batch(SimpleObject,javax.servlet.http.HttpServletRequest,javax.servlet.http.HttpServletResponse)
+	 * @verifies use the params of each operation
+	 */
+	@Test
+	public void batch_shouldUseTheParamsOfEachOperation() throws Exception {
+		String path = "location/" + RestTestConstants1_8.LOCATION_UUID;
+		List<SimpleObject> operations = new ArrayList<SimpleObject>();
+		operations.add(operation("GET", path, null).add("params", new SimpleObject().add("v", "ref")));
+		operations.add(operation("GET", path, null));
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest/v1/batch");
+		request.addParameter("v", "full");
+		
+		SimpleObject result = controller.batch(new SimpleObject().add("requests", operations), request,
+		    new MockHttpServletResponse());
+		
+		List<SimpleObject> results = getResults(result);
+		Assert.assertFalse(((Map<?, ?>) results.get(0).get("body")).containsKey("description"));
+		Assert.assertTrue(((Map<?, ?>) results.get(1).get("body")).containsKey("description"));
+		Assert.assertFalse(((Map<?, ?>) results.get(1).get("body")).containsKey("auditInfo"));
+	}
+}
@@ -13,6 +13,12 @@
  */
 package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Before;
@@ -24,9 +30,13 @@ import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.util.CompressedBitmap;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceControllerTest;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.CohortBitmapCache1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.CohortMemberResource1_8;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.web.bind.annotation.RequestMethod;
 
@@ -48,6 +58,7 @@ public class CohortMemberController1_8Test extends MainResourceControllerTest {
 		this.service = Context.getCohortService();
 		this.patientService = Context.getPatientService();
 		executeDataSet(datasetFilename);
+		CohortBitmapCache1_8.clear();
 	}
 	
 	/**
@@ -107,6 +118,77 @@ public class CohortMemberController1_8Test extends MainResourceControllerTest {
 		Assert.assertEquals(size, Util.getResultsSize(result));
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getAllCohortMembers_shouldReturnAPageOfMembersOrderedByPatientId() throws Exception {
+		// the cohort has the patients 6, 7 and 8
+		MockHttpServletRequest req = request(RequestMethod.GET, getURI() + "/" + getUuid() + "/member");
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_LIMIT, "2");
+		SimpleObject result = deserialize(handle(req));
+		
+		List<Integer> firstPage = getPatientIds(result);
+		Assert.assertEquals(Arrays.asList(6, 7), firstPage);
+		assertStrictlyAscending(firstPage);
+		List<Map<String, String>> links = (List<Map<String, String>>) result.get("links");
+		Assert.assertEquals(1, links.size());
+		String next = links.get(0).get("uri");
+		String afterId = next.substring(next.lastIndexOf(CohortMemberResource1_8.REQUEST_PROPERTY_FOR_AFTER_ID + "=")
+		        + CohortMemberResource1_8.REQUEST_PROPERTY_FOR_AFTER_ID.length() + 1);
+		Assert.assertEquals(firstPage.get(firstPage.size() - 1).toString(), afterId);
+		
+		req = request(RequestMethod.GET, getURI() + "/" + getUuid() + "/member");
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_LIMIT, "2");
+		req.addParameter(CohortMemberResource1_8.REQUEST_PROPERTY_FOR_AFTER_ID, afterId);
+		List<Integer> secondPage = getPatientIds(deserialize(handle(req)));
+		
+		Assert.assertEquals(Arrays.asList(8), secondPage);
+		List<Integer> allPages = new ArrayList<Integer>(firstPage);
+		allPages.addAll(secondPage);
+		assertStrictlyAscending(allPages);
+	}
+	
+	/**
+	 * @param result a page of cohort members in the default representation
+	 * @return the ids of the patients of the members, in the order they were returned
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Integer> getPatientIds(SimpleObject result) {
+		List<Integer> patientIds = new ArrayList<Integer>();
+		for (Map<String, Object> member : (List<Map<String, Object>>) result.get("results")) {
+			String uuid = (String) ((Map<String, Object>) member.get("patient")).get("uuid");
+			patientIds.add(patientService.getPatientByUuid(uuid).getPatientId());
+		}
+		return patientIds;
+	}
+	
+	private void assertStrictlyAscending(List<Integer> patientIds) {
+		for (int i = 1; i < patientIds.size(); i++) {
+			Assert.assertTrue(patientIds + " is not strictly ascending", patientIds.get(i - 1) < patientIds.get(i));
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getAllCohortMembers_shouldReturnTheMembersAfterTheGivenPatientId() throws Exception {
+		// the cohort has the patients 6, 7 and 8
+		MockHttpServletRequest req = request(RequestMethod.GET, getURI() + "/" + getUuid() + "/member");
+		req.addParameter(CohortMemberResource1_8.REQUEST_PROPERTY_FOR_AFTER_ID, "6");
+		SimpleObject result = deserialize(handle(req));
+		
+		Assert.assertEquals(2, Util.getResultsSize(result));
+		Assert.assertNull(result.get("links"));
+		
+		req = request(RequestMethod.GET, getURI() + "/" + getUuid() + "/member");
+		req.addParameter(CohortMemberResource1_8.REQUEST_PROPERTY_FOR_AFTER_ID, "6");
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_LIMIT, "1");
+		result = deserialize(handle(req));
+		
+		Assert.assertEquals(1, Util.getResultsSize(result));
+		List<Map<String, String>> links = (List<Map<String, String>>) result.get("links");
+		Assert.assertEquals(1, links.size());
+		Assert.assertTrue(links.get(0).get("uri").endsWith(CohortMemberResource1_8.REQUEST_PROPERTY_FOR_AFTER_ID + "=7"));
+	}
+	
 	@Test
 	public void addCohortMember_shouldAddCohortMember() throws Exception {
 		
@@ -125,6 +207,37 @@ public class CohortMemberController1_8Test extends MainResourceControllerTest {
 		Assert.assertTrue(cohort.contains(patient));
 	}
 	
+	@Test
+	public void updateCohortMembers_shouldAddAndRemoveAllGivenPatientsWithASingleSave() throws Exception {
+		String addedPatientUuid = "da7f524f-27ce-4bb2-86d6-6d1d05312bd5";
+		
+		SimpleObject attributes = new SimpleObject();
+		attributes.add(CohortMemberResource1_8.ADD_PATIENTS, Arrays.asList(addedPatientUuid));
+		attributes.add(CohortMemberResource1_8.REMOVE_PATIENTS, Arrays.asList(patientUuid));
+		String json = new ObjectMapper().writeValueAsString(attributes);
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI() + "/" + getUuid() + "/member");
+		req.setContent(json.getBytes());
+		SimpleObject result = deserialize(handle(req));
+		
+		Cohort cohort = service.getCohortByUuid(getUuid());
+		Assert.assertEquals(cohort.getMemberIds().size(), result.get("memberCount"));
+		Assert.assertTrue(cohort.contains(patientService.getPatientByUuid(addedPatientUuid)));
+		Assert.assertFalse(cohort.contains(patientService.getPatientByUuid(patientUuid)));
+	}
+	
+	@Test(expected = ObjectNotFoundException.class)
+	public void updateCohortMembers_shouldFailIfAPatientDoesNotExist() throws Exception {
+		SimpleObject attributes = new SimpleObject();
+		attributes.add(CohortMemberResource1_8.ADD_PATIENTS, Arrays.asList("da7f524f-27ce-4bb2-86d6-6d1d05312bd5",
+		    "not-a-patient-uuid"));
+		String json = new ObjectMapper().writeValueAsString(attributes);
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI() + "/" + getUuid() + "/member");
+		req.setContent(json.getBytes());
+		handle(req);
+	}
+	
 	@Test
 	public void removeCohortMember_shouldRemoveCohortMember() throws Exception {
 		
@@ -138,4 +251,25 @@ public class CohortMemberController1_8Test extends MainResourceControllerTest {
 		
 	}
 	
+	/**
+	 * @see CohortBitmapCache1_8#getMembers(Cohort)
+	 * @verifies rebuild the members if their number changed within the same second
+	 */
+	@Test
+	public void getMembers_shouldRebuildTheMembersIfTheirNumberChangedWithinTheSameSecond() throws Exception {
+		// the cohort has the patients 6, 7 and 8
+		Cohort cohort = service.getCohortByUuid(getUuid());
+		Assert.assertEquals(3, CohortBitmapCache1_8.getMembers(cohort).getCardinality());
+		
+		Date dateChanged = cohort.getDateChanged();
+		cohort.addMember(2);
+		service.saveCohort(cohort);
+		// as if the change was made within the same second
+		cohort.setDateChanged(dateChanged);
+		Context.flushSession();
+		
+		CompressedBitmap members = CohortBitmapCache1_8.getMembers(cohort);
+		Assert.assertEquals(4, members.getCardinality());
+		Assert.assertTrue(members.contains(2));
+	}
 }
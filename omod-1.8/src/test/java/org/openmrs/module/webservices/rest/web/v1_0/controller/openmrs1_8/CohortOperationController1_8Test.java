@@ -0,0 +1,119 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.CohortBitmapCache1_8;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests functionality of {@link CohortOperationController1_8}.
+ */
+public class CohortOperationController1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	// members 6, 7 and 8
+	private static final String COHORT_UUID = RestTestConstants1_8.COHORT_UUID;
+	
+	// member 2
+	private static final String OTHER_COHORT_UUID = "c804ee60-ecbc-4d70-abda-1e4f6f64e5b5";
+	
+	@Autowired
+	private CohortOperationController1_8 controller;
+	
+	@Before
+	public void before() throws Exception {
+		executeDataSet("customTestDataset.xml");
+		CohortBitmapCache1_8.clear();
+	}
+	
+	/**
+	 * @see CohortOperationController1_8#count(String,String[])
+	 * @verifies return the member count of the union of cohorts
+	 */
+	@Test
+	public void count_shouldReturnTheMemberCountOfTheUnionOfCohorts() throws Exception {
+		SimpleObject result = controller.count(CohortOperationController1_8.UNION, new String[] { COHORT_UUID,
+		        OTHER_COHORT_UUID });
+		Assert.assertEquals(4, result.get("memberCount"));
+	}
+	
+	/**
+	 * @see CohortOperationController1_8#count(String,String[])
+	 * @verifies return the member count of the intersection of cohorts
+	 */
+	@Test
+	public void count_shouldReturnTheMemberCountOfTheIntersectionOfCohorts() throws Exception {
+		SimpleObject result = controller.count(CohortOperationController1_8.INTERSECTION, new String[] { COHORT_UUID,
+		        OTHER_COHORT_UUID });
+		Assert.assertEquals(0, result.get("memberCount"));
+		
+		result = controller.count(CohortOperationController1_8.INTERSECTION, new String[] { COHORT_UUID, COHORT_UUID });
+		Assert.assertEquals(3, result.get("memberCount"));
+	}
+	
+	/**
+	 * @see CohortOperationController1_8#count(String,String[])
+	 * @verifies return the member count of the difference of cohorts
+	 */
+	@Test
+	public void count_shouldReturnTheMemberCountOfTheDifferenceOfCohorts() throws Exception {
+		SimpleObject result = controller.count(CohortOperationController1_8.DIFFERENCE, new String[] { COHORT_UUID,
+		        OTHER_COHORT_UUID });
+		Assert.assertEquals(3, result.get("memberCount"));
+		
+		result = controller.count(CohortOperationController1_8.DIFFERENCE, new String[] { COHORT_UUID, COHORT_UUID });
+		Assert.assertEquals(0, result.get("memberCount"));
+	}
+	
+	/**
+	 * @see CohortOperationController1_8#count(String,String[])
+	 * @verifies fail for an unknown operation
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void count_shouldFailForAnUnknownOperation() throws Exception {
+		controller.count("xor", new String[] { COHORT_UUID, OTHER_COHORT_UUID });
+	}
+	
+	/**
+	 * @see CohortOperationController1_8#create(SimpleObject,javax.servlet.http.HttpServletResponse)
+	 * @verifies save the result as a new cohort
+	 */
+	@Test
+	public void create_shouldSaveTheResultAsANewCohort() throws Exception {
+		int before = Context.getCohortService().getAllCohorts().size();
+		SimpleObject post = new SimpleObject();
+		post.add("operation", CohortOperationController1_8.UNION);
+		post.add("cohorts", Arrays.asList(COHORT_UUID, OTHER_COHORT_UUID));
+		post.add("name", "B13 all");
+		
+		SimpleObject created = (SimpleObject) controller.create(post, new MockHttpServletResponse());
+		
+		Assert.assertEquals(before + 1, Context.getCohortService().getAllCohorts().size());
+		Cohort cohort = Context.getCohortService().getCohortByUuid((String) created.get("uuid"));
+		Assert.assertEquals("B13 all", cohort.getName());
+		Assert.assertEquals(4, cohort.getMemberIds().size());
+		Assert.assertTrue(cohort.contains(2));
+		Assert.assertTrue(cohort.contains(8));
+	}
+}
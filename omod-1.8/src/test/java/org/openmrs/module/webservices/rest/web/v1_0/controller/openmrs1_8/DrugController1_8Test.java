@@ -27,6 +27,7 @@ import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceControllerTest;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.web.bind.annotation.RequestMethod;
 
 /**
@@ -169,4 +170,11 @@ public class DrugController1_8Test extends MainResourceControllerTest {
 		
 	}
 	
+	@Test
+	public void shouldNotTagADrugWithItsVersionBecauseItIncludesItsConcept() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI() + "/" + getUuid()));
+		
+		Assert.assertNull(response.getHeader(RestConstants.HEADER_ETAG));
+	}
+	
 }
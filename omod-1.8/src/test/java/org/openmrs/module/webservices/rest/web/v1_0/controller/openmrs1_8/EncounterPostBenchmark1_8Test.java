@@ -0,0 +1,92 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.openmrs.Encounter;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.resource.api.CrudResource;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Measures creating encounters with many nested obs through the encounter resource, i.e. the
+ * conversion and binding of the posted object plus saving it. The timings are logged, only the
+ * correctness of the result is asserted. This is a manual benchmark, remove the @Ignore to run it.
+ */
+public class EncounterPostBenchmark1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	private static final Log log = LogFactory.getLog(EncounterPostBenchmark1_8Test.class);
+	
+	private static final int OBS_PER_ENCOUNTER = 60;
+	
+	private static final int WARMUP_ITERATIONS = 5;
+	
+	private static final int ITERATIONS = 20;
+	
+	private SimpleObject encounterWithObs() {
+		List<SimpleObject> obs = new ArrayList<SimpleObject>();
+		for (int i = 0; i < OBS_PER_ENCOUNTER; i++) {
+			if (i % 2 == 0) {
+				// weight in kg
+				obs.add(new SimpleObject().add("concept", "c607c80f-1ea9-4da3-bb88-6276ce8868dd").add("value", 50 + i));
+			} else {
+				// civil status = married
+				obs.add(new SimpleObject().add("concept", "89ca642a-dab6-4f20-b712-e12ca4fc6d36").add("value",
+				    "92afda7c-78c9-47bd-a841-0de0817027d4"));
+			}
+		}
+		return new SimpleObject().add("location", "9356400c-a5a2-4532-8f2b-2361b3446eb8").add("encounterType",
+		    "61ae96f4-6afe-4351-b6f8-cd4fc383cce1").add("encounterDatetime", "2011-01-15").add("patient",
+		    "da7f524f-27ce-4bb2-86d6-6d1d05312bd5").add("provider", "ba1b19c2-3ed6-4f63-b8c0-f762dc8d7562").add("obs", obs);
+	}
+	
+	@Test
+	@Ignore("Manual benchmark, it only logs timings")
+	public void shouldCreateEncountersWithManyObs() throws Exception {
+		CrudResource resource = (CrudResource) Context.getService(RestService.class).getResourceByName(
+		    RestConstants.VERSION_1 + "/encounter");
+		
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			resource.create(encounterWithObs(), new RequestContext());
+		}
+		Context.flushSession();
+		Context.clearSession();
+		
+		long start = System.nanoTime();
+		String uuid = null;
+		for (int i = 0; i < ITERATIONS; i++) {
+			SimpleObject created = (SimpleObject) resource.create(encounterWithObs(), new RequestContext());
+			uuid = (String) created.get("uuid");
+		}
+		Context.flushSession();
+		long elapsed = System.nanoTime() - start;
+		
+		log.info("Created " + ITERATIONS + " encounters with " + OBS_PER_ENCOUNTER + " obs each in " + elapsed
+		        / 1000000 + " ms (" + elapsed / 1000 / ITERATIONS + " us per encounter)");
+		
+		Encounter encounter = Context.getEncounterService().getEncounterByUuid(uuid);
+		Assert.assertEquals(OBS_PER_ENCOUNTER, encounter.getAllObs().size());
+	}
+}
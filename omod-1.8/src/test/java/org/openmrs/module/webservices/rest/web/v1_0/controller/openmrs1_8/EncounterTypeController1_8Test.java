@@ -14,8 +14,12 @@
 package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -26,10 +30,16 @@ import org.openmrs.api.EncounterService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.CacheControlPolicy;
+import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceControllerTest;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.web.bind.annotation.RequestMethod;
 
 /**
@@ -59,6 +69,10 @@ public class EncounterTypeController1_8Test extends MainResourceControllerTest {
 		this.service = Context.getEncounterService();
 	}
 	
+	private boolean isDateChangedMapped() {
+		return Context.getService(RestHelperService.class).isMappedProperty(EncounterType.class, "dateChanged");
+	}
+	
 	@Test
 	public void shouldGetAnEncounterTypeByUuid() throws Exception {
 		MockHttpServletRequest req = request(RequestMethod.GET, getURI() + "/" + getUuid());
@@ -162,4 +176,124 @@ public class EncounterTypeController1_8Test extends MainResourceControllerTest {
 		assertEquals(1, Util.getResultsSize(result));
 		assertEquals(getUuid(), PropertyUtils.getProperty(Util.getResultsList(result).get(0), "uuid"));
 	}
+	
+	@Test
+	public void shouldReturnNotModifiedIfTheClientHasTheCurrentVersionOfAnEncounterType() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI() + "/" + getUuid()));
+		String eTag = (String) response.getHeader(RestConstants.HEADER_ETAG);
+		if (!isDateChangedMapped()) {
+			// updates would not change the version
+			assertNull(eTag);
+			return;
+		}
+		assertNotNull(eTag);
+		
+		MockHttpServletRequest req = request(RequestMethod.GET, getURI() + "/" + getUuid());
+		req.addHeader(RestConstants.HEADER_IF_NONE_MATCH, eTag);
+		response = handle(req);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+		
+		req = request(RequestMethod.DELETE, getURI() + "/" + getUuid());
+		req.addParameter("reason", "none");
+		handle(req);
+		req = request(RequestMethod.GET, getURI() + "/" + getUuid());
+		req.addHeader(RestConstants.HEADER_IF_NONE_MATCH, eTag);
+		response = handle(req);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertFalse(eTag.equals(response.getHeader(RestConstants.HEADER_ETAG)));
+	}
+	
+	@Test
+	public void shouldNotReturnNotModifiedForAnUpdatedEncounterType() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI() + "/" + getUuid()));
+		String eTag = (String) response.getHeader(RestConstants.HEADER_ETAG);
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI() + "/" + getUuid());
+		req.setContent("{ \"description\": \"updated description\" }".getBytes());
+		handle(req);
+		req = request(RequestMethod.GET, getURI() + "/" + getUuid());
+		if (eTag != null)
+			req.addHeader(RestConstants.HEADER_IF_NONE_MATCH, eTag);
+		response = handle(req);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals("updated description", PropertyUtils.getProperty(deserialize(response), "description"));
+	}
+	
+	@Test
+	public void shouldReturnNotModifiedIfTheClientHasTheCurrentListOfEncounterTypes() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI()));
+		String eTag = (String) response.getHeader(RestConstants.HEADER_ETAG);
+		assertNull(response.getHeader(RestConstants.HEADER_LAST_MODIFIED));
+		if (!isDateChangedMapped()) {
+			// updates would not change the version
+			assertNull(eTag);
+			return;
+		}
+		assertNotNull(eTag);
+		
+		MockHttpServletRequest req = request(RequestMethod.GET, getURI());
+		req.addHeader(RestConstants.HEADER_IF_NONE_MATCH, eTag);
+		response = handle(req);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+		
+		req = request(RequestMethod.POST, getURI());
+		req.setContent("{ \"name\": \"test name\", \"description\": \"test description\" }".getBytes());
+		handle(req);
+		req = request(RequestMethod.GET, getURI());
+		req.addHeader(RestConstants.HEADER_IF_NONE_MATCH, eTag);
+		response = handle(req);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(getAllCount(), Util.getResultsSize(deserialize(response)));
+	}
+	
+	@Test
+	public void shouldNotReturnNotModifiedForTheListOfEncounterTypesAfterAnUpdate() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI()));
+		String eTag = (String) response.getHeader(RestConstants.HEADER_ETAG);
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI() + "/" + getUuid());
+		req.setContent("{ \"name\": \"updated name\" }".getBytes());
+		handle(req);
+		req = request(RequestMethod.GET, getURI());
+		if (eTag != null)
+			req.addHeader(RestConstants.HEADER_IF_NONE_MATCH, eTag);
+		response = handle(req);
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		boolean found = false;
+		for (Object encounterType : Util.getResultsList(deserialize(response))) {
+			found |= "updated name".equals(PropertyUtils.getProperty(encounterType, "display"));
+		}
+		assertTrue(found);
+	}
+	
+	@Test
+	public void shouldOnlyLetPrivateCachesStoreEncounterTypesByDefault() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI() + "/" + getUuid()));
+		
+		assertEquals("private, max-age=300", response.getHeader(RestConstants.HEADER_CACHE_CONTROL));
+		assertEquals(CacheControlPolicy.VARY, response.getHeader(RestConstants.HEADER_VARY));
+	}
+	
+	@Test
+	public void shouldNotRevealTheNumberOfEncounterTypesInTheListETag() throws Exception {
+		MockHttpServletResponse response = handle(request(RequestMethod.GET, getURI()));
+		String eTag = (String) response.getHeader(RestConstants.HEADER_ETAG);
+		
+		assertTrue(eTag == null ? !isDateChangedMapped() : eTag.matches("\"[0-9a-f]{64}\""));
+	}
+	
+	@Test
+	public void shouldNotValidateTheListOfEncounterTypesForAnAnonymousUser() throws Exception {
+		DelegatingCrudResource<?> resource = (DelegatingCrudResource<?>) Context.getService(RestService.class)
+		        .getResourceByName(RestConstants.VERSION_1 + "/" + getURI());
+		RequestContext context = new RequestContext();
+		context.setRequest(request(RequestMethod.GET, getURI()));
+		context.setResponse(new MockHttpServletResponse());
+		Context.logout();
+		
+		assertFalse(resource.isCollectionNotModified(context));
+		assertNull(((MockHttpServletResponse) context.getResponse()).getHeader(RestConstants.HEADER_ETAG));
+	}
 }
@@ -13,18 +13,26 @@
  */
 package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
 import org.openmrs.hl7.HL7InQueue;
 import org.openmrs.hl7.HL7Service;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.response.ConversionException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
+import org.openmrs.module.webservices.rest.web.response.ServiceUnavailableException;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceControllerTest;
+import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.HL7IngestionQueue1_8;
+import org.openmrs.module.webservices.rest.web.v1_0.wrapper.openmrs1_8.IncomingHl7Message1_8;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 /**
  * Tests functionality of {@link HL7MessageController1_8}.
@@ -39,10 +47,21 @@ public class HL7MessageController1_8Test extends MainResourceControllerTest {
 	
 	private static final String datasetFilename = "customTestDataset.xml";
 	
+	@Autowired
+	private HL7IngestionQueue1_8 ingestionQueue;
+	
 	@Before
 	public void before() throws Exception {
 		this.service = Context.getHL7Service();
 		executeDataSet(datasetFilename);
+		// queued messages are saved by the tests themselves, within the test transaction
+		ingestionQueue.setWorkerEnabled(false);
+	}
+	
+	@After
+	public void after() throws Exception {
+		ingestionQueue.drain();
+		ingestionQueue.setWorkerEnabled(true);
 	}
 	
 	@Override
@@ -95,6 +114,56 @@ public class HL7MessageController1_8Test extends MainResourceControllerTest {
 		}
 	}
 	
+	@Test
+	public void enqueHl7Message_shouldQueueTheMessageIfAnAsynchronousResponseIsPreferred() throws Exception {
+		int before = service.getAllHL7InQueues().size();
+		
+		MockHttpServletRequest req = newPostRequest(getURI(), hl7Data);
+		req.addHeader(RestConstants.HEADER_PREFER, RestConstants.PREFER_RESPOND_ASYNC);
+		MockHttpServletResponse response = handle(req);
+		SimpleObject result = deserialize(response);
+		
+		Assert.assertEquals(202, response.getStatus());
+		Assert.assertEquals("REl7wt78q9Pzlqe9ecJB", result.get("sourceKey"));
+		Assert.assertEquals(1, ingestionQueue.size());
+		Assert.assertEquals(before, service.getAllHL7InQueues().size());
+		
+		Assert.assertEquals(1, ingestionQueue.drain());
+		Assert.assertEquals(before + 1, service.getAllHL7InQueues().size());
+	}
+	
+	@Test
+	public void enqueHl7Message_shouldAskToRetryLaterIfTheQueueIsFull() throws Exception {
+		IncomingHl7Message1_8 message = ingestionQueue.toMessage(hl7Data);
+		for (int i = 0; i < HL7IngestionQueue1_8.CAPACITY; i++) {
+			Assert.assertTrue(ingestionQueue.offer(message));
+		}
+		
+		MockHttpServletRequest req = newPostRequest(getURI(), hl7Data);
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_ASYNC, "true");
+		try {
+			handle(req);
+			Assert.fail("The message should not have been accepted");
+		}
+		catch (ServiceUnavailableException ex) {
+			Assert.assertEquals(HL7IngestionQueue1_8.CAPACITY, ingestionQueue.size());
+		}
+	}
+	
+	@Test
+	public void enqueHl7Message_shouldNotQueueTheMessageOfAnAnonymousUser() throws Exception {
+		Context.logout();
+		MockHttpServletRequest req = newPostRequest(getURI(), hl7Data);
+		req.addHeader(RestConstants.HEADER_PREFER, RestConstants.PREFER_RESPOND_ASYNC);
+		try {
+			handle(req);
+			Assert.fail("The message should not have been accepted");
+		}
+		catch (APIAuthenticationException ex) {
+			Assert.assertEquals(0, ingestionQueue.size());
+		}
+	}
+	
 	@Test(expected = ConversionException.class)
 	public void enqueHl7Message_shouldFailIfSourceDoesNotExist() throws Exception {
 		SimpleObject hl7Message = new SimpleObject();
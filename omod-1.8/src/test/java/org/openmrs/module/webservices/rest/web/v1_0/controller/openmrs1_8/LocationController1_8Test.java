@@ -13,11 +13,10 @@
  */
 package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
-import javax.servlet.http.HttpServletResponse;
-
 import org.apache.commons.beanutils.PropertyUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Assert;
@@ -28,7 +27,10 @@ import org.openmrs.api.LocationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.impl.MetadataResponseCache;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.MainResourceControllerTest;
@@ -129,6 +131,23 @@ public class LocationController1_8Test extends MainResourceControllerTest {
 		
 	}
 	
+	@Test
+	public void shouldOnlyReturnTheUuidOfACreatedLocationIfAMinimalReturnIsPreferred() throws Exception {
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI());
+		req.addHeader(RestConstants.HEADER_PREFER, "return=minimal");
+		req.setContent("{ \"name\": \"Location name\" }".getBytes());
+		MockHttpServletResponse response = handle(req);
+		SimpleObject result = deserialize(response);
+		
+		Assert.assertEquals(1, result.size());
+		Location location = service.getLocationByUuid((String) result.get("uuid"));
+		Assert.assertEquals("Location name", location.getName());
+		Assert.assertEquals(1, response.getHeaders("Location").size());
+		Assert.assertTrue(((String) response.getHeader("Location")).endsWith(getURI() + "/" + location.getUuid()));
+		
+	}
+	
 	@Test
 	public void shouldEditALocation() throws Exception {
 		
@@ -239,4 +258,71 @@ public class LocationController1_8Test extends MainResourceControllerTest {
 		Assert.assertEquals(service.getLocation(2).getUuid(), PropertyUtils.getProperty(hits.get(0), "uuid"));
 		
 	}
+	
+	@Test
+	public void shouldGetLocationsByAListOfUuidsInTheRequestedOrder() throws Exception {
+		
+		String first = service.getLocation(2).getUuid();
+		String second = service.getLocation(1).getUuid();
+		MockHttpServletRequest req = request(RequestMethod.GET, getURI());
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_UUIDS, first + ",unknown-uuid," + second);
+		SimpleObject result = deserialize(handle(req));
+		
+		List<Object> hits = (List<Object>) result.get("results");
+		Assert.assertEquals(2, hits.size());
+		Assert.assertEquals(first, PropertyUtils.getProperty(hits.get(0), "uuid"));
+		Assert.assertEquals(second, PropertyUtils.getProperty(hits.get(1), "uuid"));
+		Assert.assertEquals(Arrays.asList("unknown-uuid"), result.get("missing"));
+		
+	}
+	
+	@Test
+	public void shouldGetLocationsByAPostedListOfUuids() throws Exception {
+		
+		String uuid = service.getLocation(2).getUuid();
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI());
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_UUIDS, "");
+		req.setContent(new ObjectMapper().writeValueAsBytes(new SimpleObject().add(
+		    RestConstants.REQUEST_PROPERTY_FOR_UUIDS, Arrays.asList(uuid, "unknown-uuid"))));
+		SimpleObject result = deserialize(handle(req));
+		
+		Assert.assertEquals(1, Util.getResultsSize(result));
+		Assert.assertEquals(Arrays.asList("unknown-uuid"), result.get("missing"));
+		
+	}
+	
+	@Test
+	public void shouldCacheARetrievedLocationUntilItIsEdited() throws Exception {
+		SimpleObject before = MetadataResponseCache.getStatistics();
+		
+		deserialize(handle(request(RequestMethod.GET, getURI() + "/" + getUuid())));
+		deserialize(handle(request(RequestMethod.GET, getURI() + "/" + getUuid())));
+		SimpleObject stats = MetadataResponseCache.getStatistics();
+		Assert.assertEquals(1L, ((Number) stats.get("hits")).longValue() - ((Number) before.get("hits")).longValue());
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI() + "/" + getUuid());
+		req.setContent("{ \"name\":\"Xanadu edited\" }".getBytes());
+		handle(req);
+		
+		SimpleObject result = deserialize(handle(request(RequestMethod.GET, getURI() + "/" + getUuid())));
+		Assert.assertEquals("Xanadu edited", PropertyUtils.getProperty(result, "name"));
+	}
+	
+	@Test
+	public void shouldReuseTheRefOfALocationUntilItIsSaved() throws Exception {
+		Location location = service.getLocationByUuid(getUuid());
+		SimpleObject before = (SimpleObject) MetadataResponseCache.getStatistics().get("fragments");
+		
+		ConversionUtil.convertToRepresentation(location, Representation.REF);
+		SimpleObject ref = (SimpleObject) ConversionUtil.convertToRepresentation(location, Representation.REF);
+		SimpleObject fragments = (SimpleObject) MetadataResponseCache.getStatistics().get("fragments");
+		Assert.assertEquals(1L, ((Number) fragments.get("hits")).longValue() - ((Number) before.get("hits")).longValue());
+		Assert.assertEquals(location.getName(), ref.get("display"));
+		
+		MockHttpServletRequest req = request(RequestMethod.POST, getURI() + "/" + getUuid());
+		req.setContent("{ \"name\":\"Xanadu renamed\" }".getBytes());
+		handle(req);
+		ref = (SimpleObject) ConversionUtil.convertToRepresentation(location, Representation.REF);
+		Assert.assertEquals("Xanadu renamed", ref.get("display"));
+	}
 }
@@ -0,0 +1,166 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests functionality of {@link ObsBulkController1_8}.
+ */
+public class ObsBulkController1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String PATIENT_UUID = "5946f880-b197-400b-9caa-a3c661d23041";
+	
+	private static final String WEIGHT_CONCEPT_UUID = "c607c80f-1ea9-4da3-bb88-6276ce8868dd";
+	
+	@Autowired
+	private ObsBulkController1_8 controller;
+	
+	private SimpleObject newObs(String conceptUuid, Object value) {
+		return new SimpleObject().add("person", PATIENT_UUID).add("concept", conceptUuid).add("obsDatetime",
+		    "2012-04-01").add("value", value);
+	}
+	
+	private int countObs() {
+		Patient patient = Context.getPatientService().getPatientByUuid(PATIENT_UUID);
+		return Context.getObsService().getObservationsByPerson(patient).size();
+	}
+	
+	/**
+	 * @see ObsBulkController1_8#create(SimpleObject)
+	 * @verifies create all valid obs
+	 */
+	@Test
+	public void create_shouldCreateAllValidObs() throws Exception {
+		int before = countObs();
+		List<SimpleObject> obs = new ArrayList<SimpleObject>();
+		for (int i = 0; i < ObsBulkController1_8.BATCH_SIZE + 1; i++) {
+			obs.add(newObs(WEIGHT_CONCEPT_UUID, 50 + i));
+		}
+		
+		SimpleObject result = controller.create(new SimpleObject().add("obs", obs));
+		
+		Assert.assertEquals(obs.size(), result.get("created"));
+		Assert.assertEquals(0, result.get("failed"));
+		Assert.assertEquals(before + obs.size(), countObs());
+		@SuppressWarnings("unchecked")
+		List<SimpleObject> results = (List<SimpleObject>) result.get("results");
+		Obs last = Context.getObsService().getObsByUuid((String) results.get(obs.size() - 1).get("uuid"));
+		Assert.assertEquals(50.0 + obs.size() - 1, last.getValueNumeric(), 0);
+	}
+	
+	/**
+	 * @see ObsBulkController1_8#create(SimpleObject)
+	 * @verifies report errors of invalid obs without aborting the import
+	 */
+	@Test
+	public void create_shouldReportErrorsOfInvalidObsWithoutAbortingTheImport() throws Exception {
+		int before = countObs();
+		List<SimpleObject> obs = new ArrayList<SimpleObject>();
+		obs.add(newObs(WEIGHT_CONCEPT_UUID, 70));
+		obs.add(newObs("unknown-concept-uuid", 70));
+		obs.add(newObs(WEIGHT_CONCEPT_UUID, 72));
+		
+		SimpleObject result = controller.create(new SimpleObject().add("obs", obs));
+		Util.log("Bulk obs", result);
+		
+		Assert.assertEquals(2, result.get("created"));
+		Assert.assertEquals(1, result.get("failed"));
+		Assert.assertEquals(before + 2, countObs());
+		@SuppressWarnings("unchecked")
+		List<SimpleObject> results = (List<SimpleObject>) result.get("results");
+		Assert.assertNotNull(results.get(0).get("uuid"));
+		Assert.assertNotNull(results.get(1).get("error"));
+		Assert.assertNotNull(results.get(2).get("uuid"));
+	}
+	
+	/**
+	 * @see ObsBulkController1_8#create(SimpleObject)
+	 * @verifies load the references of every chunk again after the session is cleared
+	 */
+	@Test
+	public void create_shouldLoadTheReferencesOfEveryChunkAgainAfterTheSessionIsCleared() throws Exception {
+		List<SimpleObject> obs = new ArrayList<SimpleObject>();
+		for (int i = 0; i < ObsBulkController1_8.BATCH_SIZE + 1; i++) {
+			obs.add(newObs(WEIGHT_CONCEPT_UUID, 50 + i).add("encounter", RestTestConstants1_8.ENCOUNTER_UUID));
+		}
+		
+		SimpleObject result = controller.create(new SimpleObject().add("obs", obs));
+		
+		Assert.assertEquals(obs.size(), result.get("created"));
+		@SuppressWarnings("unchecked")
+		List<SimpleObject> results = (List<SimpleObject>) result.get("results");
+		Obs last = Context.getObsService().getObsByUuid((String) results.get(obs.size() - 1).get("uuid"));
+		Assert.assertEquals(RestTestConstants1_8.ENCOUNTER_UUID, last.getEncounter().getUuid());
+		Assert.assertEquals(PATIENT_UUID, last.getPerson().getUuid());
+	}
+	
+	/**
+	 * @see ObsBulkController1_8#create(SimpleObject)
+	 * @verifies report only the obs that fail to be saved with their chunk
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void create_shouldReportOnlyTheObsThatFailToBeSavedWithTheirChunk() throws Exception {
+		List<SimpleObject> obs = new ArrayList<SimpleObject>();
+		obs.add(newObs(WEIGHT_CONCEPT_UUID, 70));
+		// valid, but longer than the column, so only saving the chunk fails
+		obs.add(newObs(WEIGHT_CONCEPT_UUID, 71).add("comment", StringUtils.repeat("x", 1000)));
+		obs.add(newObs(WEIGHT_CONCEPT_UUID, 72));
+		
+		SimpleObject result = controller.create(new SimpleObject().add("obs", obs));
+		
+		Assert.assertEquals(2, result.get("created"));
+		Assert.assertEquals(1, result.get("failed"));
+		List<SimpleObject> results = (List<SimpleObject>) result.get("results");
+		Assert.assertEquals(70.0, Context.getObsService().getObsByUuid((String) results.get(0).get("uuid"))
+		        .getValueNumeric(), 0);
+		Assert.assertNotNull(results.get(1).get("error"));
+		Assert.assertEquals(72.0, Context.getObsService().getObsByUuid((String) results.get(2).get("uuid"))
+		        .getValueNumeric(), 0);
+	}
+	
+	/**
+	 * @see ObsBulkController1_8#create(SimpleObject)
+	 * @verifies fail if the user may not view the referenced objects
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void create_shouldFailIfTheUserMayNotViewTheReferencedObjects() throws Exception {
+		List<SimpleObject> obs = new ArrayList<SimpleObject>();
+		obs.add(newObs(WEIGHT_CONCEPT_UUID, 70));
+		Context.logout();
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		try {
+			controller.create(new SimpleObject().add("obs", obs));
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests functionality of {@link ObsStatisticsController1_8}.
+ */
+public class ObsStatisticsController1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String PATIENT_UUID = "5946f880-b197-400b-9caa-a3c661d23041";
+	
+	private static final String WEIGHT_CONCEPT_UUID = "c607c80f-1ea9-4da3-bb88-6276ce8868dd";
+	
+	@Autowired
+	private ObsStatisticsController1_8 controller;
+	
+	@Before
+	public void before() throws Exception {
+		executeDataSet("customTestDataset.xml");
+	}
+	
+	private int countNumericObs(Integer... personIds) {
+		Concept concept = Context.getConceptService().getConceptByUuid(WEIGHT_CONCEPT_UUID);
+		int count = 0;
+		for (Integer personId : personIds) {
+			Person person = Context.getPersonService().getPerson(personId);
+			for (Obs obs : Context.getObsService().getObservationsByPersonAndConcept(person, concept)) {
+				if (!obs.isVoided() && obs.getValueNumeric() != null)
+					count++;
+			}
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private SimpleObject getWeightStatistics(SimpleObject result) {
+		for (SimpleObject statistics : (List<SimpleObject>) result.get("results")) {
+			if (WEIGHT_CONCEPT_UUID.equals(statistics.get("concept")))
+				return statistics;
+		}
+		return null;
+	}
+	
+	/**
+	 * @see ObsStatisticsController1_8#get(String,String,String[],String,String)
+	 * @verifies return statistics per concept for a patient
+	 */
+	@Test
+	public void get_shouldReturnStatisticsPerConceptForAPatient() throws Exception {
+		SimpleObject result = controller.get(PATIENT_UUID, null, new String[] { WEIGHT_CONCEPT_UUID }, null, null);
+		Util.log("Obs statistics", result);
+		
+		Assert.assertEquals(1, Util.getResultsSize(result));
+		SimpleObject weight = getWeightStatistics(result);
+		Assert.assertNotNull(weight);
+		Assert.assertEquals((long) countNumericObs(7), weight.get("count"));
+		double min = (Double) weight.get("min");
+		double max = (Double) weight.get("max");
+		double mean = (Double) weight.get("mean");
+		double last = (Double) weight.get("last");
+		Assert.assertTrue(min <= mean && mean <= max);
+		Assert.assertTrue(min <= last && last <= max);
+		Assert.assertNotNull(weight.get("lastObsDatetime"));
+	}
+	
+	/**
+	 * @see ObsStatisticsController1_8#get(String,String,String[],String,String)
+	 * @verifies return statistics per concept for a cohort
+	 */
+	@Test
+	public void get_shouldReturnStatisticsPerConceptForACohort() throws Exception {
+		SimpleObject result = controller.get(null, RestTestConstants1_8.COHORT_UUID,
+		    new String[] { WEIGHT_CONCEPT_UUID }, null, null);
+		
+		SimpleObject weight = getWeightStatistics(result);
+		Assert.assertNotNull(weight);
+		Assert.assertEquals((long) countNumericObs(6, 7, 8), weight.get("count"));
+	}
+	
+	/**
+	 * @see ObsStatisticsController1_8#get(String,String,String[],String,String)
+	 * @verifies only include obs within the date window
+	 */
+	@Test
+	public void get_shouldOnlyIncludeObsWithinTheDateWindow() throws Exception {
+		SimpleObject result = controller.get(PATIENT_UUID, null, new String[] { WEIGHT_CONCEPT_UUID }, null,
+		    "1900-01-01");
+		
+		Assert.assertEquals(0, Util.getResultsSize(result));
+	}
+	
+	/**
+	 * @see ObsStatisticsController1_8#get(String,String,String[],String,String)
+	 * @verifies fail if neither patient nor cohort is given
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void get_shouldFailIfNeitherPatientNorCohortIsGiven() throws Exception {
+		controller.get(null, null, null, null, null);
+	}
+	
+	/**
+	 * @see ObsStatisticsController1_8#get(String,String,String[],String,String)
+	 * @verifies fail if the user may not view obs
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void get_shouldFailIfTheUserMayNotViewObs() throws Exception {
+		Context.logout();
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_PATIENTS);
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		try {
+			controller.get(PATIENT_UUID, null, new String[] { WEIGHT_CONCEPT_UUID }, null, null);
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_PATIENTS);
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		}
+	}
+	
+	/**
+	 * @see ObsStatisticsController1_8#get(String,String,String[],String,String)
+	 * @verifies fail if the user may not view cohorts
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void get_shouldFailIfTheUserMayNotViewCohorts() throws Exception {
+		Context.logout();
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_OBS);
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		try {
+			controller.get(null, RestTestConstants1_8.COHORT_UUID, new String[] { WEIGHT_CONCEPT_UUID }, null, null);
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_OBS);
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		}
+	}
+}
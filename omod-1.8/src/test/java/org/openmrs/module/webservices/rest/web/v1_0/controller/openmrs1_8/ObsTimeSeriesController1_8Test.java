@@ -0,0 +1,164 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller.openmrs1_8;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.test.Util;
+import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests functionality of {@link ObsTimeSeriesController1_8}.
+ */
+public class ObsTimeSeriesController1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String PATIENT_UUID = "5946f880-b197-400b-9caa-a3c661d23041";
+	
+	private static final String WEIGHT_CONCEPT_UUID = "c607c80f-1ea9-4da3-bb88-6276ce8868dd";
+	
+	private static final String CODED_CONCEPT_UUID = "89ca642a-dab6-4f20-b712-e12ca4fc6d36";
+	
+	@Autowired
+	private ObsTimeSeriesController1_8 controller;
+	
+	private int countNumericObs() {
+		Patient patient = Context.getPatientService().getPatientByUuid(PATIENT_UUID);
+		Concept concept = Context.getConceptService().getConceptByUuid(WEIGHT_CONCEPT_UUID);
+		int count = 0;
+		for (Obs obs : Context.getObsService().getObservationsByPersonAndConcept(patient, concept)) {
+			if (!obs.isVoided() && obs.getValueNumeric() != null)
+				count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * @see ObsTimeSeriesController1_8#get(String,String,String,String,Integer)
+	 * @verifies return all numeric values of the patient for the concept ordered by time
+	 */
+	@Test
+	public void get_shouldReturnAllNumericValuesOfThePatientForTheConceptOrderedByTime() throws Exception {
+		SimpleObject result = controller.get(PATIENT_UUID, WEIGHT_CONCEPT_UUID, null, null, null);
+		Util.log("Obs time series", result);
+		
+		Assert.assertEquals(ObsTimeSeriesController1_8.RAW_COLUMNS, result.get("columns"));
+		@SuppressWarnings("unchecked")
+		List<Object[]> data = (List<Object[]>) result.get("data");
+		Assert.assertEquals(countNumericObs(), data.size());
+		for (int i = 1; i < data.size(); i++) {
+			Assert.assertTrue((Long) data.get(i - 1)[0] <= (Long) data.get(i)[0]);
+		}
+	}
+	
+	/**
+	 * @see ObsTimeSeriesController1_8#get(String,String,String,String,Integer)
+	 * @verifies downsample the series if there are more values than buckets
+	 */
+	@Test
+	public void get_shouldDownsampleTheSeriesIfThereAreMoreValuesThanBuckets() throws Exception {
+		int total = countNumericObs();
+		Assert.assertTrue("The test requires at least 2 weight obs", total > 1);
+		
+		SimpleObject result = controller.get(PATIENT_UUID, WEIGHT_CONCEPT_UUID, null, null, 1);
+		
+		Assert.assertEquals(ObsTimeSeriesController1_8.BUCKET_COLUMNS, result.get("columns"));
+		@SuppressWarnings("unchecked")
+		List<Object[]> data = (List<Object[]>) result.get("data");
+		Assert.assertEquals(1, data.size());
+		Assert.assertEquals(total, data.get(0)[4]);
+	}
+	
+	/**
+	 * @see ObsTimeSeriesController1_8#get(String,String,String,String,Integer)
+	 * @verifies fail if the concept is not numeric
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void get_shouldFailIfTheConceptIsNotNumeric() throws Exception {
+		controller.get(PATIENT_UUID, CODED_CONCEPT_UUID, null, null, null);
+	}
+	
+	/**
+	 * @see ObsTimeSeriesController1_8#downsample(List,int)
+	 * @verifies aggregate values into the given number of buckets
+	 */
+	@Test
+	public void downsample_shouldAggregateValuesIntoTheGivenNumberOfBuckets() throws Exception {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { new Date(0), 1.0 });
+		rows.add(new Object[] { new Date(10), 3.0 });
+		rows.add(new Object[] { new Date(60), 5.0 });
+		rows.add(new Object[] { new Date(100), 9.0 });
+		
+		List<Object[]> points = ObsTimeSeriesController1_8.downsample(rows, 2);
+		
+		Assert.assertEquals(2, points.size());
+		Assert.assertEquals(0L, points.get(0)[0]);
+		Assert.assertEquals(1.0, points.get(0)[1]);
+		Assert.assertEquals(3.0, points.get(0)[2]);
+		Assert.assertEquals(2.0, points.get(0)[3]);
+		Assert.assertEquals(2, points.get(0)[4]);
+		Assert.assertEquals(5.0, points.get(1)[1]);
+		Assert.assertEquals(9.0, points.get(1)[2]);
+		Assert.assertEquals(7.0, points.get(1)[3]);
+		Assert.assertEquals(2, points.get(1)[4]);
+	}
+	
+	/**
+	 * @see ObsTimeSeriesController1_8#downsample(List,int)
+	 * @verifies omit empty buckets
+	 */
+	@Test
+	public void downsample_shouldOmitEmptyBuckets() throws Exception {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { new Date(0), 1.0 });
+		rows.add(new Object[] { new Date(1), 2.0 });
+		rows.add(new Object[] { new Date(1000), 3.0 });
+		
+		List<Object[]> points = ObsTimeSeriesController1_8.downsample(rows, 10);
+		
+		Assert.assertEquals(2, points.size());
+		Assert.assertEquals(2, points.get(0)[4]);
+		Assert.assertEquals(1, points.get(1)[4]);
+	}
+	
+	/**
+	 * @see ObsTimeSeriesController1_8#get(String,String,String,String,Integer)
+	 * @verifies fail if the user may not view obs
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void get_shouldFailIfTheUserMayNotViewObs() throws Exception {
+		Context.logout();
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_PATIENTS);
+		Context.addProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		try {
+			controller.get(PATIENT_UUID, WEIGHT_CONCEPT_UUID, null, null, null);
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_PATIENTS);
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_CONCEPTS);
+		}
+	}
+}
@@ -25,6 +25,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
+import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
@@ -216,4 +217,12 @@ public class PatientController1_8Test extends MainResourceControllerTest {
 		
 		deserialize(handle(newPostRequest(getURI(), json)));
 	}
+	
+	@Test(expected = APIAuthenticationException.class)
+	public void shouldNotRetrievePatientsByUuidsForAnAnonymousUser() throws Exception {
+		Context.logout();
+		MockHttpServletRequest req = request(RequestMethod.GET, getURI());
+		req.addParameter(RestConstants.REQUEST_PROPERTY_FOR_UUIDS, getUuid());
+		handle(req);
+	}
 }
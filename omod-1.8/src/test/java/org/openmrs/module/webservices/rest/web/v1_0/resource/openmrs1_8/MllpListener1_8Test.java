@@ -0,0 +1,78 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Tests functionality of {@link MllpListener1_8}.
+ */
+public class MllpListener1_8Test extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String hl7Data = "MSH|^~\\&|NES|AMRS.ELD|TESTSYSTEM|TESTFACILITY|20010101000000||ADT^A04|REl7wt78q9Pzlqe9ecJB|P|2.3";
+	
+	private static final String hl7InvalidSourceData = "MSH|^~\\&|NES|nonexistingsource|TESTSYSTEM|TESTFACILITY|20010101000000||ADT^A04|REl7wt78q9Pzlqe9ecJB|P|2.3";
+	
+	@Autowired
+	private MllpListener1_8 listener;
+	
+	@Autowired
+	private HL7IngestionQueue1_8 ingestionQueue;
+	
+	@Before
+	public void before() throws Exception {
+		executeDataSet("customTestDataset.xml");
+		ingestionQueue.setWorkerEnabled(false);
+	}
+	
+	@After
+	public void after() throws Exception {
+		ingestionQueue.drain();
+		ingestionQueue.setWorkerEnabled(true);
+	}
+	
+	/**
+	 * @see MllpListener1_8#acknowledge(String)
+	 * @verifies accept and queue a message from a known source
+	 */
+	@Test
+	public void acknowledge_shouldAcceptAndQueueAMessageFromAKnownSource() throws Exception {
+		String ack = listener.acknowledge(hl7Data);
+		
+		String[] segments = ack.split("\r");
+		Assert.assertTrue(segments[0].startsWith("MSH|^~\\&|TESTSYSTEM|TESTFACILITY|NES|AMRS.ELD|"));
+		String[] header = segments[0].split("\\|");
+		Assert.assertEquals("ACK", header[8]);
+		Assert.assertEquals("2.3", header[11]);
+		Assert.assertEquals("MSA|AA|REl7wt78q9Pzlqe9ecJB", segments[1]);
+		Assert.assertEquals(1, ingestionQueue.size());
+	}
+	
+	/**
+	 * @see MllpListener1_8#acknowledge(String)
+	 * @verifies return an error acknowledgment if the source does not exist
+	 */
+	@Test
+	public void acknowledge_shouldReturnAnErrorAcknowledgmentIfTheSourceDoesNotExist() throws Exception {
+		String ack = listener.acknowledge(hl7InvalidSourceData);
+		
+		Assert.assertTrue(ack.split("\r")[1].startsWith("MSA|AE|REl7wt78q9Pzlqe9ecJB|"));
+		Assert.assertEquals(0, ingestionQueue.size());
+	}
+}
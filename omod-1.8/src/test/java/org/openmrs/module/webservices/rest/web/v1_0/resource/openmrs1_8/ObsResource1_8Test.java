@@ -19,12 +19,14 @@ import junit.framework.Assert;
 
 import org.junit.Test;
 import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
 import org.openmrs.Drug;
 import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RestTestConstants1_8;
+import org.openmrs.module.webservices.rest.web.UuidResolutionCache;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.impl.BaseDelegatingResourceTest;
 import org.openmrs.module.webservices.rest.web.v1_0.resource.openmrs1_8.ObsResource1_8;
@@ -136,4 +138,25 @@ public class ObsResource1_8Test extends BaseDelegatingResourceTest<ObsResource1_
 		obs.setValueNumeric(type.equals(ObsType.NUMERIC) ? (Double) value : null);
 		obs.setValueText(type.equals(ObsType.TEXT) ? (String) value : null);
 	}
+	
+	/**
+	 * @see ObsResource1_8#setValue(Obs,Object)
+	 * @verifies cache the numeric concept by its uuid
+	 */
+	@Test
+	public void setValue_shouldCacheTheNumericConceptByItsUuid() throws Exception {
+		Obs obs = new Obs();
+		obs.setConcept(Context.getConceptService().getConcept(5089));
+		UuidResolutionCache.open();
+		try {
+			ObsResource1_8.setValue(obs, "70 kg");
+			
+			Assert.assertTrue(UuidResolutionCache.contains(ConceptNumeric.class, obs.getConcept().getUuid()));
+			Assert.assertFalse(UuidResolutionCache.contains(ConceptNumeric.class, obs.getConcept().getId().toString()));
+		}
+		finally {
+			UuidResolutionCache.close();
+		}
+		Assert.assertEquals(70.0, obs.getValueNumeric(), 0);
+	}
 }
@@ -159,4 +159,12 @@ public class ConceptMapTypeResource1_9 extends MetadataDelegatingCrudResource<Co
 	public String getResourceVersion() {
 		return "1.9";
 	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
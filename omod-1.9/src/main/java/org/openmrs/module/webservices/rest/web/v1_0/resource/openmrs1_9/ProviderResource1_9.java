@@ -113,6 +113,15 @@ public class ProviderResource1_9 extends MetadataDelegatingCrudResource<Provider
 		return new Provider();
 	}
 	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.MetadataDelegatingCrudResource#isResponseCacheable()
+	 */
+	@Override
+	public boolean isResponseCacheable() {
+		// providers include their person, which is not metadata
+		return false;
+	}
+	
 	/**
 	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#save(java.lang.Object)
 	 */
@@ -139,4 +139,12 @@ public class VisitTypeResource1_9 extends MetadataDelegatingCrudResource<VisitTy
 	public String getResourceVersion() {
 		return "1.9";
 	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#isRepresentationSelfContained()
+	 */
+	@Override
+	protected boolean isRepresentationSelfContained() {
+		return true;
+	}
 }
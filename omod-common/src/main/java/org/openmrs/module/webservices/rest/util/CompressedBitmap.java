@@ -0,0 +1,620 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of ints in the style of Roaring bitmaps, used to hold large sets of ids such as
+ * cohort members.
+ * <p>
+ * Values are partitioned by their upper 16 bits. Each partition is stored either as a sorted array
+ * of the lower 16 bits (if it has at most {@value #ARRAY_MAX_SIZE} values) or as a 65536 bit
+ * bitmap, so both sparse and dense sets stay small and set operations work a partition at a time.
+ * Values are ordered as unsigned ints, so this is meant for non-negative ids.
+ * <p>
+ * Instances are not thread safe. The results of {@link #and(CompressedBitmap)},
+ * {@link #or(CompressedBitmap)} and {@link #andNot(CompressedBitmap)} never share state with their
+ * operands.
+ */
+public class CompressedBitmap implements Iterable<Integer> {
+	
+	static final int ARRAY_MAX_SIZE = 4096;
+	
+	private static final int BITMAP_WORDS = 1024;
+	
+	private char[] keys;
+	
+	private Container[] containers;
+	
+	private int size;
+	
+	public CompressedBitmap() {
+		keys = new char[4];
+		containers = new Container[4];
+	}
+	
+	/**
+	 * @param values
+	 * @return a bitmap with the given values
+	 */
+	public static CompressedBitmap of(Collection<Integer> values) {
+		CompressedBitmap bitmap = new CompressedBitmap();
+		for (Integer value : values) {
+			bitmap.add(value);
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * @param values
+	 * @return a bitmap with the given values
+	 */
+	public static CompressedBitmap of(int... values) {
+		CompressedBitmap bitmap = new CompressedBitmap();
+		for (int value : values) {
+			bitmap.add(value);
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * Adds a value, this is fastest if values are added in ascending order.
+	 *
+	 * @param value
+	 * @should add values to sparse and dense partitions
+	 */
+	public void add(int value) {
+		char high = highBits(value);
+		int i = indexOf(high);
+		if (i < 0) {
+			i = -i - 1;
+			insert(i, high, new ArrayContainer());
+		}
+		containers[i] = containers[i].add(lowBits(value));
+	}
+	
+	/**
+	 * @param value
+	 * @return true if the value was removed, false if it was not in this bitmap
+	 * @should remove values from sparse and dense partitions
+	 */
+	public boolean remove(int value) {
+		int i = indexOf(highBits(value));
+		if (i < 0 || !containers[i].contains(lowBits(value))) {
+			return false;
+		}
+		Container container = containers[i].remove(lowBits(value));
+		if (container.cardinality() == 0) {
+			System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+			System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+			containers[--size] = null;
+		} else {
+			containers[i] = container;
+		}
+		return true;
+	}
+	
+	/**
+	 * @param value
+	 * @return true if the value is in this bitmap
+	 */
+	public boolean contains(int value) {
+		int i = indexOf(highBits(value));
+		return i >= 0 && containers[i].contains(lowBits(value));
+	}
+	
+	/**
+	 * @return the number of values in this bitmap
+	 */
+	public int getCardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality();
+		}
+		return cardinality;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @param value
+	 * @return the number of values in this bitmap that are less than or equal to the given value
+	 * @should return the number of values up to and including the given value
+	 */
+	public int rank(int value) {
+		char high = highBits(value);
+		int rank = 0;
+		for (int i = 0; i < size && keys[i] <= high; i++) {
+			rank += keys[i] < high ? containers[i].cardinality() : containers[i].rank(lowBits(value));
+		}
+		return rank;
+	}
+	
+	/**
+	 * Gets a page of values without converting the whole bitmap to an array.
+	 * 
+	 * @param offset the number of values to skip
+	 * @param limit the maximum number of values to return
+	 * @return the values in ascending order
+	 * @should return the requested page of values
+	 */
+	public int[] select(int offset, int limit) {
+		offset = Math.max(0, offset);
+		int[] page = new int[Math.max(0, Math.min(limit, getCardinality() - offset))];
+		int n = 0;
+		for (int i = 0; i < size && n < page.length; i++) {
+			int cardinality = containers[i].cardinality();
+			if (offset >= cardinality) {
+				offset -= cardinality;
+				continue;
+			}
+			int[] values = new int[cardinality];
+			containers[i].fill(values, 0, keys[i]);
+			int count = Math.min(cardinality - offset, page.length - n);
+			System.arraycopy(values, offset, page, n, count);
+			n += count;
+			offset = 0;
+		}
+		return page;
+	}
+	
+	/**
+	 * @param other
+	 * @return a new bitmap with the values that are in both bitmaps
+	 * @should return the intersection of two bitmaps
+	 */
+	public CompressedBitmap and(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				result.append(keys[i], and(containers[i], other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param other
+	 * @return a new bitmap with the values that are in either bitmap
+	 * @should return the union of two bitmaps
+	 */
+	public CompressedBitmap or(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+				result.append(keys[i], containers[i].copy());
+				i++;
+			} else if (i == size || keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j].copy());
+				j++;
+			} else {
+				result.append(keys[i], or(containers[i], other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param other
+	 * @return a new bitmap with the values that are in this bitmap but not in the other one
+	 * @should return the difference of two bitmaps
+	 */
+	public CompressedBitmap andNot(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0, j = 0;
+		while (i < size) {
+			if (j == other.size || keys[i] < other.keys[j]) {
+				result.append(keys[i], containers[i].copy());
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				result.append(keys[i], andNot(containers[i], other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the values of this bitmap in ascending order
+	 */
+	public int[] toArray() {
+		int[] array = new int[getCardinality()];
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			offset = containers[i].fill(array, offset, keys[i]);
+		}
+		return array;
+	}
+	
+	/**
+	 * @see java.lang.Iterable#iterator()
+	 * @should iterate values in ascending order
+	 */
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			
+			private int container = 0;
+			
+			private int[] values = new int[0];
+			
+			private int next = 0;
+			
+			@Override
+			public boolean hasNext() {
+				while (next == values.length && container < size) {
+					values = new int[containers[container].cardinality()];
+					containers[container].fill(values, 0, keys[container]);
+					container++;
+					next = 0;
+				}
+				return next < values.length;
+			}
+			
+			@Override
+			public Integer next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return values[next++];
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	private static char highBits(int value) {
+		return (char) (value >>> 16);
+	}
+	
+	private static char lowBits(int value) {
+		return (char) value;
+	}
+	
+	private int indexOf(char key) {
+		// values are usually added in ascending order, so check the last partition first
+		if (size == 0 || keys[size - 1] < key) {
+			return -size - 1;
+		}
+		if (keys[size - 1] == key) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+	
+	private void insert(int index, char key, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size - index);
+		keys[index] = key;
+		containers[index] = container;
+		size++;
+	}
+	
+	private void append(char key, Container container) {
+		if (container != null && container.cardinality() > 0) {
+			insert(size, key, container);
+		}
+	}
+	
+	private static Container and(Container a, Container b) {
+		if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+			char[] values = new char[Math.min(x.cardinality, y.cardinality)];
+			int i = 0, j = 0, n = 0;
+			while (i < x.cardinality && j < y.cardinality) {
+				if (x.values[i] < y.values[j]) {
+					i++;
+				} else if (x.values[i] > y.values[j]) {
+					j++;
+				} else {
+					values[n++] = x.values[i];
+					i++;
+					j++;
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+		long[] words = a.toWords();
+		long[] other = b.toWords();
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			words[i] &= other[i];
+		}
+		return fromWords(words);
+	}
+	
+	private static Container or(Container a, Container b) {
+		if (a instanceof ArrayContainer && b instanceof ArrayContainer
+		        && a.cardinality() + b.cardinality() <= ARRAY_MAX_SIZE) {
+			ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+			char[] values = new char[x.cardinality + y.cardinality];
+			int i = 0, j = 0, n = 0;
+			while (i < x.cardinality || j < y.cardinality) {
+				if (j == y.cardinality || (i < x.cardinality && x.values[i] < y.values[j])) {
+					values[n++] = x.values[i++];
+				} else if (i == x.cardinality || x.values[i] > y.values[j]) {
+					values[n++] = y.values[j++];
+				} else {
+					values[n++] = x.values[i];
+					i++;
+					j++;
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+		long[] words = a.toWords();
+		long[] other = b.toWords();
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			words[i] |= other[i];
+		}
+		return fromWords(words);
+	}
+	
+	private static Container andNot(Container a, Container b) {
+		if (a instanceof ArrayContainer) {
+			ArrayContainer x = (ArrayContainer) a;
+			char[] values = new char[x.cardinality];
+			int n = 0;
+			for (int i = 0; i < x.cardinality; i++) {
+				if (!b.contains(x.values[i])) {
+					values[n++] = x.values[i];
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+		long[] words = a.toWords();
+		long[] other = b.toWords();
+		for (int i = 0; i < BITMAP_WORDS; i++) {
+			words[i] &= ~other[i];
+		}
+		return fromWords(words);
+	}
+	
+	private static Container fromWords(long[] words) {
+		int cardinality = 0;
+		for (long word : words) {
+			cardinality += Long.bitCount(word);
+		}
+		BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+		return cardinality > ARRAY_MAX_SIZE ? bitmap : bitmap.toArrayContainer();
+	}
+	
+	/**
+	 * The lower 16 bits of the values of a partition.
+	 */
+	private abstract static class Container {
+		
+		abstract Container add(char value);
+		
+		abstract Container remove(char value);
+		
+		abstract boolean contains(char value);
+		
+		abstract int cardinality();
+		
+		/**
+		 * @return the number of values less than or equal to the given value
+		 */
+		abstract int rank(char value);
+		
+		abstract Container copy();
+		
+		/**
+		 * @return the values as a new array of {@value CompressedBitmap#BITMAP_WORDS} words
+		 */
+		abstract long[] toWords();
+		
+		/**
+		 * Writes the values in ascending order into the array, combined with the given upper bits.
+		 *
+		 * @return the offset after the last value written
+		 */
+		abstract int fill(int[] array, int offset, char high);
+	}
+	
+	private static class ArrayContainer extends Container {
+		
+		private char[] values;
+		
+		private int cardinality;
+		
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+		
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+		
+		@Override
+		Container add(char value) {
+			int i = cardinality == 0 || values[cardinality - 1] < value ? -cardinality - 1 : Arrays.binarySearch(values,
+			    0, cardinality, value);
+			if (i >= 0) {
+				return this;
+			}
+			if (cardinality == ARRAY_MAX_SIZE) {
+				return new BitmapContainer(toWords(), cardinality).add(value);
+			}
+			i = -i - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX_SIZE));
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = value;
+			cardinality++;
+			return this;
+		}
+		
+		@Override
+		Container remove(char value) {
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+			return this;
+		}
+		
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+		
+		@Override
+		int rank(char value) {
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			return i >= 0 ? i + 1 : -i - 1;
+		}
+		
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+		
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+		}
+		
+		@Override
+		long[] toWords() {
+			long[] words = new long[BITMAP_WORDS];
+			for (int i = 0; i < cardinality; i++) {
+				words[values[i] >>> 6] |= 1L << values[i];
+			}
+			return words;
+		}
+		
+		@Override
+		int fill(int[] array, int offset, char high) {
+			for (int i = 0; i < cardinality; i++) {
+				array[offset++] = high << 16 | values[i];
+			}
+			return offset;
+		}
+	}
+	
+	private static class BitmapContainer extends Container {
+		
+		private final long[] words;
+		
+		private int cardinality;
+		
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+		
+		@Override
+		Container add(char value) {
+			long bit = 1L << value;
+			if ((words[value >>> 6] & bit) == 0) {
+				words[value >>> 6] |= bit;
+				cardinality++;
+			}
+			return this;
+		}
+		
+		@Override
+		Container remove(char value) {
+			long bit = 1L << value;
+			if ((words[value >>> 6] & bit) != 0) {
+				words[value >>> 6] &= ~bit;
+				cardinality--;
+			}
+			return cardinality > ARRAY_MAX_SIZE ? this : toArrayContainer();
+		}
+		
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+		
+		@Override
+		int rank(char value) {
+			int rank = 0;
+			for (int i = 0; i < value >>> 6; i++) {
+				rank += Long.bitCount(words[i]);
+			}
+			return rank + Long.bitCount(words[value >>> 6] & (-1L >>> (63 - (value & 63))));
+		}
+		
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+		
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+		
+		@Override
+		long[] toWords() {
+			return words.clone();
+		}
+		
+		@Override
+		int fill(int[] array, int offset, char high) {
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				while (word != 0) {
+					array[offset++] = high << 16 | (i << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return offset;
+		}
+		
+		ArrayContainer toArrayContainer() {
+			char[] values = new char[cardinality];
+			int n = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				while (word != 0) {
+					values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, cardinality);
+		}
+	}
+}
@@ -0,0 +1,507 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A TCP server speaking the minimal lower layer protocol (MLLP) used to exchange HL7 messages. Each
+ * message is framed by a start block ({@value #START_BLOCK}) and an end block ({@value #END_BLOCK})
+ * followed by a carriage return, and is answered with a framed acknowledgment.
+ * <p>
+ * A single selector thread reads and writes all connections without blocking. The framed messages
+ * are passed to the {@link Handler} in a single separate thread, so a slow handler never stalls
+ * the network and the acknowledgments of each connection are sent in the order its messages
+ * arrived. Senders may therefore pipeline messages without waiting for each acknowledgment.
+ * <p>
+ * At most {@link #MAX_QUEUED_MESSAGES} messages wait for the handler. While that many are waiting,
+ * connections that send more are not read from, so TCP flow control slows their senders down
+ * instead of the messages piling up in memory.
+ * <p>
+ * The protocol has no authentication, so the server binds to the loopback interface unless another
+ * address is given, and a {@link ConnectionFilter} can refuse connections from unknown hosts.
+ */
+public class MllpServer {
+	
+	public static final byte START_BLOCK = 0x0b;
+	
+	public static final byte END_BLOCK = 0x1c;
+	
+	public static final byte CARRIAGE_RETURN = 0x0d;
+	
+	/**
+	 * Connections sending longer messages are closed
+	 */
+	public static final int MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
+	
+	/**
+	 * The number of received messages that may wait for the handler
+	 */
+	public static final int MAX_QUEUED_MESSAGES = 100;
+	
+	private static final Log log = LogFactory.getLog(MllpServer.class);
+	
+	/**
+	 * Answers the messages received by a {@link MllpServer}
+	 */
+	public interface Handler {
+		
+		/**
+		 * Called in a single thread for all messages of all connections
+		 * 
+		 * @param message the message without its framing
+		 * @return the acknowledgment to send back, or null to send nothing
+		 */
+		String handle(String message);
+	}
+	
+	/**
+	 * Decides which hosts may connect to a {@link MllpServer}
+	 */
+	public interface ConnectionFilter {
+		
+		/**
+		 * Called in the selector thread for each accepted connection
+		 * 
+		 * @param address the address of the client
+		 * @return false to close the connection right away
+		 */
+		boolean isAllowed(InetAddress address);
+	}
+	
+	private final Handler handler;
+	
+	private final Charset charset;
+	
+	private final Queue<Connection> writable = new ConcurrentLinkedQueue<Connection>();
+	
+	/**
+	 * The connections that are not read from until the handler has room for their messages, only
+	 * used by the selector thread
+	 */
+	private final Queue<Connection> paused = new LinkedList<Connection>();
+	
+	private Selector selector;
+	
+	private ServerSocketChannel serverChannel;
+	
+	private Thread selectorThread;
+	
+	private ThreadPoolExecutor handlerExecutor;
+	
+	private volatile boolean running;
+	
+	private volatile ConnectionFilter connectionFilter;
+	
+	/**
+	 * @param handler
+	 * @param charset the encoding of messages and acknowledgments
+	 */
+	public MllpServer(Handler handler, Charset charset) {
+		this.handler = handler;
+		this.charset = charset;
+	}
+	
+	/**
+	 * @param connectionFilter the filter checking clients, or null to allow all of them
+	 */
+	public void setConnectionFilter(ConnectionFilter connectionFilter) {
+		this.connectionFilter = connectionFilter;
+	}
+	
+	/**
+	 * Starts listening on the given port of the loopback interface
+	 * 
+	 * @param port the port or 0 for any free port
+	 * @throws IOException if the port cannot be bound
+	 * @should acknowledge pipelined messages in order
+	 * @should reassemble messages split across reads
+	 * @should close connections the filter does not allow
+	 * @should acknowledge all messages sent while the handler is busy
+	 */
+	public synchronized void start(int port) throws IOException {
+		start(null, port);
+	}
+	
+	/**
+	 * Starts listening on the given address and port
+	 * 
+	 * @param host the name or address to bind to, e.g. 0.0.0.0 for all interfaces, or null for the
+	 *            loopback interface
+	 * @param port the port or 0 for any free port
+	 * @throws IOException if the address cannot be resolved or the port cannot be bound
+	 */
+	public synchronized void start(String host, int port) throws IOException {
+		if (running)
+			throw new IllegalStateException("The MLLP server is already running");
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName(host), port));
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		catch (IOException ex) {
+			closeQuietly();
+			throw ex;
+		}
+		
+		handlerExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+		        MAX_QUEUED_MESSAGES), new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MLLP handler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		running = true;
+		selectorThread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				select();
+			}
+		}, "MLLP listener on port " + getPort());
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+	
+	/**
+	 * @return the address the server listens on, or null if it is not running
+	 */
+	public InetAddress getAddress() {
+		ServerSocketChannel channel = serverChannel;
+		return channel != null && channel.isOpen() ? channel.socket().getInetAddress() : null;
+	}
+	
+	/**
+	 * @return the port the server listens on, or -1 if it is not running
+	 */
+	public int getPort() {
+		ServerSocketChannel channel = serverChannel;
+		return channel != null && channel.isOpen() ? channel.socket().getLocalPort() : -1;
+	}
+	
+	public boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * Stops listening and closes all connections. Messages that are being handled are finished, but
+	 * their acknowledgments are not sent anymore.
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join(TimeUnit.SECONDS.toMillis(10));
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		handlerExecutor.shutdown();
+		closeQuietly();
+		paused.clear();
+		selectorThread = null;
+		handlerExecutor = null;
+	}
+	
+	private void select() {
+		try {
+			while (running) {
+				selector.select();
+				
+				Connection ready;
+				while ((ready = writable.poll()) != null) {
+					if (ready.key.isValid())
+						ready.key.interestOps(ready.key.interestOps() | SelectionKey.OP_WRITE);
+				}
+				resumePaused();
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid())
+							continue;
+						if (key.isAcceptable())
+							accept();
+						if (key.isValid() && key.isReadable())
+							((Connection) key.attachment()).read();
+						if (key.isValid() && key.isWritable())
+							((Connection) key.attachment()).write();
+					}
+					catch (IOException ex) {
+						// failing to accept is reported on the key of the server, which must stay open
+						log.debug("Closing MLLP connection", ex);
+						if (key.attachment() instanceof Connection)
+							((Connection) key.attachment()).close();
+					}
+				}
+			}
+		}
+		catch (Exception ex) {
+			log.error("The MLLP listener stopped unexpectedly", ex);
+			running = false;
+		}
+		finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection)
+					((Connection) key.attachment()).close();
+			}
+		}
+	}
+	
+	/**
+	 * Passes the held messages of paused connections to the handler as far as it has room, and
+	 * reads from the connections again whose messages have all been passed on
+	 */
+	private void resumePaused() {
+		Iterator<Connection> connections = paused.iterator();
+		while (connections.hasNext() && hasHandlerRoom()) {
+			if (connections.next().resume())
+				connections.remove();
+		}
+	}
+	
+	/**
+	 * Only the selector thread submits messages, so there is still room when it submits one
+	 */
+	private boolean hasHandlerRoom() {
+		return handlerExecutor.getQueue().remainingCapacity() > 0;
+	}
+	
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+			return;
+		ConnectionFilter filter = connectionFilter;
+		boolean allowed;
+		try {
+			allowed = filter == null || filter.isAllowed(channel.socket().getInetAddress());
+		}
+		catch (RuntimeException ex) {
+			log.warn("Failed to check an MLLP connection", ex);
+			allowed = false;
+		}
+		if (!allowed) {
+			log.warn("Refusing an MLLP connection from " + channel.socket().getInetAddress());
+			channel.close();
+			return;
+		}
+		channel.configureBlocking(false);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		key.attach(new Connection(channel, key));
+	}
+	
+	private void closeQuietly() {
+		try {
+			if (serverChannel != null)
+				serverChannel.close();
+			if (selector != null)
+				selector.close();
+		}
+		catch (IOException ex) {
+			log.debug("Failed to close the MLLP listener", ex);
+		}
+	}
+	
+	/**
+	 * The framing state and pending acknowledgments of one client
+	 */
+	private class Connection {
+		
+		private final SocketChannel channel;
+		
+		private final SelectionKey key;
+		
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+		
+		private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+		
+		private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<ByteBuffer>();
+		
+		/**
+		 * The received messages that wait for room in the handler, in the order they arrived
+		 */
+		private final Queue<String> held = new LinkedList<String>();
+		
+		/**
+		 * The number of received messages that have not been acknowledged yet
+		 */
+		private final AtomicInteger pending = new AtomicInteger();
+		
+		private boolean inMessage = false;
+		
+		private boolean endOfInput = false;
+		
+		private boolean reading = true;
+		
+		public Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+		
+		public void read() throws IOException {
+			readBuffer.clear();
+			int read = channel.read(readBuffer);
+			if (read < 0) {
+				// the sender is done, but may still wait for the acknowledgments of its messages
+				endOfInput = true;
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				closeIfDone();
+				return;
+			}
+			
+			for (int i = 0; i < read; i++) {
+				byte b = readBuffer.get(i);
+				if (b == START_BLOCK) {
+					if (inMessage && message.size() > 0)
+						log.warn("Discarding an MLLP message that was not terminated");
+					inMessage = true;
+					message.reset();
+				} else if (!inMessage) {
+					// the carriage return after an end block, or noise between messages
+				} else if (b == END_BLOCK) {
+					inMessage = false;
+					submit(new String(message.toByteArray(), charset));
+					message.reset();
+				} else {
+					if (message.size() >= MAX_MESSAGE_SIZE)
+						throw new IOException("MLLP message exceeds " + MAX_MESSAGE_SIZE + " bytes");
+					message.write(b);
+				}
+			}
+		}
+		
+		private void submit(String received) {
+			pending.incrementAndGet();
+			if (held.isEmpty() && hasHandlerRoom()) {
+				execute(received);
+				return;
+			}
+			// the rest of the read buffer is still framed, but nothing more is read for now
+			held.add(received);
+			if (reading) {
+				reading = false;
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				paused.add(this);
+			}
+		}
+		
+		/**
+		 * Passes held messages to the handler as far as it has room
+		 * 
+		 * @return true if all of them were passed on and the connection is read from again
+		 */
+		public boolean resume() {
+			if (!key.isValid()) {
+				held.clear();
+				return true;
+			}
+			while (!held.isEmpty()) {
+				if (!hasHandlerRoom())
+					return false;
+				execute(held.poll());
+			}
+			reading = true;
+			if (!endOfInput)
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			return true;
+		}
+		
+		private void execute(final String received) {
+			handlerExecutor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					String response = null;
+					try {
+						response = handler.handle(received);
+					}
+					catch (Exception ex) {
+						log.error("Failed to handle an MLLP message", ex);
+					}
+					if (response != null)
+						output.add(frame(response));
+					pending.decrementAndGet();
+					writable.add(Connection.this);
+					selector.wakeup();
+				}
+			});
+		}
+		
+		public void write() throws IOException {
+			ByteBuffer buffer;
+			while ((buffer = output.peek()) != null) {
+				channel.write(buffer);
+				if (buffer.hasRemaining())
+					return;
+				output.poll();
+			}
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			closeIfDone();
+		}
+		
+		private void closeIfDone() {
+			if (endOfInput && pending.get() == 0 && output.isEmpty())
+				close();
+		}
+		
+		public void close() {
+			key.cancel();
+			try {
+				channel.close();
+			}
+			catch (IOException ex) {
+				log.debug("Failed to close an MLLP connection", ex);
+			}
+		}
+		
+		private ByteBuffer frame(String response) {
+			byte[] bytes = response.getBytes(charset);
+			ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+			buffer.put(START_BLOCK).put(bytes).put(END_BLOCK).put(CARRIAGE_RETURN);
+			buffer.flip();
+			return buffer;
+		}
+	}
+}
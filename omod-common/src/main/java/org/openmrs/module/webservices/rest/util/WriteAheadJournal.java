@@ -0,0 +1,377 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An append-only journal of writes that have been accepted but not yet applied, kept in a
+ * memory-mapped file so that appending is a memory copy followed by a flush to disk.
+ * <p>
+ * Each accepted write is an entry record. When it has been applied or has failed, an outcome
+ * record is appended for it. When the journal is opened, the entries without an outcome are
+ * pending again, so nothing that was acknowledged is lost when the server stops. An entry can
+ * therefore be applied more than once if the server stops right after applying it.
+ * <p>
+ * Every record is checksummed and the end of the records is marked, so a record that was only
+ * partly written when the server stopped is ignored. When the file is full, the pending entries
+ * are copied to a new file that replaces it.
+ * <p>
+ * The outcome of the last {@link #MAX_RESOLVED_ENTRIES} resolved entries is kept in memory.
+ */
+public class WriteAheadJournal {
+	
+	public static final int MAX_RESOLVED_ENTRIES = 10000;
+	
+	private static final byte ENTRY = 1;
+	
+	private static final byte OUTCOME = 2;
+	
+	private static final Log log = LogFactory.getLog(WriteAheadJournal.class);
+	
+	public enum Status {
+		PENDING, APPLIED, FAILED
+	}
+	
+	/**
+	 * A write in the journal
+	 */
+	public static class Entry {
+		
+		private final String uuid;
+		
+		private final String resource;
+		
+		private final String user;
+		
+		private final Date dateReceived;
+		
+		private final String payload;
+		
+		private volatile Status status = Status.PENDING;
+		
+		private volatile String result;
+		
+		public Entry(String uuid, String resource, String user, Date dateReceived, String payload) {
+			this.uuid = uuid;
+			this.resource = resource;
+			this.user = user;
+			this.dateReceived = dateReceived;
+			this.payload = payload;
+		}
+		
+		public String getUuid() {
+			return uuid;
+		}
+		
+		public String getResource() {
+			return resource;
+		}
+		
+		/**
+		 * @return the system id of the user who made the write, or null
+		 */
+		public String getUser() {
+			return user;
+		}
+		
+		public Date getDateReceived() {
+			return dateReceived;
+		}
+		
+		public String getPayload() {
+			return payload;
+		}
+		
+		public Status getStatus() {
+			return status;
+		}
+		
+		/**
+		 * @return what applying the entry resulted in, e.g. the uuid of the created object or an
+		 *         error message, or null while it is pending
+		 */
+		public String getResult() {
+			return result;
+		}
+	}
+	
+	private final File file;
+	
+	private final int capacity;
+	
+	private RandomAccessFile randomAccessFile;
+	
+	private MappedByteBuffer buffer;
+	
+	private final Map<String, Entry> pending = new LinkedHashMap<String, Entry>();
+	
+	@SuppressWarnings("serial")
+	private final Map<String, Entry> resolved = new LinkedHashMap<String, Entry>() {
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_RESOLVED_ENTRIES;
+		}
+	};
+	
+	/**
+	 * Opens the journal, creating the file if it does not exist, and reads the entries in it
+	 * 
+	 * @param file
+	 * @param capacity the size of the file in bytes
+	 * @throws IOException
+	 * @should keep pending entries when reopened
+	 * @should ignore a partly written record
+	 */
+	public WriteAheadJournal(File file, int capacity) throws IOException {
+		this.file = file;
+		this.capacity = capacity;
+		map();
+		replay();
+	}
+	
+	/**
+	 * Adds a write and flushes it to disk
+	 * 
+	 * @param resource
+	 * @param user
+	 * @param payload
+	 * @return the entry, or null if the journal is full
+	 * @throws IOException
+	 * @should replace the file with the pending entries when it is full
+	 */
+	public synchronized Entry append(String resource, String user, String payload) throws IOException {
+		Entry entry = new Entry(UUID.randomUUID().toString(), resource, user, new Date(), payload);
+		byte[] record = entryRecord(entry);
+		if (!hasRoomFor(record)) {
+			compact();
+			if (!hasRoomFor(record))
+				return null;
+		}
+		write(record);
+		pending.put(entry.getUuid(), entry);
+		return entry;
+	}
+	
+	/**
+	 * Records the outcome of a pending entry
+	 * 
+	 * @param entry
+	 * @param status {@link Status#APPLIED} or {@link Status#FAILED}
+	 * @param result
+	 * @throws IOException
+	 * @should not replay resolved entries when reopened
+	 */
+	public synchronized void resolve(Entry entry, Status status, String result) throws IOException {
+		if (status == Status.PENDING)
+			throw new IllegalArgumentException("An entry can only be resolved as applied or failed");
+		byte[] record = outcomeRecord(entry.getUuid(), status, result);
+		entry.status = status;
+		entry.result = result;
+		pending.remove(entry.getUuid());
+		resolved.put(entry.getUuid(), entry);
+		if (hasRoomFor(record))
+			write(record);
+		else
+			// the entry is not pending anymore, so it is left out
+			compact();
+	}
+	
+	/**
+	 * @return the pending entries in the order they were appended
+	 */
+	public synchronized List<Entry> getPending() {
+		return new ArrayList<Entry>(pending.values());
+	}
+	
+	/**
+	 * @param uuid
+	 * @return the pending or recently resolved entry, or null
+	 */
+	public synchronized Entry getEntry(String uuid) {
+		Entry entry = pending.get(uuid);
+		return entry != null ? entry : resolved.get(uuid);
+	}
+	
+	public synchronized void close() throws IOException {
+		if (randomAccessFile != null) {
+			buffer.force();
+			randomAccessFile.close();
+			randomAccessFile = null;
+		}
+	}
+	
+	private void map() throws IOException {
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		if (randomAccessFile.length() < capacity)
+			randomAccessFile.setLength(capacity);
+		buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+	
+	private void replay() throws IOException {
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= 8) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining() - 4) {
+				buffer.position(start);
+				break;
+			}
+			byte[] record = new byte[length];
+			buffer.get(record);
+			crc.reset();
+			crc.update(record);
+			if (buffer.getInt() != (int) crc.getValue()) {
+				log.warn("Ignoring a partly written record at the end of " + file);
+				buffer.position(start);
+				break;
+			}
+			read(record);
+		}
+	}
+	
+	private void read(byte[] record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		byte type = in.readByte();
+		String uuid = in.readUTF();
+		if (type == ENTRY) {
+			String resource = in.readUTF();
+			String user = in.readBoolean() ? in.readUTF() : null;
+			Date dateReceived = new Date(in.readLong());
+			byte[] payload = new byte[in.readInt()];
+			in.readFully(payload);
+			Entry entry = new Entry(uuid, resource, user, dateReceived, new String(payload, "UTF-8"));
+			pending.put(uuid, entry);
+		} else if (type == OUTCOME) {
+			Entry entry = pending.remove(uuid);
+			if (entry != null) {
+				entry.status = Status.values()[in.readByte()];
+				entry.result = in.readBoolean() ? in.readUTF() : null;
+				resolved.put(uuid, entry);
+			}
+		}
+	}
+	
+	private byte[] entryRecord(Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ENTRY);
+		out.writeUTF(entry.getUuid());
+		out.writeUTF(entry.getResource());
+		writeNullableUTF(out, entry.getUser());
+		out.writeLong(entry.getDateReceived().getTime());
+		byte[] payload = entry.getPayload().getBytes("UTF-8");
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private byte[] outcomeRecord(String uuid, Status status, String result) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(OUTCOME);
+		out.writeUTF(uuid);
+		out.writeByte(status.ordinal());
+		if (result != null && result.length() > 1000)
+			result = result.substring(0, 1000);
+		writeNullableUTF(out, result);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+	
+	private boolean hasRoomFor(byte[] record) {
+		// length, record, checksum and the end marker of the records
+		return buffer.remaining() >= record.length + 12;
+	}
+	
+	/**
+	 * Writes the record after the last one. Its length is written last, so that the record only
+	 * becomes part of the journal once it is complete.
+	 */
+	private void write(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		int start = buffer.position();
+		buffer.position(start + 4);
+		buffer.put(record);
+		buffer.putInt((int) crc.getValue());
+		int end = buffer.position();
+		buffer.putInt(0);
+		buffer.putInt(start, record.length);
+		buffer.position(end);
+		buffer.force();
+	}
+	
+	/**
+	 * Replaces the file with one that only has the pending entries
+	 */
+	private void compact() throws IOException {
+		File compacted = new File(file.getPath() + ".compacted");
+		RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+		try {
+			out.setLength(capacity);
+			MappedByteBuffer target = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			MappedByteBuffer source = buffer;
+			buffer = target;
+			try {
+				for (Entry entry : pending.values()) {
+					write(entryRecord(entry));
+				}
+			}
+			finally {
+				buffer = source;
+			}
+			target.force();
+			int position = target.position();
+			
+			close();
+			if (!compacted.renameTo(file)) {
+				// some platforms do not replace existing files on rename
+				if (!file.delete() || !compacted.renameTo(file))
+					throw new IOException("Failed to replace " + file + " with " + compacted);
+			}
+			map();
+			buffer.position(position);
+		}
+		finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.webservices.rest.web.resource.api.Resource;
+import org.openmrs.module.webservices.rest.web.resource.impl.MetadataDelegatingCrudResource;
+
+/**
+ * Decides which Cache-Control header is set on GET responses, so that browsers and reverse proxies
+ * can cache them.
+ * <p>
+ * The policies are configured per resource name in the
+ * {@link RestConstants#CACHE_CONTROL_GLOBAL_PROPERTY_NAME} global property. Resources that are not
+ * configured get {@link #DEFAULT_METADATA_POLICY} if they are cacheable metadata and
+ * {@link #DEFAULT_DATA_POLICY} otherwise, unless these defaults are configured with the
+ * {@link #DEFAULT_METADATA_KEY} and {@link #DEFAULT_DATA_KEY} names. The parsed policies are part
+ * of the {@link RestConfiguration} snapshot.
+ * <p>
+ * Responses depend on the privileges and locale of the user, so the defaults are private and the
+ * responses vary by the credentials and language of the request. Letting shared caches store the
+ * responses of a resource, which they then serve to anyone without checking privileges, must be
+ * configured explicitly with a public policy for it.
+ */
+public class CacheControlPolicy {
+	
+	public static final String DEFAULT_METADATA_KEY = "default.metadata";
+	
+	public static final String DEFAULT_DATA_KEY = "default.data";
+	
+	public static final String DEFAULT_METADATA_POLICY = "private, max-age=300";
+	
+	public static final String DEFAULT_DATA_POLICY = "private, no-cache";
+	
+	/**
+	 * The request headers that responses depend on: the format, the locale of display names and the
+	 * user, whose privileges decide what is returned
+	 */
+	public static final String VARY = "Accept, Accept-Language, Authorization, Cookie";
+	
+	/**
+	 * Sets the Cache-Control and Vary headers of a successful GET response
+	 * 
+	 * @param resourceName the name of the resource as in the url, e.g. location or person/name
+	 * @param resource
+	 * @param response
+	 */
+	public static void apply(String resourceName, Resource resource, HttpServletResponse response) {
+		String policy = getPolicy(resourceName, resource instanceof MetadataDelegatingCrudResource
+		        && ((MetadataDelegatingCrudResource<?>) resource).isResponseCacheable());
+		if (StringUtils.isNotBlank(policy)) {
+			response.setHeader(RestConstants.HEADER_CACHE_CONTROL, policy);
+			response.setHeader(RestConstants.HEADER_VARY, VARY);
+		}
+	}
+	
+	/**
+	 * @param resourceName
+	 * @param metadata whether the resource returns metadata that may be cached
+	 * @return the configured or default policy, an empty string if none must be set
+	 * @should return the configured policy of a resource
+	 * @should return the default policies for resources that are not configured
+	 */
+	public static String getPolicy(String resourceName, boolean metadata) {
+		Map<String, String> configured = RestConfiguration.get().getCacheControlPolicies();
+		String policy = configured.get(resourceName.toLowerCase());
+		if (policy != null)
+			return policy;
+		if (metadata)
+			return configured.containsKey(DEFAULT_METADATA_KEY) ? configured.get(DEFAULT_METADATA_KEY)
+			        : DEFAULT_METADATA_POLICY;
+		return configured.containsKey(DEFAULT_DATA_KEY) ? configured.get(DEFAULT_DATA_KEY) : DEFAULT_DATA_POLICY;
+	}
+	
+	/**
+	 * @param value semicolon-separated name=policy entries, where a policy may contain commas
+	 * @return the policies by lower case resource name
+	 */
+	static Map<String, String> parse(String value) {
+		Map<String, String> parsed = new HashMap<String, String>();
+		if (StringUtils.isBlank(value))
+			return parsed;
+		for (String entry : value.split(";")) {
+			int equals = entry.indexOf('=');
+			if (equals > 0)
+				parsed.put(entry.substring(0, equals).trim().toLowerCase(), entry.substring(equals + 1).trim());
+		}
+		return Collections.unmodifiableMap(parsed);
+	}
+}
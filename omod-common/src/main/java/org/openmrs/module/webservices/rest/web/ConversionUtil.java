@@ -129,8 +129,13 @@ public class ConversionUtil {
 		if (object instanceof String) {
 			String string = (String) object;
 			Converter<?> converter = getConverter(toClass);
-			if (converter != null)
-				return converter.getByUniqueId(string);
+			if (converter != null) {
+				if (UuidResolutionCache.contains(toClass, string))
+					return UuidResolutionCache.get(toClass, string);
+				Object resolved = converter.getByUniqueId(string);
+				UuidResolutionCache.put(toClass, string, resolved);
+				return resolved;
+			}
 			
 			if (toClass.isAssignableFrom(Date.class)) {
 				ParseException pex = null;
@@ -0,0 +1,367 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.response.ConflictException;
+import org.openmrs.module.webservices.rest.web.response.ConversionException;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+
+/**
+ * Remembers the responses to writes that were sent with an
+ * {@link RestConstants#HEADER_IDEMPOTENCY_KEY} header, so that a client retrying such a write, e.g.
+ * after a timeout, gets the original response instead of creating another object.
+ * <p>
+ * Responses are kept per user and key for {@link #TTL} milliseconds, at most {@link #MAX_ENTRIES}
+ * of them. Requests are told apart by a SHA-256 digest of their method, URI and canonical JSON
+ * body. The status, the headers and the serialized response body are kept and replayed as they
+ * were; responses whose body is longer than {@link #MAX_BODY_LENGTH} characters are not kept, so
+ * that no entry is large. A key that is reused for a different request, or while the first request
+ * is still being handled, is rejected with a {@link ConflictException}. Failed requests are not
+ * remembered, so they can be retried with the same key.
+ */
+public class IdempotencyCache {
+	
+	public static final int MAX_ENTRIES = 10000;
+	
+	public static final long TTL = TimeUnit.HOURS.toMillis(24);
+	
+	public static final int MAX_KEY_LENGTH = 255;
+	
+	public static final int MAX_BODY_LENGTH = 64 * 1024;
+	
+	private static final ObjectMapper mapper = new ObjectMapper();
+	
+	/**
+	 * A write to be done at most once per idempotency key
+	 */
+	public interface Write {
+		
+		/**
+		 * @param response the response to set the status and headers on
+		 * @return the response body
+		 * @throws ResponseException
+		 */
+		Object write(HttpServletResponse response) throws ResponseException;
+	}
+	
+	@SuppressWarnings("serial")
+	private static final Map<String, Entry> cache = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16,
+	        0.75f, true) {
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	});
+	
+	/**
+	 * Does the write, unless the request has an idempotency key for which a response is cached, in
+	 * which case that response is replayed
+	 * 
+	 * @param request
+	 * @param response
+	 * @param post the posted object
+	 * @param write
+	 * @return the response body
+	 * @throws ResponseException
+	 * @should replay the response to a request with the same key
+	 * @should reject a key reused for a different request
+	 * @should not remember failed requests
+	 * @should replay the response body as it was
+	 * @should not remember responses with a body that is too long
+	 * @should treat bodies with the same properties in another order as the same request
+	 * @should reject a key that is too long
+	 * @should not remember requests that sent an error
+	 */
+	public static Object execute(HttpServletRequest request, HttpServletResponse response, SimpleObject post, Write write)
+	        throws ResponseException {
+		String key = request.getHeader(RestConstants.HEADER_IDEMPOTENCY_KEY);
+		if (StringUtils.isBlank(key) || !Context.isAuthenticated())
+			return write.write(response);
+		
+		if (key.length() > MAX_KEY_LENGTH)
+			throw new IllegalRequestException("The idempotency key must not be longer than " + MAX_KEY_LENGTH
+			        + " characters");
+		
+		key = Context.getAuthenticatedUser().getUserId() + ":" + key;
+		String fingerprint = getFingerprint(request, post);
+		
+		Entry entry = new Entry(fingerprint);
+		Entry cached;
+		synchronized (cache) {
+			cached = cache.get(key);
+			if (cached != null && cached.expires < System.currentTimeMillis()) {
+				cache.remove(key);
+				cached = null;
+			}
+			if (cached == null)
+				cache.put(key, entry);
+		}
+		if (cached != null)
+			return cached.replay(fingerprint, response);
+		
+		RecordingResponse recording = new RecordingResponse(response);
+		boolean remembered = false;
+		try {
+			Object body = write.write(recording);
+			remembered = !recording.error && entry.complete(recording, body);
+			return body;
+		}
+		finally {
+			if (!remembered)
+				cache.remove(key);
+		}
+	}
+	
+	/**
+	 * @param request
+	 * @param post may be null
+	 * @return a digest of the method, the URI and the body with its properties sorted by name
+	 * @throws ConversionException
+	 */
+	private static String getFingerprint(HttpServletRequest request, SimpleObject post) throws ConversionException {
+		try {
+			return RestUtil.digest(request.getMethod() + " " + request.getRequestURI() + " "
+			        + mapper.writeValueAsString(canonical(post)));
+		}
+		catch (IOException ex) {
+			throw new ConversionException("Unable to read the posted object", ex);
+		}
+	}
+	
+	/**
+	 * @param value
+	 * @return the value with the entries of all nested maps sorted by key
+	 */
+	private static Object canonical(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> sorted = new TreeMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				sorted.put(String.valueOf(entry.getKey()), canonical(entry.getValue()));
+			}
+			return sorted;
+		} else if (value instanceof Collection) {
+			List<Object> list = new ArrayList<Object>();
+			for (Object item : (Collection<?>) value) {
+				list.add(canonical(item));
+			}
+			return list;
+		}
+		return value;
+	}
+	
+	/**
+	 * Forgets all responses
+	 */
+	public static void clear() {
+		cache.clear();
+	}
+	
+	private static class Entry {
+		
+		private final String fingerprint;
+		
+		private final long expires = System.currentTimeMillis() + TTL;
+		
+		private volatile boolean complete = false;
+		
+		private int status;
+		
+		private List<Header> headers;
+		
+		private String body;
+		
+		private boolean map;
+		
+		public Entry(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+		
+		/**
+		 * @param response
+		 * @param body
+		 * @return false if the body cannot be kept
+		 */
+		public boolean complete(RecordingResponse response, Object body) {
+			if (body != null) {
+				try {
+					this.body = mapper.writeValueAsString(body);
+				}
+				catch (IOException ex) {
+					return false;
+				}
+				if (this.body.length() > MAX_BODY_LENGTH)
+					return false;
+				this.map = body instanceof Map;
+			}
+			this.status = response.status;
+			this.headers = response.headers;
+			complete = true;
+			return true;
+		}
+		
+		public Object replay(String fingerprint, HttpServletResponse response) throws ResponseException {
+			if (!this.fingerprint.equals(fingerprint))
+				throw new ConflictException("The idempotency key was used for a different request");
+			if (!complete)
+				throw new ConflictException("A request with the same idempotency key is being handled");
+			response.setStatus(status);
+			for (Header header : headers) {
+				header.addTo(response);
+			}
+			response.addHeader(RestConstants.HEADER_IDEMPOTENT_REPLAYED, "true");
+			if (body == null)
+				return null;
+			try {
+				return mapper.readValue(body, map ? SimpleObject.class : Object.class);
+			}
+			catch (IOException ex) {
+				throw new ConversionException("Unable to replay the response", ex);
+			}
+		}
+	}
+	
+	/**
+	 * A header as it was set, so that int and date headers are replayed in the same format
+	 */
+	private static class Header {
+		
+		private final String name;
+		
+		private final Object value;
+		
+		private final boolean date;
+		
+		public Header(String name, Object value, boolean date) {
+			this.name = name;
+			this.value = value;
+			this.date = date;
+		}
+		
+		public void addTo(HttpServletResponse response) {
+			if (date)
+				response.addDateHeader(name, (Long) value);
+			else if (value instanceof Integer)
+				response.addIntHeader(name, (Integer) value);
+			else
+				response.addHeader(name, (String) value);
+		}
+	}
+	
+	/**
+	 * Records the status and headers set by a write, and whether it sent an error
+	 */
+	private static class RecordingResponse extends HttpServletResponseWrapper {
+		
+		private int status = HttpServletResponse.SC_OK;
+		
+		private boolean error = false;
+		
+		private final List<Header> headers = new ArrayList<Header>();
+		
+		public RecordingResponse(HttpServletResponse response) {
+			super(response);
+		}
+		
+		@Override
+		public void setStatus(int status) {
+			this.status = status;
+			super.setStatus(status);
+		}
+		
+		@SuppressWarnings("deprecation")
+		@Override
+		public void setStatus(int status, String message) {
+			this.status = status;
+			super.setStatus(status, message);
+		}
+		
+		@Override
+		public void sendError(int status) throws IOException {
+			this.status = status;
+			error = true;
+			super.sendError(status);
+		}
+		
+		@Override
+		public void sendError(int status, String message) throws IOException {
+			this.status = status;
+			error = true;
+			super.sendError(status, message);
+		}
+		
+		@Override
+		public void addHeader(String name, String value) {
+			headers.add(new Header(name, value, false));
+			super.addHeader(name, value);
+		}
+		
+		@Override
+		public void setHeader(String name, String value) {
+			replace(new Header(name, value, false));
+			super.setHeader(name, value);
+		}
+		
+		@Override
+		public void addIntHeader(String name, int value) {
+			headers.add(new Header(name, value, false));
+			super.addIntHeader(name, value);
+		}
+		
+		@Override
+		public void setIntHeader(String name, int value) {
+			replace(new Header(name, value, false));
+			super.setIntHeader(name, value);
+		}
+		
+		@Override
+		public void addDateHeader(String name, long date) {
+			headers.add(new Header(name, date, true));
+			super.addDateHeader(name, date);
+		}
+		
+		@Override
+		public void setDateHeader(String name, long date) {
+			replace(new Header(name, date, true));
+			super.setDateHeader(name, date);
+		}
+		
+		private void replace(Header header) {
+			for (int i = headers.size() - 1; i >= 0; i--) {
+				if (headers.get(i).name.equalsIgnoreCase(header.name))
+					headers.remove(i);
+			}
+			headers.add(header);
+		}
+	}
+}
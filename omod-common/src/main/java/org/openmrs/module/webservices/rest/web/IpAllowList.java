@@ -0,0 +1,251 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+/**
+ * The IPs and ranges allowed to access the REST API, compiled into a binary trie per address
+ * family so that checking an address takes at most one step per bit, however many ranges there
+ * are.
+ * <p>
+ * Candidates are IPs with an optional bit mask, e.g. <code>10.0.0.0/24</code> or
+ * <code>2001:db8::/32</code>. A candidate that is not an IP literal is resolved once when the list
+ * is compiled. Addresses that are checked must be IP literals, and are never resolved. As with
+ * {@link InetAddress}, IPv4-mapped IPv6 addresses are treated as IPv4 addresses.
+ */
+public class IpAllowList {
+	
+	private final Node ipv4 = new Node();
+	
+	private final Node ipv6 = new Node();
+	
+	private final boolean empty;
+	
+	private IpAllowList(boolean empty) {
+		this.empty = empty;
+	}
+	
+	/**
+	 * @param candidateIps IPs with optional bit masks
+	 * @return the compiled list, which allows every address if candidateIps is empty
+	 * @throws IllegalArgumentException if a candidate or a mask is invalid
+	 * @should match addresses within any of the ranges
+	 * @should match the first and last address of a range
+	 * @should match every address of the family for a zero mask
+	 * @should match only the address itself for a full mask
+	 * @should keep a broader range added after a narrower one
+	 * @should fail for an invalid mask
+	 * @should fail for a malformed ip
+	 */
+	public static IpAllowList compile(List<String> candidateIps) {
+		IpAllowList ret = new IpAllowList(candidateIps.isEmpty());
+		for (String candidateIp : candidateIps) {
+			// split IP and mask
+			String[] candidateIpPattern = candidateIp.split("/");
+			byte[] address = parse(candidateIpPattern[0]);
+			if (address == null) {
+				try {
+					address = InetAddress.getByName(candidateIpPattern[0]).getAddress();
+				}
+				catch (UnknownHostException e) {
+					throw new IllegalArgumentException("Invalid IP in the candidateIps parameter", e);
+				}
+			}
+			
+			int bits = address.length * 8;
+			if (candidateIpPattern.length > 1) {
+				bits = Integer.parseInt(candidateIpPattern[1]);
+				if (bits < 0 || bits > address.length * 8) {
+					throw new IllegalArgumentException("Invalid mask " + bits + " for IP " + candidateIp
+					        + " in the candidateIps parameter");
+				}
+			}
+			ret.add(address, bits);
+		}
+		return ret;
+	}
+	
+	private void add(byte[] address, int bits) {
+		Node node = address.length == 4 ? ipv4 : ipv6;
+		for (int i = 0; i < bits && !node.allowed; i++) {
+			if (bit(address, i) == 0) {
+				if (node.zero == null)
+					node.zero = new Node();
+				node = node.zero;
+			} else {
+				if (node.one == null)
+					node.one = new Node();
+				node = node.one;
+			}
+		}
+		// everything below is covered by this range now
+		node.allowed = true;
+		node.zero = null;
+		node.one = null;
+	}
+	
+	/**
+	 * @param ip an IPv4 or IPv6 literal
+	 * @return true if the list is empty or ip is within one of its ranges
+	 * @throws IllegalArgumentException if ip is not an IP literal
+	 * @should not resolve host names
+	 * @should allow every address if the list is empty
+	 * @should fail for malformed addresses
+	 */
+	public boolean matches(String ip) {
+		if (empty)
+			return true;
+		byte[] address = parse(ip);
+		if (address == null)
+			throw new IllegalArgumentException("Invalid IP in the ip parameter" + ip);
+		
+		Node node = address.length == 4 ? ipv4 : ipv6;
+		int length = address.length * 8;
+		for (int i = 0; i < length && !node.allowed; i++) {
+			node = bit(address, i) == 0 ? node.zero : node.one;
+			if (node == null)
+				return false;
+		}
+		return node.allowed;
+	}
+	
+	private static int bit(byte[] address, int index) {
+		return (address[index >> 3] >> (7 - (index & 7))) & 1;
+	}
+	
+	/**
+	 * @param ip
+	 * @return the 4 or 16 bytes of the address, or null if ip is not an IP literal
+	 */
+	static byte[] parse(String ip) {
+		if (ip == null)
+			return null;
+		if (ip.startsWith("[") && ip.endsWith("]"))
+			ip = ip.substring(1, ip.length() - 1);
+		int zone = ip.indexOf('%');
+		if (zone >= 0)
+			ip = ip.substring(0, zone);
+		
+		if (ip.indexOf(':') < 0)
+			return parseIpv4(ip);
+		byte[] address = parseIpv6(ip);
+		if (address != null && isIpv4Mapped(address)) {
+			byte[] ipv4Address = new byte[4];
+			System.arraycopy(address, 12, ipv4Address, 0, 4);
+			return ipv4Address;
+		}
+		return address;
+	}
+	
+	private static byte[] parseIpv4(String ip) {
+		String[] parts = ip.split("\\.", -1);
+		if (parts.length != 4)
+			return null;
+		byte[] address = new byte[4];
+		for (int i = 0; i < 4; i++) {
+			int value = parseNumber(parts[i], 10, 3);
+			if (value < 0 || value > 255)
+				return null;
+			address[i] = (byte) value;
+		}
+		return address;
+	}
+	
+	private static byte[] parseIpv6(String ip) {
+		// an IPv4 address in the last 32 bits, e.g. ::ffff:10.0.0.1
+		byte[] embedded = null;
+		int lastColon = ip.lastIndexOf(':');
+		if (ip.indexOf('.', lastColon) >= 0) {
+			embedded = parseIpv4(ip.substring(lastColon + 1));
+			if (embedded == null)
+				return null;
+			ip = ip.substring(0, lastColon + 1) + "0:0";
+		}
+		
+		int gap = ip.indexOf("::");
+		if (gap >= 0 && ip.indexOf("::", gap + 1) >= 0)
+			return null;
+		int[] head = parseGroups(gap < 0 ? ip : ip.substring(0, gap));
+		int[] tail = parseGroups(gap < 0 ? "" : ip.substring(gap + 2));
+		if (head == null || tail == null)
+			return null;
+		if (gap < 0 ? head.length != 8 : head.length + tail.length > 7)
+			return null;
+		
+		byte[] address = new byte[16];
+		for (int i = 0; i < head.length; i++) {
+			address[i * 2] = (byte) (head[i] >> 8);
+			address[i * 2 + 1] = (byte) head[i];
+		}
+		for (int i = 0; i < tail.length; i++) {
+			int offset = 16 - (tail.length - i) * 2;
+			address[offset] = (byte) (tail[i] >> 8);
+			address[offset + 1] = (byte) tail[i];
+		}
+		if (embedded != null)
+			System.arraycopy(embedded, 0, address, 12, 4);
+		return address;
+	}
+	
+	private static int[] parseGroups(String groups) {
+		if (groups.length() == 0)
+			return new int[0];
+		String[] parts = groups.split(":", -1);
+		int[] ret = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			ret[i] = parseNumber(parts[i], 16, 4);
+			if (ret[i] < 0)
+				return null;
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return the value of 1 to maxDigits digits, or -1 if number is not such a number
+	 */
+	private static int parseNumber(String number, int radix, int maxDigits) {
+		if (number.length() == 0 || number.length() > maxDigits)
+			return -1;
+		int value = 0;
+		for (int i = 0; i < number.length(); i++) {
+			char c = number.charAt(i);
+			// only ASCII digits, Character.digit accepts others too
+			int digit = c < 128 ? Character.digit(c, radix) : -1;
+			if (digit < 0)
+				return -1;
+			value = value * radix + digit;
+		}
+		return value;
+	}
+	
+	private static boolean isIpv4Mapped(byte[] address) {
+		for (int i = 0; i < 10; i++) {
+			if (address[i] != 0)
+				return false;
+		}
+		return address[10] == (byte) 0xff && address[11] == (byte) 0xff;
+	}
+	
+	private static class Node {
+		
+		private Node zero;
+		
+		private Node one;
+		
+		private boolean allowed;
+	}
+}
@@ -15,6 +15,8 @@ package org.openmrs.module.webservices.rest.web;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -141,8 +143,9 @@ public class RequestContext {
 	public void setLimit(Integer limit) {
 		if (limit == null || limit <= 0)
 			throw new APIException("If you specify a number of results to return, it must be >0 and not null");
-		if (limit > RestUtil.getAbsoluteLimit())
-			throw new APIException("Administrator has set absolute limit at " + RestUtil.getAbsoluteLimit());
+		Integer absoluteLimit = RestUtil.getAbsoluteLimit();
+		if (limit > absoluteLimit)
+			throw new APIException("Administrator has set absolute limit at " + absoluteLimit);
 		else
 			this.limit = limit;
 	}
@@ -192,16 +195,38 @@ public class RequestContext {
 		return new Hyperlink("prev", request.getRequestURL().append(query).toString());
 	}
 	
+	/**
+	 * For results that are paged by key rather than by position: the next page starts after the
+	 * last key of this one, which is passed in the given parameter instead of the startIndex.
+	 * 
+	 * @param parameter the name of the request parameter for the key
+	 * @param key the last key of the current page
+	 * @return the hyperlink you would GET to fetch the next page of results
+	 */
+	public Hyperlink getNextLink(String parameter, Object key) {
+		String query = getQueryWithout(RestConstants.REQUEST_PROPERTY_FOR_START_INDEX, parameter);
+		query += parameter + "=" + key;
+		return new Hyperlink("next", request.getRequestURL().append(query).toString());
+	}
+	
 	/**
 	 * @return the query string from this request, with the startIndex query parameter removed if it
 	 *         was present
 	 */
-	@SuppressWarnings("unchecked")
 	private String getQueryWithoutStartIndex() {
+		return getQueryWithout(RestConstants.REQUEST_PROPERTY_FOR_START_INDEX);
+	}
+	
+	/**
+	 * @return the query string from this request, with the given query parameters removed if they
+	 *         were present
+	 */
+	@SuppressWarnings("unchecked")
+	private String getQueryWithout(String... removedParams) {
 		StringBuilder query = new StringBuilder("?");
 		for (Map.Entry<String, String[]> e : ((Map<String, String[]>) (request.getParameterMap())).entrySet()) {
 			String param = e.getKey();
-			if (RestConstants.REQUEST_PROPERTY_FOR_START_INDEX.equals(param)) {
+			if (Arrays.asList(removedParams).contains(param)) {
 				continue;
 			}
 			for (int i = 0; i < e.getValue().length; ++i) {
@@ -216,6 +241,46 @@ public class RequestContext {
 		return query.toString();
 	}
 	
+	/**
+	 * @return true if the client asked for only the uuid of a created or updated object, either with
+	 *         a <code>Prefer: return=minimal</code> header or with the
+	 *         {@link RestConstants#REQUEST_PROPERTY_FOR_RETURN} parameter
+	 * @should return true for a prefer header asking for a minimal return
+	 * @should return false if no minimal return was asked for
+	 */
+	public boolean isReturnMinimal() {
+		if (request == null)
+			return false;
+		if (RestConstants.RETURN_MINIMAL.equals(request.getParameter(RestConstants.REQUEST_PROPERTY_FOR_RETURN)))
+			return true;
+		return hasPreference("return=" + RestConstants.RETURN_MINIMAL);
+	}
+	
+	/**
+	 * @return true if the client asked for a write to be processed asynchronously, either with a
+	 *         <code>Prefer: respond-async</code> header or with the
+	 *         {@link RestConstants#REQUEST_PROPERTY_FOR_ASYNC} parameter
+	 * @should return true for a prefer header asking for an asynchronous response
+	 */
+	public boolean isRespondAsync() {
+		if (request == null)
+			return false;
+		if ("true".equals(request.getParameter(RestConstants.REQUEST_PROPERTY_FOR_ASYNC)))
+			return true;
+		return hasPreference(RestConstants.PREFER_RESPOND_ASYNC);
+	}
+	
+	private boolean hasPreference(String expected) {
+		Enumeration<?> headers = request.getHeaders(RestConstants.HEADER_PREFER);
+		while (headers != null && headers.hasMoreElements()) {
+			for (String preference : headers.nextElement().toString().split("[,;]")) {
+				if (preference.replace(" ", "").equalsIgnoreCase(expected))
+					return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Convenience method that returns a parameter value as a string if a request parameter with the
 	 * specified name exists in the associated {@link HttpServletRequest} object
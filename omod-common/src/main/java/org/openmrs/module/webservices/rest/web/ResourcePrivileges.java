@@ -0,0 +1,143 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.ClassUtils;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.OpenmrsService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+
+/**
+ * Checks the privileges that the services require to read or save the objects of a resource, for
+ * the places that do not go through those services, e.g. objects loaded with one query or written
+ * later by another thread.
+ * <p>
+ * The privileges are taken from the {@link Authorized} annotation of the service method following
+ * the usual naming, i.e. getPatientByUuid(String) to view and savePatient(Patient) to create a
+ * patient. Superclasses of the supported class are tried as well, so that a concept numeric is
+ * checked like a concept.
+ */
+public class ResourcePrivileges {
+	
+	private static final Map<String, Authorized> authorizations = new HashMap<String, Authorized>();
+	
+	private ResourcePrivileges() {
+	}
+	
+	/**
+	 * @param resource
+	 * @return the class supported by the resource, or null if it has no {@link Resource} annotation
+	 */
+	public static Class<?> getSupportedClass(Object resource) {
+		Resource annotation = resource != null ? resource.getClass().getAnnotation(Resource.class) : null;
+		return annotation != null ? annotation.supportedClass() : null;
+	}
+	
+	/**
+	 * @param supportedClass
+	 * @return true if the service method retrieving an object of the class by uuid is known and the
+	 *         current user, who may be anonymous, would be allowed to call it
+	 * @should return false if no service method is known
+	 * @should return true if the user may retrieve objects of the class
+	 */
+	public static boolean canView(Class<?> supportedClass) {
+		Authorized authorized = getAuthorized("get", "ByUuid", supportedClass);
+		return authorized != null && isAllowed(authorized);
+	}
+	
+	/**
+	 * Checks that an authenticated user is allowed to save new objects of the class. If no service
+	 * method saving the class is known, authentication is all that can be checked, and the service
+	 * checks the rest when the object is saved.
+	 * 
+	 * @param supportedClass may be null
+	 * @throws APIAuthenticationException if the user is anonymous or lacks a privilege
+	 * @should reject an anonymous user
+	 */
+	public static void requireCreate(Class<?> supportedClass) throws APIAuthenticationException {
+		if (!Context.isAuthenticated())
+			throw new APIAuthenticationException("Authentication is required to create "
+			        + (supportedClass != null ? supportedClass.getSimpleName() : "objects"));
+		Authorized authorized = supportedClass != null ? getAuthorized("save", "", supportedClass) : null;
+		if (authorized != null && !isAllowed(authorized))
+			throw new APIAuthenticationException("Privileges required: " + StringUtils.join(authorized.value(), ", "));
+	}
+	
+	/**
+	 * Mirrors the authorization advice of core: no privileges means any authenticated user, and
+	 * otherwise one of them is enough unless all of them are required
+	 */
+	private static boolean isAllowed(Authorized authorized) {
+		String[] privileges = authorized.value();
+		if (privileges.length == 0)
+			return Context.isAuthenticated();
+		for (String privilege : privileges) {
+			boolean has = Context.hasPrivilege(privilege);
+			if (has && !authorized.requireAll())
+				return true;
+			if (!has && authorized.requireAll())
+				return false;
+		}
+		return authorized.requireAll();
+	}
+	
+	private static Authorized getAuthorized(String prefix, String suffix, Class<?> supportedClass) {
+		String key = prefix + "|" + suffix + "|" + supportedClass.getName();
+		synchronized (authorizations) {
+			if (authorizations.containsKey(key))
+				return authorizations.get(key);
+		}
+		Authorized authorized = null;
+		List<OpenmrsService> services = Context.getRegisteredComponents(OpenmrsService.class);
+		for (Class<?> type = supportedClass; authorized == null && type != null && type != Object.class; type = type
+		        .getSuperclass()) {
+			String name = prefix + type.getSimpleName() + suffix;
+			for (OpenmrsService service : services) {
+				authorized = findAuthorized(service, name, type);
+				if (authorized != null)
+					break;
+			}
+		}
+		synchronized (authorizations) {
+			authorizations.put(key, authorized);
+		}
+		return authorized;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Authorized findAuthorized(OpenmrsService service, String name, Class<?> type) {
+		for (Class<?> serviceInterface : (List<Class<?>>) ClassUtils.getAllInterfaces(service.getClass())) {
+			if (!OpenmrsService.class.isAssignableFrom(serviceInterface))
+				continue;
+			for (Method method : serviceInterface.getMethods()) {
+				Class<?>[] parameters = method.getParameterTypes();
+				if (method.getName().equals(name) && parameters.length > 0
+				        && (parameters[0].equals(String.class) || parameters[0].isAssignableFrom(type))) {
+					Authorized authorized = method.getAnnotation(Authorized.class);
+					if (authorized != null)
+						return authorized;
+				}
+			}
+		}
+		return null;
+	}
+}
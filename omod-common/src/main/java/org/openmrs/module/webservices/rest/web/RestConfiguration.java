@@ -0,0 +1,252 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * An immutable snapshot of the global properties of this module, so that values read on every
+ * request (e.g. the limits of {@link RequestContext} and the allowed IPs) do not have to be looked
+ * up in the database each time.
+ * <p>
+ * The snapshot is loaded with a single query when it is first needed, and discarded by
+ * {@link RestUtil} as a global property listener whenever one of the properties changes.
+ */
+public class RestConfiguration {
+	
+	private static final Log log = LogFactory.getLog(RestConfiguration.class);
+	
+	private static volatile RestConfiguration current;
+	
+	private static long version = 0;
+	
+	private final Map<String, String> properties;
+	
+	private final int defaultLimit;
+	
+	private final int absoluteLimit;
+	
+	private final List<String> allowedIps;
+	
+	private final IpAllowList ipAllowList;
+	
+	private final IllegalArgumentException ipAllowListError;
+	
+	private final Map<String, String> cacheControlPolicies;
+	
+	private final int basicAuthCacheSeconds;
+	
+	private final int sessionTokenSeconds;
+	
+	/**
+	 * @param properties the values of the global properties by name
+	 */
+	RestConfiguration(Map<String, String> properties) {
+		this.properties = Collections.unmodifiableMap(new HashMap<String, String>(properties));
+		defaultLimit = parseInteger(RestConstants.MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME, RestConstants.MAX_RESULTS_DEFAULT);
+		absoluteLimit = parseInteger(RestConstants.MAX_RESULTS_ABSOLUTE_GLOBAL_PROPERTY_NAME,
+		    RestConstants.MAX_RESULTS_ABSOLUTE);
+		allowedIps = parseAllowedIps(getProperty(RestConstants.ALLOWED_IPS_GLOBAL_PROPERTY_NAME, ""));
+		IpAllowList compiled = null;
+		IllegalArgumentException error = null;
+		try {
+			compiled = IpAllowList.compile(allowedIps);
+		}
+		catch (IllegalArgumentException ex) {
+			log.error(RestConstants.ALLOWED_IPS_GLOBAL_PROPERTY_NAME + " is invalid. " + ex.getMessage());
+			error = ex;
+		}
+		ipAllowList = compiled;
+		ipAllowListError = error;
+		cacheControlPolicies = CacheControlPolicy.parse(getProperty(RestConstants.CACHE_CONTROL_GLOBAL_PROPERTY_NAME));
+		basicAuthCacheSeconds = parseInteger(RestConstants.BASIC_AUTH_CACHE_SECONDS_GLOBAL_PROPERTY_NAME, 0);
+		int tokenSeconds = parseInteger(RestConstants.SESSION_TOKEN_SECONDS_GLOBAL_PROPERTY_NAME,
+		    RestConstants.SESSION_TOKEN_SECONDS_DEFAULT);
+		sessionTokenSeconds = tokenSeconds > 0 ? tokenSeconds : RestConstants.SESSION_TOKEN_SECONDS_DEFAULT;
+	}
+	
+	/**
+	 * @return the current snapshot, loading it if the properties changed since it was last loaded
+	 * @should load the snapshot when no user is authenticated
+	 */
+	public static RestConfiguration get() {
+		RestConfiguration ret = current;
+		if (ret == null) {
+			long loadedVersion;
+			synchronized (RestConfiguration.class) {
+				loadedVersion = version;
+			}
+			ret = load();
+			synchronized (RestConfiguration.class) {
+				// a snapshot loaded while the properties were being changed must not be kept
+				if (loadedVersion == version)
+					current = ret;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Loads the snapshot, which is first needed before the request is authenticated (e.g. to check
+	 * the allowed IPs)
+	 */
+	private static RestConfiguration load() {
+		Map<String, String> properties = new HashMap<String, String>();
+		try {
+			Context.addProxyPrivilege(PrivilegeConstants.VIEW_GLOBAL_PROPERTIES);
+			for (GlobalProperty gp : Context.getAdministrationService().getGlobalPropertiesByPrefix(
+			    RestConstants.MODULE_ID + ".")) {
+				properties.put(gp.getProperty(), gp.getPropertyValue());
+			}
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.VIEW_GLOBAL_PROPERTIES);
+		}
+		return new RestConfiguration(properties);
+	}
+	
+	/**
+	 * Discards the current snapshot. If called within a transaction, it is discarded again when the
+	 * transaction completes, since another request could load the old values before it commits.
+	 * 
+	 * @should load the changed values when next needed
+	 */
+	public static void reset() {
+		discard();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					discard();
+				}
+			});
+		}
+	}
+	
+	private static synchronized void discard() {
+		version++;
+		current = null;
+	}
+	
+	/**
+	 * @param name the full name of a global property of this module
+	 * @return the value, or null if it is not set
+	 */
+	public String getProperty(String name) {
+		return properties.get(name);
+	}
+	
+	/**
+	 * @param name the full name of a global property of this module
+	 * @param defaultValue
+	 * @return the value, or defaultValue if it is not set
+	 */
+	public String getProperty(String name, String defaultValue) {
+		String value = properties.get(name);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * @return the number of results returned when the client does not ask for a limit
+	 * @see RestConstants#MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME
+	 */
+	public int getDefaultLimit() {
+		return defaultLimit;
+	}
+	
+	/**
+	 * @return the maximum number of results a client may ask for
+	 * @see RestConstants#MAX_RESULTS_ABSOLUTE_GLOBAL_PROPERTY_NAME
+	 */
+	public int getAbsoluteLimit() {
+		return absoluteLimit;
+	}
+	
+	/**
+	 * @return the IPs and masks allowed to access the API, empty if any IP is allowed
+	 * @see RestConstants#ALLOWED_IPS_GLOBAL_PROPERTY_NAME
+	 */
+	public List<String> getAllowedIps() {
+		return allowedIps;
+	}
+	
+	/**
+	 * @return the allowed IPs compiled for matching
+	 * @throws IllegalArgumentException if the allowed IPs are invalid, in which case no IP is allowed
+	 * @see RestConstants#ALLOWED_IPS_GLOBAL_PROPERTY_NAME
+	 */
+	public IpAllowList getIpAllowList() {
+		if (ipAllowListError != null)
+			throw new IllegalArgumentException(ipAllowListError.getMessage(), ipAllowListError);
+		return ipAllowList;
+	}
+	
+	/**
+	 * @return the configured Cache-Control policies by lower case resource name
+	 * @see CacheControlPolicy
+	 */
+	public Map<String, String> getCacheControlPolicies() {
+		return cacheControlPolicies;
+	}
+	
+	/**
+	 * @return how many seconds verified Basic Authorization headers are trusted, 0 if they are not
+	 *         cached
+	 * @see RestConstants#BASIC_AUTH_CACHE_SECONDS_GLOBAL_PROPERTY_NAME
+	 */
+	public int getBasicAuthCacheSeconds() {
+		return basicAuthCacheSeconds;
+	}
+	
+	/**
+	 * @return how many seconds session tokens are valid
+	 * @see RestConstants#SESSION_TOKEN_SECONDS_GLOBAL_PROPERTY_NAME
+	 */
+	public int getSessionTokenSeconds() {
+		return sessionTokenSeconds;
+	}
+	
+	private int parseInteger(String name, int defaultValue) {
+		String limit = getProperty(name);
+		if (StringUtils.isEmpty(limit))
+			return defaultValue;
+		try {
+			return Integer.parseInt(limit);
+		}
+		catch (NumberFormatException nfex) {
+			log.error(name + " must be an integer. " + nfex.getMessage());
+			return defaultValue;
+		}
+	}
+	
+	private static List<String> parseAllowedIps(String value) {
+		if (value.isEmpty())
+			return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList(value.split("[\\s,]+")));
+	}
+}
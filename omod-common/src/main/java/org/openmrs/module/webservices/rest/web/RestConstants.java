@@ -63,6 +63,56 @@ public class RestConstants {
 	 */
 	public static String ALLOWED_IPS_GLOBAL_PROPERTY_NAME = MODULE_ID + ".allowedips";
 	
+	/**
+	 * The key of the global property that an admin can set to a port on which HL7 messages are
+	 * accepted over MLLP. The listener is disabled if it is empty.
+	 */
+	public static String MLLP_PORT_GLOBAL_PROPERTY_NAME = MODULE_ID + ".mllpPort";
+	
+	/**
+	 * The key of the global property that an admin can set to the address the MLLP listener binds
+	 * to, e.g. 0.0.0.0 for all interfaces. It listens on the loopback interface if it is empty.
+	 */
+	public static String MLLP_BIND_ADDRESS_GLOBAL_PROPERTY_NAME = MODULE_ID + ".mllpBindAddress";
+	
+	/**
+	 * The key of the global property that an admin can set to a comma separated list of resources,
+	 * e.g. encounter,obs,hl7, whose objects can be created asynchronously through the write journal
+	 */
+	public static String JOURNALED_RESOURCES_GLOBAL_PROPERTY_NAME = MODULE_ID + ".journaledResources";
+	
+	/**
+	 * The key of the global property that an admin can set to the Cache-Control headers of GET
+	 * responses per resource, as semicolon separated name=policy entries
+	 * 
+	 * @see CacheControlPolicy
+	 */
+	public static String CACHE_CONTROL_GLOBAL_PROPERTY_NAME = MODULE_ID + ".cacheControl";
+	
+	/**
+	 * The key of the global property that an admin can set to the number of seconds verified Basic
+	 * Authorization headers are trusted without authenticating again, 0 or empty to always
+	 * authenticate
+	 * 
+	 * @see org.openmrs.module.webservices.rest.web.filter.BasicAuthCache
+	 */
+	public static String BASIC_AUTH_CACHE_SECONDS_GLOBAL_PROPERTY_NAME = MODULE_ID + ".basicAuthCacheSeconds";
+	
+	/**
+	 * The key of the global property that an admin can set to the number of seconds session tokens
+	 * are valid
+	 * 
+	 * @see org.openmrs.module.webservices.rest.web.filter.SessionTokens
+	 */
+	public static String SESSION_TOKEN_SECONDS_GLOBAL_PROPERTY_NAME = MODULE_ID + ".sessionTokenSeconds";
+	
+	/**
+	 * How many seconds session tokens are valid unless configured otherwise
+	 * 
+	 * @see #SESSION_TOKEN_SECONDS_GLOBAL_PROPERTY_NAME
+	 */
+	public static final int SESSION_TOKEN_SECONDS_DEFAULT = 3600;
+	
 	/**
 	 * The version number for the first rest web services representations
 	 */
@@ -134,6 +184,89 @@ public class RestConstants {
 	 */
 	public static final String REQUEST_PROPERTY_FOR_SEARCH_ID = "s";
 	
+	/**
+	 * An optional request parameter with a comma separated list of uuids, to retrieve many objects
+	 * of a resource at once.
+	 */
+	public static final String REQUEST_PROPERTY_FOR_UUIDS = "uuids";
+	
+	/**
+	 * An optional request parameter for writes. If it is {@link #RETURN_MINIMAL}, only the uuid of
+	 * the created or updated object is returned, like with a {@link #HEADER_PREFER} header of
+	 * <code>return=minimal</code>.
+	 */
+	public static final String REQUEST_PROPERTY_FOR_RETURN = "return";
+	
+	public static final String RETURN_MINIMAL = "minimal";
+	
+	/**
+	 * The request header with which clients state preferences such as <code>return=minimal</code>
+	 */
+	public static final String HEADER_PREFER = "Prefer";
+	
+	/**
+	 * The response header listing the preferences that were honoured
+	 */
+	public static final String HEADER_PREFERENCE_APPLIED = "Preference-Applied";
+	
+	/**
+	 * The preference with which clients ask for a write to be accepted without waiting for it to be
+	 * processed, like with the {@link #REQUEST_PROPERTY_FOR_ASYNC} parameter
+	 */
+	public static final String PREFER_RESPOND_ASYNC = "respond-async";
+	
+	/**
+	 * An optional request parameter for writes that support asynchronous processing. If it is
+	 * <code>true</code>, the request is answered with 202 (Accepted) once it has been queued.
+	 */
+	public static final String REQUEST_PROPERTY_FOR_ASYNC = "async";
+	
+	/**
+	 * The response header telling clients how many seconds to wait before retrying a request
+	 */
+	public static final String HEADER_RETRY_AFTER = "Retry-After";
+	
+	/**
+	 * The request header with which clients mark a write, so that retrying it returns the response to
+	 * the first attempt instead of writing again
+	 */
+	public static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+	
+	/**
+	 * The response header telling clients that a response was replayed for an idempotency key
+	 */
+	public static final String HEADER_IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+	
+	/**
+	 * The response header with the entity tag of the returned version of an object
+	 */
+	public static final String HEADER_ETAG = "ETag";
+	
+	/**
+	 * The request header with the entity tags of the versions of an object the client already has
+	 */
+	public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	
+	/**
+	 * The response header with the date a list of objects last changed
+	 */
+	public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	
+	/**
+	 * The request header with the date of the version of a list the client already has
+	 */
+	public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	
+	/**
+	 * The response header telling browsers and proxies whether and how long they may cache it
+	 */
+	public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+	
+	/**
+	 * The response header naming the request headers a cached response depends on
+	 */
+	public static final String HEADER_VARY = "Vary";
+	
 	/**
 	 * Used in object representations to indicate which specific type an instance belongs to for a
 	 * resource that represents a full class hierarchy
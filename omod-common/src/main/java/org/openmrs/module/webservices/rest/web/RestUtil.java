@@ -15,14 +15,12 @@ package org.openmrs.module.webservices.rest.web;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.UnknownHostException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -47,6 +45,7 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.api.RestService;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.impl.MetadataResponseCache;
 import org.openmrs.util.OpenmrsClassLoader;
 import org.springframework.web.bind.ServletRequestBindingException;
 import org.springframework.web.bind.ServletRequestUtils;
@@ -70,20 +69,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 * @see RestConstants#MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME
 	 */
 	public static Integer getDefaultLimit() {
-		String limit = Context.getAdministrationService().getGlobalProperty(
-		    RestConstants.MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME);
-		if (StringUtils.isNotEmpty(limit)) {
-			try {
-				return Integer.parseInt(limit);
-			}
-			catch (NumberFormatException nfex) {
-				log.error(RestConstants.MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME + " must be an integer. "
-				        + nfex.getMessage());
-				return RestConstants.MAX_RESULTS_DEFAULT;
-			}
-		} else {
-			return RestConstants.MAX_RESULTS_DEFAULT;
-		}
+		return RestConfiguration.get().getDefaultLimit();
 	}
 	
 	/**
@@ -94,20 +80,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 * @see RestConstants#MAX_RESULTS_ABSOLUTE_GLOBAL_PROPERTY_NAME
 	 */
 	public static Integer getAbsoluteLimit() {
-		String limit = Context.getAdministrationService().getGlobalProperty(
-		    RestConstants.MAX_RESULTS_ABSOLUTE_GLOBAL_PROPERTY_NAME);
-		if (StringUtils.isNotEmpty(limit)) {
-			try {
-				return Integer.parseInt(limit);
-			}
-			catch (NumberFormatException nfex) {
-				log.error(RestConstants.MAX_RESULTS_ABSOLUTE_GLOBAL_PROPERTY_NAME + " must be an integer. "
-				        + nfex.getMessage());
-				return RestConstants.MAX_RESULTS_ABSOLUTE;
-			}
-		} else {
-			return RestConstants.MAX_RESULTS_ABSOLUTE;
-		}
+		return RestConfiguration.get().getAbsoluteLimit();
 	}
 	
 	/**
@@ -119,11 +92,12 @@ public class RestUtil implements GlobalPropertyListener {
 	 * @see RestConstants#ALLOWED_IPS_GLOBAL_PROPERTY_NAME
 	 */
 	public static boolean isIpAllowed(String ip) {
-		return ipMatches(ip, getAllowedIps());
+		return RestConfiguration.get().getIpAllowList().matches(ip);
 	}
 	
 	/**
-	 * Tests whether or not there is a match between the given IP address and the candidates.
+	 * Tests whether or not there is a match between the given IP address and the candidates. The
+	 * candidates are compiled for each call, use {@link IpAllowList} to match many IPs.
 	 * 
 	 * @param ip
 	 * @param candidateIps
@@ -137,65 +111,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 * @should throw IllegalArgumentException for invalid mask
 	 */
 	public static boolean ipMatches(String ip, List<String> candidateIps) {
-		if (candidateIps.isEmpty()) {
-			return true;
-		}
-		
-		InetAddress address;
-		try {
-			address = InetAddress.getByName(ip);
-		}
-		catch (UnknownHostException e) {
-			throw new IllegalArgumentException("Invalid IP in the ip parameter" + ip, e);
-		}
-		
-		for (String candidateIp : candidateIps) {
-			// split IP and mask
-			String[] candidateIpPattern = candidateIp.split("/");
-			
-			InetAddress candidateAddress;
-			try {
-				candidateAddress = InetAddress.getByName(candidateIpPattern[0]);
-			}
-			catch (UnknownHostException e) {
-				throw new IllegalArgumentException("Invalid IP in the candidateIps parameter", e);
-			}
-			
-			if (candidateIpPattern.length == 1) { // there's no mask
-				if (address.equals(candidateAddress)) {
-					return true;
-				}
-			} else {
-				if (address.getAddress().length != candidateAddress.getAddress().length) {
-					continue;
-				}
-				
-				int bits = Integer.parseInt(candidateIpPattern[1]);
-				if (candidateAddress.getAddress().length < Math.ceil((double) bits / 8)) {
-					throw new IllegalArgumentException("Invalid mask " + bits + " for IP " + candidateIp
-					        + " in the candidateIps parameter");
-				}
-				
-				// compare bytes based on the given mask
-				boolean matched = true;
-				for (int bytes = 0; bits > 0; bytes++, bits -= 8) {
-					int mask = 0x000000FF; // mask the entire byte
-					if (bits < 8) {
-						// mask only some first bits of a byte
-						mask = (mask << (8 - bits));
-					}
-					if ((address.getAddress()[bytes] & mask) != (candidateAddress.getAddress()[bytes] & mask)) {
-						matched = false;
-						break;
-					}
-				}
-				if (matched) {
-					return true;
-				}
-			}
-			
-		}
-		return false;
+		return IpAllowList.compile(candidateIps).matches(ip);
 	}
 	
 	/**
@@ -210,15 +126,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 * @return the list of IPs
 	 */
 	public static List<String> getAllowedIps() {
-		String allowedIpsProperty = Context.getAdministrationService().getGlobalProperty(
-		    RestConstants.ALLOWED_IPS_GLOBAL_PROPERTY_NAME, "");
-		
-		if (allowedIpsProperty.isEmpty()) {
-			return Collections.emptyList();
-		} else {
-			String[] allowedIps = allowedIpsProperty.split("[\\s,]+");
-			return Arrays.asList(allowedIps);
-		}
+		return RestConfiguration.get().getAllowedIps();
 	}
 	
 	/*
@@ -560,19 +468,84 @@ public class RestUtil implements GlobalPropertyListener {
 	}
 	
 	/**
-	 * Sets the HTTP status for CREATED and (if 'created' has a uri) the Location header attribute
+	 * Sets the ETag header of the response to a GET request and checks it against the If-None-Match
+	 * header. If the client already has this version of the object, the status is set to not
+	 * modified.
+	 * 
+	 * @param eTag the entity tag of the object, may be null if it has none
+	 * @param context
+	 * @return true if the client already has this version, in which case no body must be returned
+	 * @should return true and set the status if the request has a matching If-None-Match header
+	 * @should return false for requests other than GET
+	 */
+	public static boolean isNotModified(String eTag, RequestContext context) {
+		return isNotModified(eTag, null, context);
+	}
+	
+	/**
+	 * Like {@link #isNotModified(String, RequestContext)}, but also sets the Last-Modified header and
+	 * checks it against the If-Modified-Since header, which is only used if the request has no
+	 * If-None-Match header.
+	 * 
+	 * @param eTag the entity tag of the object, may be null if it has none
+	 * @param lastModified the date the object last changed, may be null if it is not known
+	 * @param context
+	 * @return true if the client already has this version, in which case no body must be returned
+	 * @should return true if the request has a later If-Modified-Since header
+	 */
+	public static boolean isNotModified(String eTag, Date lastModified, RequestContext context) {
+		HttpServletRequest request = context.getRequest();
+		HttpServletResponse response = context.getResponse();
+		if ((eTag == null && lastModified == null) || request == null || response == null
+		        || !"GET".equals(request.getMethod()))
+			return false;
+		
+		boolean notModified = false;
+		if (lastModified != null)
+			response.setDateHeader(RestConstants.HEADER_LAST_MODIFIED, lastModified.getTime());
+		if (eTag != null)
+			response.setHeader(RestConstants.HEADER_ETAG, eTag);
+		String ifNoneMatch = request.getHeader(RestConstants.HEADER_IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = StringUtils.removeStart(candidate.trim(), "W/");
+				if (eTag != null && (candidate.equals(eTag) || candidate.equals("*")))
+					notModified = true;
+			}
+		} else if (lastModified != null) {
+			try {
+				long ifModifiedSince = request.getDateHeader(RestConstants.HEADER_IF_MODIFIED_SINCE);
+				// the header only has a precision of seconds
+				notModified = ifModifiedSince >= 0 && lastModified.getTime() / 1000 <= ifModifiedSince / 1000;
+			}
+			catch (IllegalArgumentException ex) {
+				// a date that cannot be parsed is ignored
+			}
+		}
+		if (notModified)
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		return notModified;
+	}
+	
+	/**
+	 * Sets the HTTP status for CREATED and, if 'created' has a uri and the resource has not set it
+	 * already, the Location header attribute
 	 * 
 	 * @param response
 	 * @param created
 	 * @return the object passed in
+	 * @should not add a second Location header
 	 */
 	public static Object created(HttpServletResponse response, Object created) {
 		response.setStatus(HttpServletResponse.SC_CREATED);
-		try {
-			String uri = (String) PropertyUtils.getProperty(created, "uri");
-			response.addHeader("Location", uri);
+		if (!response.containsHeader("Location")) {
+			try {
+				String uri = (String) PropertyUtils.getProperty(created, "uri");
+				if (uri != null)
+					response.setHeader("Location", uri);
+			}
+			catch (Exception ex) {}
 		}
-		catch (Exception ex) {}
 		return created;
 	}
 	
@@ -593,6 +566,24 @@ public class RestUtil implements GlobalPropertyListener {
 		return updated;
 	}
 	
+	/**
+	 * @param value
+	 * @return the hex SHA-256 digest of the value
+	 */
+	public static String digest(String value) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+	
 	/**
 	 * Updates the Uri prefix through which clients consuming web services will connect to the web
 	 * app
@@ -601,8 +592,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 */
 	public static void setUriPrefix() {
 		if (contextEnabled) {
-			RestConstants.URI_PREFIX = Context.getAdministrationService().getGlobalProperty(
-			    RestConstants.URI_PREFIX_GLOBAL_PROPERTY_NAME);
+			RestConstants.URI_PREFIX = RestConfiguration.get().getProperty(RestConstants.URI_PREFIX_GLOBAL_PROPERTY_NAME);
 		}
 		
 		if (StringUtils.isBlank(RestConstants.URI_PREFIX)) {
@@ -665,7 +655,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 */
 	@Override
 	public boolean supportsPropertyName(String propertyName) {
-		return propertyName.equals(RestConstants.URI_PREFIX_GLOBAL_PROPERTY_NAME);
+		return propertyName.startsWith(RestConstants.MODULE_ID + ".");
 	}
 	
 	/**
@@ -673,7 +663,7 @@ public class RestUtil implements GlobalPropertyListener {
 	 */
 	@Override
 	public void globalPropertyChanged(GlobalProperty newValue) {
-		setUriPrefix();
+		globalPropertyDeleted(newValue.getProperty());
 	}
 	
 	/**
@@ -681,7 +671,12 @@ public class RestUtil implements GlobalPropertyListener {
 	 */
 	@Override
 	public void globalPropertyDeleted(String propertyName) {
-		setUriPrefix();
+		RestConfiguration.reset();
+		if (propertyName.equals(RestConstants.URI_PREFIX_GLOBAL_PROPERTY_NAME)) {
+			setUriPrefix();
+			// cached representations contain links with the old prefix
+			MetadataResponseCache.invalidateAll();
+		}
 	}
 	
 	/**
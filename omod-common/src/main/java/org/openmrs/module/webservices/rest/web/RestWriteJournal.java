@@ -0,0 +1,511 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.exception.LockAcquisitionException;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.ContextAuthenticationException;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Entry;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Status;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.resource.api.CrudResource;
+import org.openmrs.module.webservices.rest.web.response.ServiceUnavailableException;
+import org.openmrs.scheduler.SchedulerConstants;
+import org.openmrs.util.OpenmrsUtil;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Lets clients create objects of the resources listed in the
+ * {@link RestConstants#JOURNALED_RESOURCES_GLOBAL_PROPERTY_NAME} global property without waiting
+ * for the database. If they ask for an asynchronous response, the posted object is appended to a
+ * {@link WriteAheadJournal} in the application data directory and 202 (Accepted) is returned with
+ * the location of the journal entry, whose status can be retrieved until it has been applied.
+ * <p>
+ * A background thread creates the journaled objects in the order they were accepted through
+ * {@link CrudResource#create(SimpleObject, RequestContext)}, as the user who posted them. Core has
+ * no daemon user in 1.8, so like the scheduled tasks of core the thread authenticates with the
+ * scheduler credentials and then becomes that user. Only authenticated users with the privilege to
+ * create objects of the resource can journal them, and an entry is never applied as anyone but the
+ * user who posted it: if that user cannot be assumed, the entry fails. If the database is busy, the
+ * entry is retried later, and if the scheduler credentials are wrong, the whole journal is retried
+ * less and less often until they are fixed. Any other error marks it as failed.
+ * <p>
+ * An entry may be applied again if the server stops after its object was created but before that
+ * was recorded. So that this does not create a second object, the object gets the uuid of the
+ * entry unless the client posted one, and an entry whose object already exists is just marked as
+ * applied.
+ */
+@Component("restWriteJournal")
+public class RestWriteJournal implements ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+	
+	public static final String JOURNAL_FILE_NAME = "write-journal.dat";
+	
+	/**
+	 * The size of the journal file, which limits how many writes can be pending
+	 */
+	public static final int CAPACITY = 64 * 1024 * 1024;
+	
+	/**
+	 * How long the drainer waits after the database was busy
+	 */
+	public static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+	
+	/**
+	 * How long the drainer waits at most after the scheduler credentials were rejected
+	 */
+	public static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	@Autowired
+	RestService restService;
+	
+	@Autowired
+	@Qualifier("transactionManager")
+	PlatformTransactionManager transactionManager;
+	
+	private volatile WriteAheadJournal journal;
+	
+	private volatile Set<String> journaledResources = Collections.emptySet();
+	
+	private volatile Thread drainer;
+	
+	private boolean drainerEnabled = true;
+	
+	/**
+	 * Whether the drainer failed to authenticate with the scheduler credentials the last time it
+	 * tried, so that this is only logged once
+	 */
+	private boolean schedulerCredentialsRejected = false;
+	
+	/**
+	 * Notified when an entry is appended or the drainer is stopped
+	 */
+	private final Object signal = new Object();
+	
+	/**
+	 * Opens the journal according to the global property whenever the application context is
+	 * refreshed
+	 * 
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		try {
+			String property = Context.getAdministrationService().getGlobalProperty(
+			    RestConstants.JOURNALED_RESOURCES_GLOBAL_PROPERTY_NAME);
+			File file = new File(OpenmrsUtil.getDirectoryInApplicationDataDirectory(RestConstants.MODULE_ID),
+			        JOURNAL_FILE_NAME);
+			// a journal left from before must be applied even if journaling has been turned off since
+			if (StringUtils.isNotBlank(property) || file.exists())
+				open(file, property);
+		}
+		catch (Exception ex) {
+			log.warn("Failed to open the write journal", ex);
+		}
+	}
+	
+	/**
+	 * Opens a journal, replacing the current one, and starts applying its pending entries
+	 * 
+	 * @param file
+	 * @param resources a comma separated list of the names of resources to journal
+	 * @throws IOException
+	 */
+	public synchronized void open(File file, String resources) throws IOException {
+		close();
+		Set<String> names = new HashSet<String>();
+		if (resources != null) {
+			for (String name : resources.split(",")) {
+				if (StringUtils.isNotBlank(name))
+					names.add(name.contains("/") ? name.trim() : RestConstants.VERSION_1 + "/" + name.trim());
+			}
+		}
+		journaledResources = names;
+		journal = new WriteAheadJournal(file, CAPACITY);
+		log.info("Opened the write journal with " + journal.getPending().size() + " pending entries");
+		startDrainer();
+	}
+	
+	/**
+	 * @see org.springframework.beans.factory.DisposableBean#destroy()
+	 */
+	@Override
+	public synchronized void destroy() throws IOException {
+		close();
+	}
+	
+	private void close() throws IOException {
+		stopDrainer();
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
+		journaledResources = Collections.emptySet();
+	}
+	
+	/**
+	 * @param resourceName e.g. v1/encounter
+	 * @return true if writes to the resource can be journaled
+	 */
+	public boolean isJournaled(String resourceName) {
+		return journal != null && journaledResources.contains(resourceName);
+	}
+	
+	/**
+	 * Journals an object to be created and sets the status and headers of the response
+	 * 
+	 * @param resourceName
+	 * @param post
+	 * @param response
+	 * @return the journal entry
+	 * @throws APIAuthenticationException if the user is anonymous or may not create such objects
+	 * @throws ServiceUnavailableException if the journal is full
+	 * @should journal the object and apply it when drained
+	 * @should reject an anonymous user
+	 */
+	public SimpleObject accept(String resourceName, SimpleObject post, HttpServletResponse response)
+	        throws ServiceUnavailableException {
+		ResourcePrivileges.requireCreate(ResourcePrivileges.getSupportedClass(restService.getResourceByName(resourceName)));
+		WriteAheadJournal current = journal;
+		Entry entry;
+		try {
+			entry = current.append(resourceName, Context.getAuthenticatedUser().getSystemId(), new ObjectMapper()
+			        .writeValueAsString(post));
+		}
+		catch (IOException ex) {
+			throw new RuntimeException("Failed to write to the write journal", ex);
+		}
+		if (entry == null) {
+			response.addHeader(RestConstants.HEADER_RETRY_AFTER, String.valueOf(RETRY_DELAY / 1000));
+			throw new ServiceUnavailableException("The write journal is full");
+		}
+		synchronized (signal) {
+			signal.notifyAll();
+		}
+		
+		response.setStatus(HttpServletResponse.SC_ACCEPTED);
+		response.addHeader(RestConstants.HEADER_PREFERENCE_APPLIED, RestConstants.PREFER_RESPOND_ASYNC);
+		SimpleObject ret = asRepresentation(entry);
+		response.addHeader("Location", (String) ret.get("uri"));
+		return ret;
+	}
+	
+	/**
+	 * @param uuid
+	 * @return the pending or recently applied journal entry, or null
+	 */
+	public Entry getEntry(String uuid) {
+		WriteAheadJournal current = journal;
+		return current != null ? current.getEntry(uuid) : null;
+	}
+	
+	public SimpleObject asRepresentation(Entry entry) {
+		SimpleObject ret = new SimpleObject();
+		ret.add("uuid", entry.getUuid());
+		ret.add("resource", entry.getResource());
+		ret.add("status", entry.getStatus().name().toLowerCase());
+		ret.add("dateReceived", ConversionUtil.convertToRepresentation(entry.getDateReceived(), null));
+		if (entry.getStatus() == Status.APPLIED)
+			ret.add("created", entry.getResult());
+		else if (entry.getStatus() == Status.FAILED)
+			ret.add("error", entry.getResult());
+		ret.add("uri", RestConstants.URI_PREFIX + RestConstants.VERSION_1 + "/journal/" + entry.getUuid());
+		return ret;
+	}
+	
+	/**
+	 * Applies the pending entries in the current thread, as the authenticated user
+	 * 
+	 * @return the number of entries that were applied or failed
+	 * @should give the created object the uuid of the entry
+	 * @should not create the object again if the entry was applied before
+	 */
+	public int drain() {
+		int resolved = 0;
+		WriteAheadJournal current = journal;
+		if (current != null) {
+			for (Entry entry : current.getPending()) {
+				if (!apply(current, entry))
+					break;
+				resolved++;
+			}
+		}
+		return resolved;
+	}
+	
+	/**
+	 * Whether pending entries are applied by a background thread. If it is disabled, they are only
+	 * applied by {@link #drain()}.
+	 * 
+	 * @param drainerEnabled
+	 */
+	public synchronized void setDrainerEnabled(boolean drainerEnabled) {
+		this.drainerEnabled = drainerEnabled;
+		if (drainerEnabled)
+			startDrainer();
+		else
+			stopDrainer();
+	}
+	
+	/**
+	 * @return false if the entry should be retried later
+	 */
+	private boolean apply(WriteAheadJournal current, final Entry entry) {
+		Status status;
+		String result;
+		try {
+			final CrudResource resource = (CrudResource) restService.getResourceByName(entry.getResource());
+			result = new TransactionTemplate(transactionManager).execute(new TransactionCallback<String>() {
+				
+				@Override
+				public String doInTransaction(TransactionStatus transactionStatus) {
+					try {
+						return create(resource, entry);
+					}
+					catch (RuntimeException ex) {
+						throw ex;
+					}
+					catch (Exception ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+			});
+			status = Status.APPLIED;
+		}
+		catch (Exception ex) {
+			if (RestUtil.hasCause(ex, TransientDataAccessException.class)
+			        || RestUtil.hasCause(ex, LockAcquisitionException.class)) {
+				log.debug("The database is busy, retrying the journal entry " + entry.getUuid() + " later", ex);
+				return false;
+			}
+			log.warn("Failed to apply the journal entry " + entry.getUuid(), ex);
+			status = Status.FAILED;
+			result = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName();
+		}
+		finally {
+			Context.clearSession();
+		}
+		
+		resolve(current, entry, status, result);
+		return true;
+	}
+	
+	/**
+	 * Creates the object of an entry, unless it exists already
+	 * 
+	 * @return the uuid of the object
+	 */
+	private String create(CrudResource resource, Entry entry) throws Exception {
+		SimpleObject post = SimpleObject.parseJson(entry.getPayload());
+		Class<?> supportedClass = ResourcePrivileges.getSupportedClass(resource);
+		boolean versioned = supportedClass != null && OpenmrsObject.class.isAssignableFrom(supportedClass);
+		String uuid = post.get("uuid") instanceof String ? (String) post.get("uuid") : entry.getUuid();
+		RestHelperService helper = Context.getService(RestHelperService.class);
+		if (versioned && helper.getObjectByUuid(supportedClass, uuid) != null) {
+			log.info("The object of the journal entry " + entry.getUuid() + " was created before");
+			return uuid;
+		}
+		
+		Object created = resource.create(post, new RequestContext());
+		String createdUuid = created instanceof SimpleObject ? (String) ((SimpleObject) created).get("uuid") : null;
+		if (versioned && createdUuid != null && !createdUuid.equals(uuid)) {
+			((OpenmrsObject) helper.getObjectByUuid(supportedClass, createdUuid)).setUuid(uuid);
+			createdUuid = uuid;
+		}
+		Context.flushSession();
+		return createdUuid;
+	}
+	
+	private void resolve(WriteAheadJournal current, Entry entry, Status status, String result) {
+		try {
+			current.resolve(entry, status, result);
+		}
+		catch (IOException ex) {
+			log.error("Failed to record the outcome of the journal entry " + entry.getUuid(), ex);
+		}
+	}
+	
+	private synchronized void startDrainer() {
+		if (!drainerEnabled || journal == null || (drainer != null && drainer.isAlive()))
+			return;
+		drainer = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				process();
+			}
+		}, "REST write journal");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+	
+	private synchronized void stopDrainer() {
+		Thread stopped = drainer;
+		if (stopped == null)
+			return;
+		drainer = null;
+		synchronized (signal) {
+			signal.notifyAll();
+		}
+		try {
+			stopped.join(TimeUnit.SECONDS.toMillis(30));
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Applies pending entries, grouped by the user who posted them, until the current thread is no
+	 * longer the drainer
+	 */
+	private void process() {
+		long credentialsDelay = RETRY_DELAY;
+		while (drainer == Thread.currentThread()) {
+			WriteAheadJournal current = journal;
+			List<Entry> entries = current != null ? current.getPending() : Collections.<Entry> emptyList();
+			boolean busy = false;
+			boolean rejected = false;
+			int i = 0;
+			while (i < entries.size() && !busy && drainer == Thread.currentThread()) {
+				String user = entries.get(i).getUser();
+				Context.openSession();
+				try {
+					if (!authenticateAsScheduler()) {
+						rejected = busy = true;
+						break;
+					}
+					boolean authenticated = becomeUser(user);
+					for (; i < entries.size() && OpenmrsUtil.nullSafeEquals(user, entries.get(i).getUser()); i++) {
+						if (!authenticated) {
+							resolve(current, entries.get(i), Status.FAILED, "The user who posted the entry is unknown");
+							continue;
+						}
+						if (!apply(current, entries.get(i))) {
+							busy = true;
+							break;
+						}
+					}
+				}
+				catch (Exception ex) {
+					log.error("Failed to apply the write journal", ex);
+					busy = true;
+				}
+				finally {
+					Context.closeSession();
+				}
+			}
+			
+			long delay = rejected ? credentialsDelay : RETRY_DELAY;
+			credentialsDelay = rejected ? Math.min(credentialsDelay * 2, MAX_RETRY_DELAY) : RETRY_DELAY;
+			synchronized (signal) {
+				if (drainer != Thread.currentThread())
+					return;
+				try {
+					if (rejected) {
+						// new entries must not shorten the delay
+						long until = System.currentTimeMillis() + delay;
+						for (long left = delay; left > 0 && drainer == Thread.currentThread(); left = until
+						        - System.currentTimeMillis()) {
+							signal.wait(left);
+						}
+					} else if (busy)
+						signal.wait(delay);
+					else if (current == null || current.getPending().isEmpty())
+						signal.wait(TimeUnit.SECONDS.toMillis(1));
+				}
+				catch (InterruptedException ex) {
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Authenticates with the scheduler credentials, logging only the first of consecutive failures
+	 * 
+	 * @return false if the credentials were rejected
+	 */
+	private boolean authenticateAsScheduler() {
+		try {
+			Context.authenticate(Context.getAdministrationService().getGlobalProperty(
+			    SchedulerConstants.SCHEDULER_USERNAME_PROPERTY), Context.getAdministrationService().getGlobalProperty(
+			    SchedulerConstants.SCHEDULER_PASSWORD_PROPERTY));
+		}
+		catch (ContextAuthenticationException ex) {
+			if (!schedulerCredentialsRejected)
+				log.error("The write journal cannot be applied until the global properties "
+				        + SchedulerConstants.SCHEDULER_USERNAME_PROPERTY + " and "
+				        + SchedulerConstants.SCHEDULER_PASSWORD_PROPERTY + " are valid credentials", ex);
+			schedulerCredentialsRejected = true;
+			return false;
+		}
+		if (schedulerCredentialsRejected)
+			log.info("The scheduler credentials were accepted again, applying the write journal");
+		schedulerCredentialsRejected = false;
+		return true;
+	}
+	
+	/**
+	 * Becomes the user who posted entries, never staying the scheduler user
+	 * 
+	 * @return false if the entries must fail because the user cannot be assumed
+	 */
+	private boolean becomeUser(String user) {
+		if (user == null) {
+			log.warn("Failing journal entries that were posted without a user");
+			return false;
+		}
+		if (!user.equals(Context.getAuthenticatedUser().getSystemId())) {
+			try {
+				Context.becomeUser(user);
+			}
+			catch (Exception ex) {
+				log.warn("Failing journal entries of " + user + " because the user cannot be assumed", ex);
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the objects that unique ids were resolved to while a posted object is converted, so
+ * that an id referenced many times (e.g. the concept of 60 obs in an encounter) is only looked up
+ * once.
+ * <p>
+ * The cache is bound to the current thread and is only active between {@link #open()} and the
+ * matching {@link #close()}. Calls may be nested, in which case the cache is kept until the
+ * outermost one is closed. Outside of that, {@link #contains(Class, String)} is always false and
+ * {@link #put(Class, String, Object)} does nothing.
+ */
+public class UuidResolutionCache {
+	
+	private static final ThreadLocal<UuidResolutionCache> current = new ThreadLocal<UuidResolutionCache>();
+	
+	private final Map<Class<?>, Map<String, Object>> resolved = new HashMap<Class<?>, Map<String, Object>>();
+	
+	private int depth = 0;
+	
+	private UuidResolutionCache() {
+	}
+	
+	/**
+	 * Activates the cache for the current thread
+	 */
+	public static void open() {
+		UuidResolutionCache cache = current.get();
+		if (cache == null) {
+			cache = new UuidResolutionCache();
+			current.set(cache);
+		}
+		cache.depth++;
+	}
+	
+	/**
+	 * Discards the cache of the current thread, if this matches the outermost {@link #open()}
+	 */
+	public static void close() {
+		UuidResolutionCache cache = current.get();
+		if (cache != null && --cache.depth <= 0) {
+			current.remove();
+		}
+	}
+	
+	/**
+	 * @param type
+	 * @param uniqueId
+	 * @return true if the cache is active and uniqueId has been resolved for type, even if it was
+	 *         resolved to null
+	 * @should return false if the cache is not open
+	 */
+	public static boolean contains(Class<?> type, String uniqueId) {
+		Map<String, Object> objects = getObjects(type, false);
+		return objects != null && objects.containsKey(uniqueId);
+	}
+	
+	/**
+	 * @param type
+	 * @param uniqueId
+	 * @return the object uniqueId was resolved to, or null if it is not cached
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(Class<T> type, String uniqueId) {
+		Map<String, Object> objects = getObjects(type, false);
+		return objects != null ? (T) objects.get(uniqueId) : null;
+	}
+	
+	/**
+	 * Caches what uniqueId was resolved to, if the cache is active
+	 *
+	 * @param type
+	 * @param uniqueId
+	 * @param object may be null
+	 * @should keep resolved objects until the outermost open is closed
+	 */
+	public static void put(Class<?> type, String uniqueId, Object object) {
+		Map<String, Object> objects = getObjects(type, true);
+		if (objects != null)
+			objects.put(uniqueId, object);
+	}
+	
+	private static Map<String, Object> getObjects(Class<?> type, boolean create) {
+		UuidResolutionCache cache = current.get();
+		if (cache == null)
+			return null;
+		Map<String, Object> objects = cache.resolved.get(type);
+		if (objects == null && create) {
+			objects = new HashMap<String, Object>();
+			cache.resolved.put(type, objects);
+		}
+		return objects;
+	}
+}
@@ -14,9 +14,18 @@
 package org.openmrs.module.webservices.rest.web.api;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
 import org.openmrs.ConceptMap;
+import org.openmrs.Person;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.util.PrivilegeConstants;
 
 /**
  * It is provided as a workaround for missing API methods to fetch {@link ConceptMap}, etc.
@@ -29,6 +38,95 @@ public interface RestHelperService {
 	
 	<T> List<T> getObjectsByFields(Class<? extends T> type, Field... fields);
 	
+	/**
+	 * Resolves uuids to ids without loading the objects.
+	 * 
+	 * @param type
+	 * @param uuids
+	 * @return the ids of the objects that were found, by uuid
+	 */
+	Map<String, Integer> getIdsByUuids(Class<?> type, Collection<String> uuids);
+	
+	/**
+	 * Gets many objects by uuid with IN queries rather than one query per uuid.
+	 * 
+	 * @param type
+	 * @param uuids
+	 * @return the objects that were found in no particular order, or an empty list if the type is
+	 *         not a persistent class
+	 */
+	<T> List<T> getObjectsByUuids(Class<? extends T> type, Collection<String> uuids);
+	
+	/**
+	 * Gets the obsDatetime and valueNumeric of all non-voided obs of the given person and concept,
+	 * ordered by obsDatetime. Only these two columns are fetched, so no Obs entities are loaded.
+	 * 
+	 * @param person
+	 * @param concept
+	 * @param fromDate the earliest obsDatetime to include or <code>null</code>
+	 * @param toDate the latest obsDatetime to include or <code>null</code>
+	 * @return a list of { Date obsDatetime, Double valueNumeric } rows
+	 */
+	@Authorized(PrivilegeConstants.VIEW_OBS)
+	List<Object[]> getNumericObsValues(Person person, Concept concept, Date fromDate, Date toDate);
+	
+	/**
+	 * Computes statistics of the numeric values of non-voided obs per concept. The aggregation is
+	 * done by the database, so no Obs entities are loaded. Exactly one of person or cohort should
+	 * be given.
+	 * 
+	 * @param person the person whose obs to include or <code>null</code>
+	 * @param cohort the cohort whose members' obs to include or <code>null</code>
+	 * @param concepts the concepts to compute statistics for or <code>null</code> for all
+	 * @param fromDate the earliest obsDatetime to include or <code>null</code>
+	 * @param toDate the latest obsDatetime to include or <code>null</code>
+	 * @return a list of { Integer conceptId, Long count, Double min, Double max, Double mean, Double
+	 *         lastValue, Date lastObsDatetime } rows, one per concept with at least one value
+	 * @throws APIAuthenticationException if a cohort is given and the user may not view cohorts
+	 */
+	@Authorized(PrivilegeConstants.VIEW_OBS)
+	List<Object[]> getNumericObsStatistics(Person person, Cohort cohort, Collection<Concept> concepts, Date fromDate,
+	        Date toDate);
+	
+	/**
+	 * Gets the ids of the members of a cohort without loading the cohort's member set.
+	 * 
+	 * @param cohort
+	 * @return the patient ids in ascending order
+	 */
+	List<Integer> getCohortMemberIds(Cohort cohort);
+	
+	/**
+	 * Counts the members of a cohort without loading the cohort's member set.
+	 * 
+	 * @param cohort
+	 * @return the number of patients in the cohort
+	 */
+	int getCohortMemberCount(Cohort cohort);
+	
+	/**
+	 * Tells whether a property is stored, since some classes inherit properties (e.g. dateChanged)
+	 * that they do not map, which are then never set.
+	 * 
+	 * @param type a persistent class or a proxy of one
+	 * @param property
+	 * @return true if the property is mapped, false if it is not or type is not a persistent class
+	 */
+	boolean isMappedProperty(Class<?> type, String property);
+	
+	/**
+	 * Tells whether a list of objects may have changed without loading it. For each type a single
+	 * aggregate query counts the rows and gets the latest date any of them was created, changed,
+	 * voided or retired.
+	 * 
+	 * @param types persistent classes
+	 * @return { Long count, Date lastModified } over all types, where lastModified is null if there
+	 *         are no rows, or null if a type is auditable but does not map dateChanged, since its
+	 *         updates would then not change the version
+	 * @throws IllegalArgumentException if a type is not a persistent class
+	 */
+	Object[] getCollectionVersion(Class<?>... types);
+	
 	public static class Field {
 		
 		private final String name;
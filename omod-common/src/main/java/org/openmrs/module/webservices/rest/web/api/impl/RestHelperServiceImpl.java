@@ -14,13 +14,32 @@
 package org.openmrs.module.webservices.rest.web.api.impl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
+import org.openmrs.Auditable;
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+import org.openmrs.util.PrivilegeConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -28,6 +47,10 @@ import org.springframework.transaction.annotation.Transactional;
  */
 public class RestHelperServiceImpl extends BaseOpenmrsService implements RestHelperService {
 	
+	private static final int MAX_IN_LIST_SIZE = 1000;
+	
+	private static final String[] VERSION_PROPERTIES = { "dateCreated", "dateChanged", "dateVoided", "dateRetired" };
+	
 	SessionFactory sessionFactory;
 	
 	public void setSessionFactory(SessionFactory sessionFactory) {
@@ -68,4 +91,241 @@ public class RestHelperServiceImpl extends BaseOpenmrsService implements RestHel
 		}
 		return criteria.list();
 	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getIdsByUuids(java.lang.Class,
+	 *      java.util.Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, Integer> getIdsByUuids(Class<?> type, Collection<String> uuids) {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> remaining = new ArrayList<String>(uuids);
+		// keep the IN lists at a size every database accepts
+		for (int i = 0; i < remaining.size(); i += MAX_IN_LIST_SIZE) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(type);
+			criteria.add(Restrictions.in("uuid", remaining.subList(i, Math.min(i + MAX_IN_LIST_SIZE, remaining.size()))));
+			criteria.setProjection(Projections.projectionList().add(Projections.id()).add(Projections.property("uuid")));
+			for (Object[] row : (List<Object[]>) criteria.list()) {
+				ids.put((String) row[1], (Integer) row[0]);
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getObjectsByUuids(java.lang.Class,
+	 *      java.util.Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	@Transactional(readOnly = true)
+	public <T> List<T> getObjectsByUuids(Class<? extends T> type, Collection<String> uuids) {
+		List<T> objects = new ArrayList<T>();
+		if (sessionFactory.getClassMetadata(type) == null) {
+			return objects;
+		}
+		List<String> remaining = new ArrayList<String>(uuids);
+		for (int i = 0; i < remaining.size(); i += MAX_IN_LIST_SIZE) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(type);
+			criteria.add(Restrictions.in("uuid", remaining.subList(i, Math.min(i + MAX_IN_LIST_SIZE, remaining.size()))));
+			objects.addAll(criteria.list());
+		}
+		return objects;
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getNumericObsValues(org.openmrs.Person,
+	 *      org.openmrs.Concept, java.util.Date, java.util.Date)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	@Transactional(readOnly = true)
+	public List<Object[]> getNumericObsValues(Person person, Concept concept, Date fromDate, Date toDate) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class);
+		criteria.add(Restrictions.eq("person", person));
+		criteria.add(Restrictions.eq("concept", concept));
+		criteria.add(Restrictions.eq("voided", false));
+		criteria.add(Restrictions.isNotNull("valueNumeric"));
+		if (fromDate != null) {
+			criteria.add(Restrictions.ge("obsDatetime", fromDate));
+		}
+		if (toDate != null) {
+			criteria.add(Restrictions.le("obsDatetime", toDate));
+		}
+		criteria.setProjection(Projections.projectionList().add(Projections.property("obsDatetime")).add(
+		    Projections.property("valueNumeric")));
+		criteria.addOrder(Order.asc("obsDatetime"));
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getNumericObsStatistics(org.openmrs.Person,
+	 *      org.openmrs.Cohort, java.util.Collection, java.util.Date, java.util.Date)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	@Transactional(readOnly = true)
+	public List<Object[]> getNumericObsStatistics(Person person, Cohort cohort, Collection<Concept> concepts,
+	        Date fromDate, Date toDate) {
+		// the members are read by the query itself, so the privilege the cohort service would check
+		if (cohort != null && !Context.hasPrivilege(PrivilegeConstants.VIEW_PATIENT_COHORTS)) {
+			throw new APIAuthenticationException("Privilege required: " + PrivilegeConstants.VIEW_PATIENT_COHORTS);
+		}
+		List<Object[]> results = new ArrayList<Object[]>();
+		if (concepts != null && concepts.isEmpty()) {
+			return results;
+		}
+		
+		Query query = sessionFactory.getCurrentSession().createQuery(
+		    "select o.concept.conceptId, count(*), min(o.valueNumeric), max(o.valueNumeric), avg(o.valueNumeric)"
+		            + " from Obs o where " + getNumericObsRestrictions("o", person, cohort, concepts, fromDate, toDate)
+		            + " group by o.concept.conceptId order by o.concept.conceptId");
+		setNumericObsParameters(query, person, cohort, concepts, fromDate, toDate);
+		
+		Map<Integer, Object[]> resultsByConcept = new HashMap<Integer, Object[]>();
+		for (Object[] row : (List<Object[]>) query.list()) {
+			Object[] result = new Object[] { row[0], row[1], row[2], row[3], row[4], null, null };
+			resultsByConcept.put((Integer) row[0], result);
+			results.add(result);
+		}
+		if (results.isEmpty()) {
+			return results;
+		}
+		
+		// the latest value of each concept, ties are resolved in favour of the highest obsId
+		query = sessionFactory.getCurrentSession().createQuery(
+		    "select o.concept.conceptId, o.valueNumeric, o.obsDatetime from Obs o where "
+		            + getNumericObsRestrictions("o", person, cohort, concepts, fromDate, toDate)
+		            + " and o.obsDatetime = (select max(l.obsDatetime) from Obs l where "
+		            + getNumericObsRestrictions("l", person, cohort, concepts, fromDate, toDate)
+		            + " and l.concept = o.concept) order by o.obsId");
+		setNumericObsParameters(query, person, cohort, concepts, fromDate, toDate);
+		for (Object[] row : (List<Object[]>) query.list()) {
+			Object[] result = resultsByConcept.get(row[0]);
+			if (result != null) {
+				result[5] = row[1];
+				result[6] = row[2];
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getCohortMemberIds(org.openmrs.Cohort)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	@Transactional(readOnly = true)
+	public List<Integer> getCohortMemberIds(Cohort cohort) {
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select m from Cohort c join c.memberIds m where c = :cohort order by m").setParameter("cohort", cohort).list();
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getCohortMemberCount(org.openmrs.Cohort)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public int getCohortMemberCount(Cohort cohort) {
+		Number count = (Number) sessionFactory.getCurrentSession().createQuery(
+		    "select count(m) from Cohort c join c.memberIds m where c = :cohort").setParameter("cohort", cohort)
+		        .uniqueResult();
+		return count.intValue();
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#isMappedProperty(java.lang.Class,
+	 *      java.lang.String)
+	 */
+	@Override
+	public boolean isMappedProperty(Class<?> type, String property) {
+		ClassMetadata metadata = null;
+		// proxies are subclasses of the mapped class
+		for (Class<?> c = type; metadata == null && c != null; c = c.getSuperclass()) {
+			metadata = sessionFactory.getClassMetadata(c);
+		}
+		return metadata != null && Arrays.asList(metadata.getPropertyNames()).contains(property);
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.api.RestHelperService#getCollectionVersion(java.lang.Class[])
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Object[] getCollectionVersion(Class<?>... types) {
+		long count = 0;
+		Date lastModified = null;
+		for (Class<?> type : types) {
+			ClassMetadata metadata = sessionFactory.getClassMetadata(type);
+			if (metadata == null) {
+				throw new IllegalArgumentException(type + " is not a persistent class");
+			}
+			List<String> properties = Arrays.asList(metadata.getPropertyNames());
+			if (Auditable.class.isAssignableFrom(type) && !properties.contains("dateChanged")) {
+				return null;
+			}
+			ProjectionList projections = Projections.projectionList().add(Projections.rowCount());
+			for (String property : VERSION_PROPERTIES) {
+				if (properties.contains(property)) {
+					projections.add(Projections.max(property));
+				}
+			}
+			Object result = sessionFactory.getCurrentSession().createCriteria(type).setProjection(projections)
+			        .uniqueResult();
+			Object[] row = result instanceof Object[] ? (Object[]) result : new Object[] { result };
+			count += ((Number) row[0]).longValue();
+			for (int i = 1; i < row.length; i++) {
+				Date date = (Date) row[i];
+				if (date != null && (lastModified == null || date.getTime() > lastModified.getTime())) {
+					lastModified = date;
+				}
+			}
+		}
+		return new Object[] { count, lastModified };
+	}
+	
+	private String getNumericObsRestrictions(String alias, Person person, Cohort cohort, Collection<Concept> concepts,
+	        Date fromDate, Date toDate) {
+		StringBuilder hql = new StringBuilder();
+		hql.append(alias).append(".voided = false and ").append(alias).append(".valueNumeric is not null");
+		if (person != null) {
+			hql.append(" and ").append(alias).append(".person = :person");
+		}
+		if (cohort != null) {
+			hql.append(" and ").append(alias).append(".person.personId in (select ").append(alias).append(
+			    "m from Cohort ").append(alias).append("c join ").append(alias).append("c.memberIds ").append(alias)
+			        .append("m where ").append(alias).append("c = :cohort)");
+		}
+		if (concepts != null) {
+			hql.append(" and ").append(alias).append(".concept in (:concepts)");
+		}
+		if (fromDate != null) {
+			hql.append(" and ").append(alias).append(".obsDatetime >= :fromDate");
+		}
+		if (toDate != null) {
+			hql.append(" and ").append(alias).append(".obsDatetime <= :toDate");
+		}
+		return hql.toString();
+	}
+	
+	private void setNumericObsParameters(Query query, Person person, Cohort cohort, Collection<Concept> concepts,
+	        Date fromDate, Date toDate) {
+		if (person != null) {
+			query.setParameter("person", person);
+		}
+		if (cohort != null) {
+			query.setParameter("cohort", cohort);
+		}
+		if (concepts != null) {
+			query.setParameterList("concepts", concepts);
+		}
+		if (fromDate != null) {
+			query.setTimestamp("fromDate", fromDate);
+		}
+		if (toDate != null) {
+			query.setTimestamp("toDate", toDate);
+		}
+	}
 }
@@ -29,6 +29,8 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.webservices.rest.web.RestConfiguration;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestUtil;
 
@@ -38,7 +40,12 @@ import org.openmrs.module.webservices.rest.web.RestUtil;
  * exceptions if an unauthenticated user tries to do something they are not allowed to do.) <br/>
  * <br/>
  * IP address authorization is also performed based on the global property:
- * {@link RestConstants#ALLOWED_IPS_GLOBAL_PROPERTY_NAME}
+ * {@link RestConstants#ALLOWED_IPS_GLOBAL_PROPERTY_NAME} <br/>
+ * <br/>
+ * If {@link RestConstants#BASIC_AUTH_CACHE_SECONDS_GLOBAL_PROPERTY_NAME} is set, verified
+ * credentials are remembered in the {@link BasicAuthCache} for that long. Instead of credentials,
+ * clients may send a token issued by the session resource as <code>Bearer</code> authorization, see
+ * {@link SessionTokens}.
  */
 public class AuthorizationFilter implements Filter {
 	
@@ -80,7 +87,20 @@ public class AuthorizationFilter implements Filter {
 		if (!Context.isAuthenticated() && request instanceof HttpServletRequest) {
 			HttpServletRequest httpRequest = (HttpServletRequest) request;
 			String basicAuth = httpRequest.getHeader("Authorization");
-			if (basicAuth != null) {
+			String token = SessionTokens.getToken(httpRequest);
+			if (token != null) {
+				// a context of the request's own, not shared with the session that issued the token
+				UserContext tokenContext = SessionTokens.get(token);
+				if (tokenContext != null)
+					Context.setUserContext(tokenContext);
+				basicAuth = null;
+			}
+			int cacheSeconds = basicAuth != null ? RestConfiguration.get().getBasicAuthCacheSeconds() : 0;
+			String cacheKey = cacheSeconds > 0 ? BasicAuthCache.getKey(basicAuth) : null;
+			UserContext verified = cacheKey != null ? BasicAuthCache.get(cacheKey) : null;
+			if (verified != null) {
+				Context.setUserContext(verified);
+			} else if (basicAuth != null) {
 				// this is "Basic ${base64encode(username + ":" + password)}"
 				try {
 					basicAuth = basicAuth.substring(6); // remove the leading "Basic "
@@ -89,6 +109,8 @@ public class AuthorizationFilter implements Filter {
 					Context.authenticate(userAndPass[0], userAndPass[1]);
 					if (log.isDebugEnabled())
 						log.debug("authenticated " + userAndPass[0]);
+					if (cacheKey != null)
+						BasicAuthCache.put(cacheKey, Context.getAuthenticatedUser(), cacheSeconds * 1000L);
 				}
 				catch (Exception ex) {
 					// This filter never stops execution. If the user failed to
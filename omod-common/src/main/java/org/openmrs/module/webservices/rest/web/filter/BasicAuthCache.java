@@ -0,0 +1,94 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import org.openmrs.User;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Remembers the users of Basic Authorization headers that were verified recently, so that
+ * stateless clients sending the same credentials with every request do not have their password
+ * hashed each time. Only used if
+ * {@link RestConstants#BASIC_AUTH_CACHE_SECONDS_GLOBAL_PROPERTY_NAME} is set.
+ * <p>
+ * Headers are keyed by an HMAC with a secret generated at startup, so neither they nor the
+ * passwords are kept. Only the id of the user is kept, and every request gets a new context for
+ * it. Any write through the user service (see {@link BasicAuthCacheAdvice}), e.g. a password
+ * change or retiring a user, invalidates the whole cache, and logging out forgets the header the
+ * request was authenticated with.
+ */
+public class BasicAuthCache {
+	
+	public static final int MAX_ENTRIES = 1000;
+	
+	private static final UserContextCache cache = new UserContextCache(MAX_ENTRIES);
+	
+	/**
+	 * @param authorization the value of the Authorization header
+	 * @return the key of the header in the cache
+	 */
+	public static String getKey(String authorization) {
+		return UserContextCache.hash(authorization);
+	}
+	
+	/**
+	 * @param key
+	 * @return a new context for the user the header was verified for, or null if it is not cached,
+	 *         has expired or has been logged out
+	 * @should return an authenticated context until it expires
+	 * @should not let proxy privileges leak between requests
+	 */
+	public static UserContext get(String key) {
+		return cache.get(key);
+	}
+	
+	/**
+	 * @param key
+	 * @param user the user who has just been authenticated with the header
+	 * @param ttl how long the header is trusted, in milliseconds
+	 */
+	public static void put(String key, User user, long ttl) {
+		cache.put(key, user, ttl);
+	}
+	
+	/**
+	 * Forgets a header, e.g. because the request authenticated with it logs out
+	 * 
+	 * @param key
+	 * @should forget only the given header
+	 */
+	public static void remove(String key) {
+		cache.remove(key);
+	}
+	
+	/**
+	 * Forgets all verified headers. If called within a transaction, they are forgotten again when it
+	 * completes, since a request could verify the old credentials before it commits.
+	 */
+	public static void invalidateAll() {
+		cache.clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					cache.clear();
+				}
+			});
+		}
+	}
+}
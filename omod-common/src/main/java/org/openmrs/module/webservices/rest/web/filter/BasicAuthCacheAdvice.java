@@ -0,0 +1,69 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.User;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Invalidates the {@link BasicAuthCache} when users, roles or privileges are written through the
+ * user service, since that may change whether credentials are valid or what a cached context may
+ * do. For the same reason it revokes the {@link SessionTokens} of the users that are written, or all
+ * of them if it is not known which users are affected. Registered on the user service in
+ * config.xml.
+ * <p>
+ * Only methods named like writes count, so that other calls, e.g. the privilege listeners core
+ * notifies on every privilege check, do not revoke the tokens of the caller.
+ */
+public class BasicAuthCacheAdvice implements AfterReturningAdvice {
+	
+	private static final String[] WRITE_PREFIXES = { "save", "retire", "unretire", "purge", "delete", "changePassword",
+	        "changeHashedPassword", "set", "void", "unvoid" };
+	
+	/**
+	 * @see org.springframework.aop.AfterReturningAdvice#afterReturning(java.lang.Object,
+	 *      java.lang.reflect.Method, java.lang.Object[], java.lang.Object)
+	 * @should revoke the tokens of a saved user
+	 * @should keep the tokens when privileges are checked
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (!isWrite(method))
+			return;
+		BasicAuthCache.invalidateAll();
+		
+		boolean revoked = false;
+		if (args != null) {
+			for (Object arg : args) {
+				if (arg instanceof User) {
+					SessionTokens.revoke((User) arg);
+					revoked = true;
+				}
+			}
+		}
+		// e.g. roles or the password of the authenticated user
+		if (!revoked)
+			SessionTokens.revokeAll();
+	}
+	
+	private static boolean isWrite(Method method) {
+		for (String prefix : WRITE_PREFIXES) {
+			if (method.getName().startsWith(prefix))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import java.io.UnsupportedEncodingException;
+import java.security.SecureRandom;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openmrs.User;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+
+/**
+ * Opaque tokens that clients can send as <code>Authorization: Bearer &lt;token&gt;</code> instead
+ * of credentials or a session cookie. A token is issued for the user of an authenticated request
+ * and stands for that user until it expires (see
+ * {@link RestConstants#SESSION_TOKEN_SECONDS_GLOBAL_PROPERTY_NAME}), is revoked, or the client that
+ * it was issued to logs out.
+ * <p>
+ * Tokens are random and only kept as a keyed hash, in the memory of the node that issued them,
+ * together with the id of the user. Every request with a token gets a new context for the user, so
+ * requests with the same token, and the session that issued it, share nothing but the user.
+ */
+public class SessionTokens {
+	
+	public static final int MAX_TOKENS = 10000;
+	
+	public static final String BEARER = "Bearer ";
+	
+	private static final SecureRandom random = new SecureRandom();
+	
+	private static final UserContextCache tokens = new UserContextCache(MAX_TOKENS);
+	
+	/**
+	 * @param request
+	 * @return the token the request is authorized with, or null if it has none
+	 */
+	public static String getToken(HttpServletRequest request) {
+		String authorization = request.getHeader("Authorization");
+		if (authorization == null || !authorization.startsWith(BEARER))
+			return null;
+		return authorization.substring(BEARER.length()).trim();
+	}
+	
+	/**
+	 * @param request
+	 * @return what authenticates the request, i.e. its Authorization header or else its session, or
+	 *         null if it has neither
+	 */
+	public static String getIssuer(HttpServletRequest request) {
+		String authorization = request.getHeader("Authorization");
+		if (authorization != null)
+			return authorization;
+		HttpSession session = request.getSession(false);
+		return session != null ? "session " + session.getId() : null;
+	}
+	
+	/**
+	 * @param user an authenticated user
+	 * @param issuer what authenticated the request the token is issued for, see
+	 *            {@link #getIssuer(HttpServletRequest)}, may be null
+	 * @param lifetime how long the token is valid, in milliseconds
+	 * @return a new token for the user
+	 * @should issue a token that stands for the user until it is revoked
+	 * @should give every request with the token a context of its own
+	 */
+	public static String issue(User user, String issuer, long lifetime) {
+		byte[] bytes = new byte[32];
+		random.nextBytes(bytes);
+		String token;
+		try {
+			token = new String(Base64.encodeBase64(bytes), "US-ASCII");
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+		tokens.put(UserContextCache.hash(token), user, issuer != null ? UserContextCache.hash(issuer) : null, lifetime);
+		return token;
+	}
+	
+	/**
+	 * @param token
+	 * @return a new context for the user the token stands for, or null if it is unknown, has
+	 *         expired or has been revoked
+	 */
+	public static UserContext get(String token) {
+		return tokens.get(UserContextCache.hash(token));
+	}
+	
+	/**
+	 * @param token
+	 */
+	public static void revoke(String token) {
+		tokens.remove(UserContextCache.hash(token));
+	}
+	
+	/**
+	 * Revokes the tokens issued to a client, e.g. because it is logging out
+	 * 
+	 * @param issuer what authenticated the requests the tokens were issued for, see
+	 *            {@link #getIssuer(HttpServletRequest)}
+	 * @should revoke only the tokens issued to the given client
+	 */
+	public static void revokeIssuedBy(String issuer) {
+		tokens.removeIssuedBy(UserContextCache.hash(issuer));
+	}
+	
+	/**
+	 * Revokes the tokens of a user, e.g. because their password changed
+	 * 
+	 * @param user
+	 * @should revoke only the tokens of the given user
+	 */
+	public static void revoke(User user) {
+		tokens.remove(user);
+	}
+	
+	public static void revokeAll() {
+		tokens.clear();
+	}
+}
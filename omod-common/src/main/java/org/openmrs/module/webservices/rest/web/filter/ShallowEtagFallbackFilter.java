@@ -0,0 +1,43 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+/**
+ * Tags responses with a hash of their body, like {@link ShallowEtagHeaderFilter}, but only if the
+ * controller did not already set an ETag from the version of the returned object. Hashing the body
+ * saves bandwidth but no work on the server, so it is only the fallback.
+ * 
+ * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#retrieve(String,
+ *      org.openmrs.module.webservices.rest.web.RequestContext)
+ */
+public class ShallowEtagFallbackFilter extends ShallowEtagHeaderFilter {
+	
+	/**
+	 * @see org.springframework.web.filter.ShallowEtagHeaderFilter#isEligibleForEtag(javax.servlet.http.HttpServletRequest,
+	 *      javax.servlet.http.HttpServletResponse, int, byte[])
+	 */
+	@Override
+	protected boolean isEligibleForEtag(HttpServletRequest request, HttpServletResponse response, int responseStatusCode,
+	        byte[] responseBody) {
+		if (response.containsHeader(RestConstants.HEADER_ETAG))
+			return false;
+		return super.isEligibleForEtag(request, response, responseStatusCode, responseBody);
+	}
+}
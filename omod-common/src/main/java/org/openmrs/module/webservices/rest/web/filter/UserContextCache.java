@@ -0,0 +1,200 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
+
+/**
+ * Authenticated users by a keyed hash of the secret they were verified with, e.g. a Basic
+ * Authorization header or a session token, each with an expiry. The secret itself is never kept,
+ * and since it is looked up by its hash, the time a lookup takes does not depend on how much of a
+ * guess matches a stored secret.
+ * <p>
+ * Only the id of the user is kept. Every lookup creates a new {@link UserContext} for the user, so
+ * that concurrent requests with the same secret do not share proxy privileges, a locale, a
+ * location or a logout.
+ */
+class UserContextCache {
+	
+	private static final String ALGORITHM = "HmacSHA256";
+	
+	private static final SecretKeySpec key;
+	
+	static {
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		key = new SecretKeySpec(bytes, ALGORITHM);
+	}
+	
+	private final Map<String, Entry> entries;
+	
+	/**
+	 * @param maxEntries the number of entries above which the least recently used ones are dropped
+	 */
+	@SuppressWarnings("serial")
+	public UserContextCache(final int maxEntries) {
+		entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		});
+	}
+	
+	/**
+	 * @param secret
+	 * @return the HMAC of secret with a key generated at startup
+	 */
+	public static String hash(String secret) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			return new String(Base64.encodeBase64(mac.doFinal(secret.getBytes("UTF-8"))), "US-ASCII");
+		}
+		catch (GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * @param hash
+	 * @return a new context authenticated as the user of the entry, or null if there is no entry,
+	 *         it has expired or its user no longer exists or is retired
+	 */
+	public UserContext get(String hash) {
+		Entry entry = entries.get(hash);
+		if (entry == null)
+			return null;
+		UserContext userContext = entry.expires >= System.currentTimeMillis() ? newUserContext(entry.userId) : null;
+		if (userContext == null)
+			entries.remove(hash);
+		return userContext;
+	}
+	
+	/**
+	 * @param hash
+	 * @param user an authenticated user
+	 * @param ttl how long the user is kept, in milliseconds
+	 */
+	public void put(String hash, User user, long ttl) {
+		put(hash, user, null, ttl);
+	}
+	
+	/**
+	 * @param hash
+	 * @param user an authenticated user
+	 * @param issuer the hash of what authenticated the request the entry was made for, may be null
+	 * @param ttl how long the user is kept, in milliseconds
+	 */
+	public void put(String hash, User user, String issuer, long ttl) {
+		entries.put(hash, new Entry(user.getUserId(), issuer, System.currentTimeMillis() + ttl));
+	}
+	
+	public void remove(String hash) {
+		entries.remove(hash);
+	}
+	
+	/**
+	 * Removes the entries made for requests authenticated by an issuer
+	 * 
+	 * @param issuer the hash of what authenticated the requests
+	 */
+	public void removeIssuedBy(String issuer) {
+		synchronized (entries) {
+			for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+				if (issuer.equals(i.next().issuer))
+					i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Removes the entries of a user
+	 * 
+	 * @param user
+	 */
+	public void remove(User user) {
+		synchronized (entries) {
+			for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+				if (i.next().userId.equals(user.getUserId()))
+					i.remove();
+			}
+		}
+	}
+	
+	public void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * Creates a context of its own for a request, authenticated as the user without verifying the
+	 * credentials again. Core only lets a superuser become another user, so the user is set on the
+	 * context directly.
+	 * 
+	 * @param userId
+	 * @return the context, or null if the user does not exist or is retired
+	 */
+	static UserContext newUserContext(Integer userId) {
+		User user = Context.getService(RestHelperService.class).getObjectById(User.class, userId);
+		if (user == null || user.isRetired())
+			return null;
+		// load the roles while the session is open, like UserContext.becomeUser(String) does
+		user.getAllRoles().size();
+		UserContext userContext = new UserContext();
+		try {
+			Field field = UserContext.class.getDeclaredField("user");
+			field.setAccessible(true);
+			field.set(userContext, user);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Unable to authenticate a user context", ex);
+		}
+		return userContext;
+	}
+	
+	private static class Entry {
+		
+		private final Integer userId;
+		
+		private final String issuer;
+		
+		private final long expires;
+		
+		public Entry(Integer userId, String issuer, long expires) {
+			this.userId = userId;
+			this.issuer = issuer;
+			this.expires = expires;
+		}
+	}
+}
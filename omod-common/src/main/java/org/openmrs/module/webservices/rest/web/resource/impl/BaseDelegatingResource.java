@@ -13,19 +13,22 @@
  */
 package org.openmrs.module.webservices.rest.web.resource.impl;
 
+import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
@@ -39,6 +42,7 @@ import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.Hyperlink;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.UuidResolutionCache;
 import org.openmrs.module.webservices.rest.web.annotation.PropertyGetter;
 import org.openmrs.module.webservices.rest.web.annotation.PropertySetter;
 import org.openmrs.module.webservices.rest.web.annotation.RepHandler;
@@ -87,6 +91,21 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 	 */
 	protected volatile List<DelegatingSubclassHandler<T, ? extends T>> subclassHandlers;
 	
+	/**
+	 * Creatable property descriptions, by handler, so that each is only described and indexed once
+	 */
+	private final Map<DelegatingResourceHandler<?>, DelegatingResourceDescription> creatableProperties = new ConcurrentHashMap<DelegatingResourceHandler<?>, DelegatingResourceDescription>();
+	
+	/**
+	 * Updatable property descriptions, by handler, so that each is only described and indexed once
+	 */
+	private final Map<DelegatingResourceHandler<?>, DelegatingResourceDescription> updatableProperties = new ConcurrentHashMap<DelegatingResourceHandler<?>, DelegatingResourceDescription>();
+	
+	/**
+	 * Resolved setters, by handler, delegate class and property name
+	 */
+	private final Map<DelegatingResourceHandler<?>, Map<Class<?>, Map<String, BoundSetter>>> boundSetters = new ConcurrentHashMap<DelegatingResourceHandler<?>, Map<Class<?>, Map<String, BoundSetter>>>();
+	
 	/**
 	 * All our resources support letting modules register subclass handlers. If any are registered,
 	 * then the resource represents a class hierarchy, e.g. requiring a "type" parameter when
@@ -262,6 +281,47 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 		}
 	}
 	
+	/**
+	 * Gets what is returned for a created delegate, like
+	 * {@link #asSavedRepresentation(Object, RequestContext)}, and sets its uri as the Location
+	 * header. This is the only place the Location of a created delegate is set.
+	 * 
+	 * @param delegate the created delegate
+	 * @param context
+	 * @return the object to return
+	 * @throws ConversionException
+	 */
+	protected SimpleObject asCreatedRepresentation(T delegate, RequestContext context) throws ConversionException {
+		HttpServletResponse response = context.getResponse();
+		if (response != null)
+			response.setHeader("Location", getUri(delegate));
+		return asSavedRepresentation(delegate, context);
+	}
+	
+	/**
+	 * Gets what is returned for a created or updated delegate. If the client asked for a minimal
+	 * return that is only its uuid, so that none of the representation has to be loaded. Otherwise
+	 * it is the requested representation.
+	 * 
+	 * @param delegate the saved delegate
+	 * @param context
+	 * @return the object to return
+	 * @throws ConversionException
+	 * @see RequestContext#isReturnMinimal()
+	 */
+	protected SimpleObject asSavedRepresentation(T delegate, RequestContext context) throws ConversionException {
+		if (context.isReturnMinimal()) {
+			HttpServletResponse response = context.getResponse();
+			if (response != null)
+				response.addHeader(RestConstants.HEADER_PREFERENCE_APPLIED, "return=" + RestConstants.RETURN_MINIMAL);
+			return new SimpleObject().add("uuid", getUniqueId(delegate));
+		}
+		SimpleObject ret = (SimpleObject) ConversionUtil.convertToRepresentation(delegate, context.getRepresentation());
+		if (hasTypesDefined() && !ret.containsKey(RestConstants.PROPERTY_FOR_TYPE))
+			ret.add(RestConstants.PROPERTY_FOR_TYPE, getTypeName(delegate));
+		return ret;
+	}
+	
 	/**
 	 * Creates an object of the given representation, pulling values from fields and methods as
 	 * specified by a subclass
@@ -276,7 +336,33 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 	public SimpleObject asRepresentation(T delegate, Representation representation) throws ConversionException {
 		if (delegate == null)
 			throw new NullPointerException();
+		if (!(representation instanceof RefRepresentation) || !isRefCacheable())
+			return convertToRepresentation(delegate, representation);
 		
+		String key = MetadataResponseCache.getFragmentKey(this, getUniqueId(delegate), representation);
+		if (key == null)
+			return convertToRepresentation(delegate, representation);
+		SimpleObject simple = MetadataResponseCache.getFragment(key);
+		if (simple == null) {
+			long generation = MetadataResponseCache.getGeneration();
+			simple = convertToRepresentation(delegate, representation);
+			MetadataResponseCache.putFragment(key, simple, generation);
+		}
+		return simple;
+	}
+	
+	/**
+	 * Whether the ref representations of this resource may be kept in the
+	 * {@link MetadataResponseCache}. That is only safe if every change to what they show
+	 * invalidates the cache, i.e. if they only show metadata.
+	 * 
+	 * @return false by default
+	 */
+	protected boolean isRefCacheable() {
+		return false;
+	}
+	
+	private SimpleObject convertToRepresentation(T delegate, Representation representation) throws ConversionException {
 		DelegatingResourceHandler<? extends T> handler = getResourceHandler(delegate);
 		
 		// first call getRepresentationDescription()
@@ -561,18 +647,36 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 	}
 	
 	/**
+	 * Sets the properties with a {@link UuidResolutionCache} open, so that every unique id
+	 * referenced in propertyMap, including in nested objects, is only resolved once.
+	 * 
 	 * @param delegate
 	 * @param propertiesToCreate
 	 * @throws ResponseException
 	 */
 	protected void setConvertedProperties(T delegate, Map<String, Object> propertyMap,
 	        DelegatingResourceDescription description, boolean mustIncludeRequiredProperties) throws ConversionException {
-		Map<String, Property> allowedProperties = new LinkedHashMap<String, Property>(description.getProperties());
+		UuidResolutionCache.open();
+		try {
+			doSetConvertedProperties(delegate, propertyMap, description, mustIncludeRequiredProperties);
+		}
+		finally {
+			UuidResolutionCache.close();
+		}
+	}
+	
+	private void doSetConvertedProperties(T delegate, Map<String, Object> propertyMap,
+	        DelegatingResourceDescription description, boolean mustIncludeRequiredProperties) throws ConversionException {
+		PropertyBinder binder = description.getPropertyBinder();
+		BitSet posted = new BitSet(binder.size());
 		
 		//Set properties that are allowed to be changed or fail.
 		Set<String> notAllowedProperties = new HashSet<String>();
 		for (Map.Entry<String, Object> prop : propertyMap.entrySet()) {
-			if (allowedProperties.remove(prop.getKey()) != null && prop.getValue() != null) {
+			int index = binder.indexOf(prop.getKey());
+			if (index >= 0)
+				posted.set(index);
+			if (index >= 0 && prop.getValue() != null) {
 				setProperty(delegate, prop.getKey(), prop.getValue());
 			} else {
 				notAllowedProperties.add(prop.getKey());
@@ -586,10 +690,10 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 		if (mustIncludeRequiredProperties) {
 			//Fail, if any required properties are missing.
 			Set<String> missingProperties = new HashSet<String>();
-			for (Entry<String, Property> prop : allowedProperties.entrySet()) {
-				if (prop.getValue().isRequired()) {
-					missingProperties.add(prop.getKey());
-				}
+			BitSet missing = binder.getRequired();
+			missing.andNot(posted);
+			for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+				missingProperties.add(binder.getName(i));
 			}
 			if (!missingProperties.isEmpty()) {
 				throw new ConversionException("Some required properties are missing: "
@@ -598,6 +702,38 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 		}
 	}
 	
+	/**
+	 * @param handler
+	 * @return the {@link DelegatingResourceHandler#getCreatableProperties()} of the handler, which
+	 *         are only described once
+	 * @throws ResourceDoesNotSupportOperationException
+	 */
+	protected DelegatingResourceDescription getCreatablePropertiesOf(DelegatingResourceHandler<? extends T> handler)
+	        throws ResourceDoesNotSupportOperationException {
+		DelegatingResourceDescription description = creatableProperties.get(handler);
+		if (description == null) {
+			description = handler.getCreatableProperties();
+			creatableProperties.put(handler, description);
+		}
+		return description;
+	}
+	
+	/**
+	 * @param handler
+	 * @return the {@link DelegatingResourceHandler#getUpdatableProperties()} of the handler, which
+	 *         are only described once
+	 * @throws ResourceDoesNotSupportOperationException
+	 */
+	protected DelegatingResourceDescription getUpdatablePropertiesOf(DelegatingResourceHandler<? extends T> handler)
+	        throws ResourceDoesNotSupportOperationException {
+		DelegatingResourceDescription description = updatableProperties.get(handler);
+		if (description == null) {
+			description = handler.getUpdatableProperties();
+			updatableProperties.put(handler, description);
+		}
+		return description;
+	}
+	
 	/**
 	 * Finds a method on clazz or a superclass that is annotated with {@link RepHandler} and is
 	 * suitable for rep
@@ -676,43 +812,51 @@ public abstract class BaseDelegatingResource<T> implements Converter<T>, Resourc
 				handler = this;
 			}
 			
-			// first, try to find a @PropertySetter-annotated method
-			Method annotatedSetter = findSetterMethod(handler, propertyName);
-			if (annotatedSetter != null) {
-				Type expectedType = annotatedSetter.getGenericParameterTypes()[1];
-				value = ConversionUtil.convert(value, expectedType);
-				annotatedSetter.invoke(handler, instance, value);
-				return;
-			}
-			
+			getBoundSetter(handler, instance.getClass(), propertyName).set(handler, instance, value);
+		}
+		catch (Exception ex) {
+			throw new ConversionException(propertyName + " on " + instance.getClass(), ex);
+		}
+	}
+	
+	private BoundSetter getBoundSetter(DelegatingResourceHandler<? extends T> handler, Class<?> instanceClass,
+	        String propertyName) throws NoSuchMethodException {
+		Map<Class<?>, Map<String, BoundSetter>> settersByClass = boundSetters.get(handler);
+		if (settersByClass == null) {
+			settersByClass = new ConcurrentHashMap<Class<?>, Map<String, BoundSetter>>();
+			boundSetters.put(handler, settersByClass);
+		}
+		Map<String, BoundSetter> setters = settersByClass.get(instanceClass);
+		if (setters == null) {
+			setters = new ConcurrentHashMap<String, BoundSetter>();
+			settersByClass.put(instanceClass, setters);
+		}
+		BoundSetter setter = setters.get(propertyName);
+		if (setter != null)
+			return setter;
+		
+		// first, try to find a @PropertySetter-annotated method
+		Method annotatedSetter = findSetterMethod(handler, propertyName);
+		if (annotatedSetter != null) {
+			setter = BoundSetter.forAnnotatedSetter(annotatedSetter);
+		} else {
 			// next use standard bean methods
 			// TODO remove remappedProperties, or make them work with subclass handlers
 			String override = remappedProperties.get(propertyName);
-			if (override != null)
-				propertyName = override;
+			String beanPropertyName = override != null ? override : propertyName;
 			
 			// we need the generic type of this property, not just the class
-			Method setter = PropertyUtils.getPropertyDescriptor(instance, propertyName).getWriteMethod();
-			value = ConversionUtil.convert(value, setter.getGenericParameterTypes()[0]);
-			
-			if (value instanceof Collection) {
-				//We need to handle collections in a way that Hibernate can track.
-				Collection<?> newCollection = (Collection<?>) value;
-				Object oldValue = PropertyUtils.getProperty(instance, propertyName);
-				if (oldValue instanceof Collection) {
-					Collection collection = (Collection) oldValue;
-					collection.clear();
-					collection.addAll(newCollection);
-				} else {
-					PropertyUtils.setProperty(instance, propertyName, value);
-				}
-			} else {
-				PropertyUtils.setProperty(instance, propertyName, value);
+			PropertyDescriptor descriptor = null;
+			for (PropertyDescriptor candidate : PropertyUtils.getPropertyDescriptors(instanceClass)) {
+				if (candidate.getName().equals(beanPropertyName))
+					descriptor = candidate;
 			}
+			if (descriptor == null || descriptor.getWriteMethod() == null)
+				throw new NoSuchMethodException("No setter for " + beanPropertyName + " on " + instanceClass);
+			setter = BoundSetter.forBeanProperty(descriptor);
 		}
-		catch (Exception ex) {
-			throw new ConversionException(propertyName + " on " + instance.getClass(), ex);
-		}
+		setters.put(propertyName, setter);
+		return setter;
 	}
 	
 	private Method findSetterMethod(DelegatingResourceHandler<? extends T> handler, String propName) {
@@ -0,0 +1,89 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.annotation.PropertySetter;
+
+/**
+ * How a property is set on a delegate, i.e. either a {@link PropertySetter} method of the handler
+ * or the write method of a bean property, along with the generic type the posted value must be
+ * converted to. Looking this up involves scanning methods and introspecting the delegate class, so
+ * it is done once per handler, delegate class and property.
+ */
+class BoundSetter {
+	
+	private final Method annotatedSetter;
+	
+	private final Method writeMethod;
+	
+	private final Method readMethod;
+	
+	private final Type type;
+	
+	private BoundSetter(Method annotatedSetter, Method writeMethod, Method readMethod, Type type) {
+		this.annotatedSetter = annotatedSetter;
+		this.writeMethod = writeMethod;
+		this.readMethod = readMethod;
+		this.type = type;
+	}
+	
+	/**
+	 * @param annotatedSetter a method of the handler taking the delegate and the value
+	 */
+	public static BoundSetter forAnnotatedSetter(Method annotatedSetter) {
+		return new BoundSetter(annotatedSetter, null, null, annotatedSetter.getGenericParameterTypes()[1]);
+	}
+	
+	/**
+	 * @param descriptor a bean property of the delegate with a write method
+	 */
+	public static BoundSetter forBeanProperty(PropertyDescriptor descriptor) {
+		Method writeMethod = descriptor.getWriteMethod();
+		return new BoundSetter(null, writeMethod, descriptor.getReadMethod(), writeMethod.getGenericParameterTypes()[0]);
+	}
+	
+	/**
+	 * Converts value to the type of the property and sets it
+	 * 
+	 * @param handler
+	 * @param instance
+	 * @param value
+	 * @throws Exception
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" })
+	public void set(Object handler, Object instance, Object value) throws Exception {
+		value = ConversionUtil.convert(value, type);
+		if (annotatedSetter != null) {
+			annotatedSetter.invoke(handler, instance, value);
+		} else if (value instanceof Collection && readMethod != null) {
+			//We need to handle collections in a way that Hibernate can track.
+			Object oldValue = readMethod.invoke(instance);
+			if (oldValue instanceof Collection) {
+				Collection collection = (Collection) oldValue;
+				collection.clear();
+				collection.addAll((Collection) value);
+			} else {
+				writeMethod.invoke(instance, value);
+			}
+		} else {
+			writeMethod.invoke(instance, value);
+		}
+	}
+}
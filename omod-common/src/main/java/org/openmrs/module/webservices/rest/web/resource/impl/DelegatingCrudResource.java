@@ -13,17 +13,31 @@
  */
 package org.openmrs.module.webservices.rest.web.resource.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.Auditable;
+import org.openmrs.Retireable;
+import org.openmrs.Voidable;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.ResourcePrivileges;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.CrudResource;
 import org.openmrs.module.webservices.rest.web.resource.api.Listable;
@@ -47,6 +61,10 @@ public abstract class DelegatingCrudResource<T> extends BaseDelegatingResource<T
 	protected final Log log = LogFactory.getLog(getClass());
 	
 	/**
+	 * If the client already has the current version of the object, as told by its
+	 * {@link #getETag(Object, RequestContext)}, only the not modified status is returned, without
+	 * converting the object.
+	 * 
 	 * @see org.openmrs.module.webservices.rest.web.resource.api.Retrievable#retrieve(java.lang.String,
 	 *      org.openmrs.module.webservices.rest.web.representation.Representation)
 	 */
@@ -56,12 +74,115 @@ public abstract class DelegatingCrudResource<T> extends BaseDelegatingResource<T
 		if (delegate == null)
 			throw new ObjectNotFoundException();
 		
+		if (RestUtil.isNotModified(getETag(delegate, context), context))
+			return null;
+		return asRetrievedRepresentation(delegate, context);
+	}
+	
+	/**
+	 * Gets the requested representation of a retrieved delegate, with its type if the resource
+	 * supports subclasses
+	 * 
+	 * @param delegate
+	 * @param context
+	 * @return the representation
+	 * @throws ResponseException
+	 */
+	protected SimpleObject asRetrievedRepresentation(T delegate, RequestContext context) throws ResponseException {
 		SimpleObject ret = asRepresentation(delegate, context.getRepresentation());
 		if (hasTypesDefined())
 			ret.add(RestConstants.PROPERTY_FOR_TYPE, getTypeName(delegate));
 		return ret;
 	}
 	
+	/**
+	 * Whether saving anything that appears in the representations of this resource changes the
+	 * delegate as well, i.e. they include no other objects, not even as refs, whose display could
+	 * change on its own. Only then can {@link #getETag(Object, RequestContext)} be computed from the
+	 * version of the delegate.
+	 * 
+	 * @return false by default
+	 */
+	protected boolean isRepresentationSelfContained() {
+		return false;
+	}
+	
+	/**
+	 * Gets a strong entity tag for the requested representation of the delegate. It is made of the
+	 * uuid and the date the delegate was last changed, voided or retired, so it can be computed
+	 * before the delegate is converted.
+	 * <p>
+	 * This is only done for resources whose {@link #isRepresentationSelfContained()}. Responses of
+	 * the others, e.g. an encounter with its obs or a drug with its concept, are left to the shallow
+	 * ETag filter. It is not done either if the class of the delegate does not map dateChanged,
+	 * since its updates would then not change the tag.
+	 * 
+	 * @param delegate
+	 * @param context
+	 * @return the entity tag, or null if the delegate has no version
+	 */
+	protected String getETag(T delegate, RequestContext context) {
+		if (!isRepresentationSelfContained() || !(delegate instanceof Auditable))
+			return null;
+		if (!Context.getService(RestHelperService.class).isMappedProperty(delegate.getClass(), "dateChanged"))
+			return null;
+		Auditable auditable = (Auditable) delegate;
+		Date version = auditable.getDateChanged() != null ? auditable.getDateChanged() : auditable.getDateCreated();
+		if (version == null)
+			return null;
+		
+		StringBuilder eTag = new StringBuilder("\"").append(getUniqueId(delegate));
+		eTag.append('-').append(Long.toHexString(version.getTime()));
+		if (delegate instanceof Voidable && ((Voidable) delegate).isVoided())
+			eTag.append("-v").append(toHex(((Voidable) delegate).getDateVoided()));
+		if (delegate instanceof Retireable && ((Retireable) delegate).isRetired())
+			eTag.append("-r").append(toHex(((Retireable) delegate).getDateRetired()));
+		String variant = context.getRepresentation().getRepresentation() + "|" + Context.getLocale();
+		eTag.append('-').append(Integer.toHexString(variant.hashCode())).append('"');
+		return eTag.toString();
+	}
+	
+	private String toHex(Date date) {
+		return date != null ? Long.toHexString(date.getTime()) : "";
+	}
+	
+	/**
+	 * Retrieves many objects at once. They are looked up by uuid with a single query and only the
+	 * unique ids that are not found that way are passed to {@link #getByUniqueId(String)}. That
+	 * query bypasses the services, so it is only used if the user has the privileges the service
+	 * requires to retrieve the supported class by uuid, and otherwise every id goes through
+	 * {@link #getByUniqueId(String)}.
+	 * 
+	 * @param uniqueIds
+	 * @param context
+	 * @return the objects in the order of the given ids as results, and the ids that were not found
+	 *         as missing
+	 * @throws ResponseException
+	 */
+	@SuppressWarnings("unchecked")
+	public SimpleObject retrieveAll(List<String> uniqueIds, RequestContext context) throws ResponseException {
+		Map<String, T> found = new HashMap<String, T>();
+		Resource annotation = getClass().getAnnotation(Resource.class);
+		if (annotation != null && ResourcePrivileges.canView(annotation.supportedClass())) {
+			for (Object delegate : Context.getService(RestHelperService.class).getObjectsByUuids(
+			    annotation.supportedClass(), uniqueIds)) {
+				found.put(getUniqueId((T) delegate), (T) delegate);
+			}
+		}
+		
+		List<Object> results = new ArrayList<Object>();
+		List<String> missing = new ArrayList<String>();
+		for (String uniqueId : uniqueIds) {
+			T delegate = found.containsKey(uniqueId) ? found.get(uniqueId) : getByUniqueId(uniqueId);
+			if (delegate == null) {
+				missing.add(uniqueId);
+				continue;
+			}
+			results.add(asRetrievedRepresentation(delegate, context));
+		}
+		return new SimpleObject().add("results", results).add("missing", missing);
+	}
+	
 	/**
 	 * Default implementation that returns REF, DEFAULT, and FULL
 	 * 
@@ -90,16 +211,9 @@ public abstract class DelegatingCrudResource<T> extends BaseDelegatingResource<T
 		}
 		
 		T delegate = handler.newDelegate();
-		setConvertedProperties(delegate, propertiesToCreate, handler.getCreatableProperties(), true);
+		setConvertedProperties(delegate, propertiesToCreate, getCreatablePropertiesOf(handler), true);
 		delegate = save(delegate);
-		SimpleObject ret = (SimpleObject) ConversionUtil.convertToRepresentation(delegate, Representation.DEFAULT);
-		
-		// add the 'type' discriminator if we support subclasses
-		if (hasTypesDefined()) {
-			ret.add(RestConstants.PROPERTY_FOR_TYPE, getTypeName(delegate));
-		}
-		
-		return ret;
+		return asCreatedRepresentation(delegate, context);
 	}
 	
 	/**
@@ -128,17 +242,9 @@ public abstract class DelegatingCrudResource<T> extends BaseDelegatingResource<T
 		
 		DelegatingResourceHandler<? extends T> handler = getResourceHandler(delegate);
 		
-		setConvertedProperties(delegate, propertiesToUpdate, handler.getUpdatableProperties(), false);
+		setConvertedProperties(delegate, propertiesToUpdate, getUpdatablePropertiesOf(handler), false);
 		delegate = save(delegate);
-		
-		SimpleObject ret = (SimpleObject) ConversionUtil.convertToRepresentation(delegate, Representation.DEFAULT);
-		
-		// add the 'type' discriminator if we support subclasses
-		if (hasTypesDefined()) {
-			ret.add(RestConstants.PROPERTY_FOR_TYPE, getTypeName(delegate));
-		}
-		
-		return ret;
+		return asSavedRepresentation(delegate, context);
 	}
 	
 	/**
@@ -205,6 +311,62 @@ public abstract class DelegatingCrudResource<T> extends BaseDelegatingResource<T
 		}
 	}
 	
+	/**
+	 * Implementations whose lists and search results can be validated by cheap aggregate queries
+	 * should override this method next to {@link #doGetAll(RequestContext)} and
+	 * {@link #doSearch(RequestContext)}, typically with
+	 * {@link RestHelperService#getCollectionVersion(Class...)} of the classes they read. The
+	 * version must change whenever anything in the requested representation changes.
+	 * 
+	 * @param context
+	 * @return { Long count, Date lastModified }, or null if the list cannot be validated
+	 */
+	protected Object[] getCollectionVersion(RequestContext context) {
+		return null;
+	}
+	
+	/**
+	 * Checks whether the client already has the requested list or search result, before anything
+	 * is loaded. The entity tag is a digest of the {@link #getCollectionVersion(RequestContext)},
+	 * the request parameters and the locale, so that it does not reveal how many objects there
+	 * are. The version is only computed for authenticated users allowed to view the objects, since
+	 * it is read before the service checks any privilege.
+	 * <p>
+	 * No Last-Modified header is set, since the date alone does not change when an object is
+	 * purged, only the count in the entity tag does.
+	 * 
+	 * @param context
+	 * @return true if the client has the current version, in which case the status is set to not
+	 *         modified
+	 * @should return false for an anonymous user
+	 */
+	public boolean isCollectionNotModified(RequestContext context) {
+		Class<?> supportedClass = ResourcePrivileges.getSupportedClass(this);
+		if (!Context.isAuthenticated() || supportedClass == null || !ResourcePrivileges.canView(supportedClass))
+			return false;
+		Object[] version = getCollectionVersion(context);
+		if (version == null)
+			return false;
+		String variant = getClass().getName() + "|" + getParameterString(context.getRequest()) + "|" + Context.getLocale();
+		String eTag = "\"" + RestUtil.digest(version[0] + "|" + toHex((Date) version[1]) + "|" + variant) + "\"";
+		return RestUtil.isNotModified(eTag, context);
+	}
+	
+	/**
+	 * @param request may be null
+	 * @return the request parameters sorted by name, in query string form
+	 */
+	@SuppressWarnings("unchecked")
+	static String getParameterString(HttpServletRequest request) {
+		StringBuilder parameters = new StringBuilder();
+		if (request != null) {
+			for (Map.Entry<String, String[]> param : new TreeMap<String, String[]>(request.getParameterMap()).entrySet()) {
+				parameters.append(param.getKey()).append('=').append(StringUtils.join(param.getValue(), ',')).append('&');
+			}
+		}
+		return parameters.toString();
+	}
+	
 	/**
 	 * Implementations should override this method to return a list of all instances represented by
 	 * the specified rest resource in the database. (If the resource supports subclasses, this
@@ -36,6 +36,8 @@ public class DelegatingResourceDescription implements RepresentationDescription
 	
 	List<Hyperlink> links = new ArrayList<Hyperlink>();
 	
+	private volatile PropertyBinder propertyBinder;
+	
 	public void addProperty(String propertyName) {
 		addProperty(propertyName, propertyName, null, false);
 	}
@@ -80,12 +82,14 @@ public class DelegatingResourceDescription implements RepresentationDescription
 		if (rep == null)
 			rep = Representation.DEFAULT;
 		properties.put(propertyName, new Property(delegatePropertyName, rep, required));
+		propertyBinder = null;
 	}
 	
 	public void addProperty(String propertyName, Method method, Representation rep, boolean required) {
 		if (rep == null)
 			rep = Representation.DEFAULT;
 		properties.put(propertyName, new Property(method, rep, required));
+		propertyBinder = null;
 	}
 	
 	/**
@@ -95,6 +99,7 @@ public class DelegatingResourceDescription implements RepresentationDescription
 	 */
 	public void removeProperty(String propertyName) {
 		properties.remove(propertyName);
+		propertyBinder = null;
 	}
 	
 	public DelegatingResourceDescription addSelfLink() {
@@ -120,6 +125,23 @@ public class DelegatingResourceDescription implements RepresentationDescription
 		return links;
 	}
 	
+	/**
+	 * Indexes the allowed and required properties the first time this description is bound to a
+	 * posted object. Changes made through {@link #getProperties()} afterwards are not seen.
+	 * 
+	 * @return the property binder of this description
+	 * @should index the properties only once
+	 * @should index the properties again after they change
+	 */
+	PropertyBinder getPropertyBinder() {
+		PropertyBinder binder = propertyBinder;
+		if (binder == null) {
+			binder = new PropertyBinder(this);
+			propertyBinder = binder;
+		}
+		return binder;
+	}
+	
 	/**
 	 * A property that will be included in a representation
 	 */
@@ -97,9 +97,9 @@ public abstract class DelegatingSubResource<T, P, PR extends DelegatingCrudResou
 			throw new ObjectNotFoundException();
 		T delegate = newDelegate();
 		setParent(delegate, parent);
-		setConvertedProperties(delegate, post, getCreatableProperties(), true);
+		setConvertedProperties(delegate, post, getCreatablePropertiesOf(this), true);
 		delegate = save(delegate);
-		return ConversionUtil.convertToRepresentation(delegate, Representation.DEFAULT);
+		return asCreatedRepresentation(delegate, context);
 	}
 	
 	/**
@@ -138,9 +138,9 @@ public abstract class DelegatingSubResource<T, P, PR extends DelegatingCrudResou
 		if (delegate == null)
 			throw new ObjectNotFoundException();
 		testParent(delegate, parentUniqueId);
-		setConvertedProperties(delegate, propertiesToUpdate, getUpdatableProperties(), false);
+		setConvertedProperties(delegate, propertiesToUpdate, getUpdatablePropertiesOf(this), false);
 		delegate = save(delegate);
-		return ConversionUtil.convertToRepresentation(delegate, Representation.DEFAULT);
+		return asSavedRepresentation(delegate, context);
 	}
 	
 	/**
@@ -15,6 +15,8 @@ package org.openmrs.module.webservices.rest.web.resource.impl;
 
 import java.util.Date;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.api.context.Context;
@@ -22,12 +24,16 @@ import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.openmrs.module.webservices.rest.web.annotation.RepHandler;
+import org.openmrs.module.webservices.rest.web.annotation.Resource;
+import org.openmrs.module.webservices.rest.web.api.RestHelperService;
 import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.RefRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.response.ConversionException;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 
 /**
@@ -92,6 +98,150 @@ public abstract class MetadataDelegatingCrudResource<T extends OpenmrsMetadata>
 		return ret;
 	}
 	
+	/**
+	 * Whether representations of this resource may be kept in the {@link MetadataResponseCache}.
+	 * Resources whose representations include data that is not metadata, e.g. the person of a user,
+	 * should return false.
+	 * 
+	 * @return true by default
+	 */
+	public boolean isResponseCacheable() {
+		return true;
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.BaseDelegatingResource#isRefCacheable()
+	 */
+	@Override
+	protected boolean isRefCacheable() {
+		return isResponseCacheable();
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#retrieve(java.lang.String,
+	 *      org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public Object retrieve(String uuid, RequestContext context) throws ResponseException {
+		String key = isResponseCacheable() ? MetadataResponseCache.getKey(this, uuid, context) : null;
+		if (key == null)
+			return super.retrieve(uuid, context);
+		SimpleObject ret = MetadataResponseCache.get(key);
+		if (ret != null)
+			return RestUtil.isNotModified(MetadataResponseCache.getETag(key), context) ? null : ret;
+		
+		long generation = MetadataResponseCache.getGeneration();
+		T delegate = getByUniqueId(uuid);
+		if (delegate == null)
+			throw new ObjectNotFoundException();
+		String eTag = getETag(delegate, context);
+		if (RestUtil.isNotModified(eTag, context))
+			return null;
+		ret = asRetrievedRepresentation(delegate, context);
+		MetadataResponseCache.put(key, ret, eTag, generation);
+		return ret;
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#getAll(org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public SimpleObject getAll(RequestContext context) throws ResponseException {
+		String key = getListKey("getAll", context);
+		if (key == null)
+			return super.getAll(context);
+		SimpleObject ret = MetadataResponseCache.get(key);
+		if (ret == null) {
+			long generation = MetadataResponseCache.getGeneration();
+			ret = super.getAll(context);
+			MetadataResponseCache.put(key, ret, generation);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#search(org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public SimpleObject search(RequestContext context) throws ResponseException {
+		String key = getListKey("search", context);
+		if (key == null)
+			return super.search(context);
+		SimpleObject ret = MetadataResponseCache.get(key);
+		if (ret == null) {
+			long generation = MetadataResponseCache.getGeneration();
+			ret = super.search(context);
+			MetadataResponseCache.put(key, ret, generation);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Lists depend on all the request parameters (query, paging, representation), so they are only
+	 * cached when the request is known
+	 */
+	private String getListKey(String operation, RequestContext context) {
+		HttpServletRequest request = context.getRequest();
+		if (!isResponseCacheable() || request == null)
+			return null;
+		return MetadataResponseCache.getKey(this, operation + "?" + getParameterString(request), context);
+	}
+	
+	/**
+	 * Lists of refs only show what is stored in the table of the metadata, so they are validated by
+	 * that table
+	 * 
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#getCollectionVersion(org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	protected Object[] getCollectionVersion(RequestContext context) {
+		Resource annotation = getClass().getAnnotation(Resource.class);
+		if (!isResponseCacheable() || annotation == null || !(context.getRepresentation() instanceof RefRepresentation))
+			return null;
+		return Context.getService(RestHelperService.class).getCollectionVersion(annotation.supportedClass());
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#create(org.openmrs.module.webservices.rest.SimpleObject,
+	 *      org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public Object create(SimpleObject propertiesToCreate, RequestContext context) throws ResponseException {
+		MetadataResponseCache.invalidateAll();
+		return super.create(propertiesToCreate, context);
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#update(java.lang.String,
+	 *      org.openmrs.module.webservices.rest.SimpleObject,
+	 *      org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public Object update(String uuid, SimpleObject propertiesToUpdate, RequestContext context) throws ResponseException {
+		MetadataResponseCache.invalidateAll();
+		return super.update(uuid, propertiesToUpdate, context);
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#delete(java.lang.String,
+	 *      java.lang.String, org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public void delete(String uuid, String reason, RequestContext context) throws ResponseException {
+		MetadataResponseCache.invalidateAll();
+		super.delete(uuid, reason, context);
+	}
+	
+	/**
+	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#purge(java.lang.String,
+	 *      org.openmrs.module.webservices.rest.web.RequestContext)
+	 */
+	@Override
+	public void purge(String uuid, RequestContext context) throws ResponseException {
+		MetadataResponseCache.invalidateAll();
+		super.purge(uuid, context);
+	}
+	
 	/**
 	 * @see org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource#delete(java.lang.String,
 	 *      org.openmrs.module.webservices.rest.web.RequestContext)
@@ -0,0 +1,292 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Caches the representations returned by {@link MetadataDelegatingCrudResource}s, which are read
+ * far more often than they change.
+ * <p>
+ * Entries are keyed by resource, uuid or query string, representation, locale and the roles of the
+ * user, and are kept for at most {@link #TTL} milliseconds. Since representations refer to other
+ * metadata (e.g. the parent of a location), any write to metadata through a resource or an
+ * OpenMRS service (see {@link MetadataResponseCacheAdvice}) invalidates the whole cache.
+ * <p>
+ * Separately, the cache keeps the ref representations of single objects, which are embedded in
+ * the representations of many others (e.g. the location of every encounter), so that they are not
+ * converted again for each of them. These fragments do not depend on the user, and are invalidated
+ * along with the responses.
+ */
+public class MetadataResponseCache {
+	
+	public static final int MAX_ENTRIES = 2000;
+	
+	public static final int MAX_FRAGMENTS = 10000;
+	
+	public static final long TTL = TimeUnit.MINUTES.toMillis(10);
+	
+	private static final Map<String, Entry> cache = newLruMap(MAX_ENTRIES);
+		
+	private static final Map<String, Entry> fragments = newLruMap(MAX_FRAGMENTS);
+	
+	private static final AtomicLong generation = new AtomicLong();
+	
+	private static final AtomicLong hits = new AtomicLong();
+	
+	private static final AtomicLong misses = new AtomicLong();
+	
+	private static final AtomicLong fragmentHits = new AtomicLong();
+	
+	private static final AtomicLong fragmentMisses = new AtomicLong();
+	
+	private static final AtomicLong invalidations = new AtomicLong();
+	
+	@SuppressWarnings("serial")
+	private static Map<String, Entry> newLruMap(final int maxEntries) {
+		return Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		});
+	}
+	
+	/**
+	 * @param resource
+	 * @param uuidOrQuery the uuid of a single object, or the query string of a list
+	 * @param context
+	 * @return the cache key, or null if the request cannot be cached
+	 */
+	public static String getKey(Object resource, String uuidOrQuery, RequestContext context) {
+		if (uuidOrQuery == null || context.getRepresentation() == null)
+			return null;
+		StringBuilder key = new StringBuilder(resource.getClass().getName());
+		key.append('|').append(uuidOrQuery);
+		key.append('|').append(context.getRepresentation().getRepresentation());
+		key.append('|').append(Context.getLocale());
+		key.append('|').append(getRoles());
+		return key.toString();
+	}
+	
+	/**
+	 * The roles decide which privileges the user has, and hence whether the metadata may be read at
+	 * all, so they are part of the key rather than the user
+	 */
+	private static String getRoles() {
+		User user = Context.getAuthenticatedUser();
+		if (user == null)
+			return "anonymous";
+		List<String> names = new ArrayList<String>();
+		for (Role role : user.getRoles()) {
+			names.add(role.getRole());
+		}
+		Collections.sort(names);
+		return StringUtils.join(names, ',');
+	}
+	
+	/**
+	 * @param key
+	 * @return the cached representation, or null if there is none
+	 * @should return a cached representation until it is invalidated
+	 */
+	public static SimpleObject get(String key) {
+		Entry entry = getEntry(cache, key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+	
+	private static Entry getEntry(Map<String, Entry> map, String key) {
+		Entry entry = map.get(key);
+		if (entry != null && entry.expires < System.currentTimeMillis()) {
+			map.remove(key);
+			return null;
+		}
+		return entry;
+	}
+	
+	/**
+	 * @return the current generation, to be passed to {@link #put(String, SimpleObject, long)}
+	 */
+	public static long getGeneration() {
+		return generation.get();
+	}
+	
+	/**
+	 * @param key
+	 * @return the entity tag of the cached representation, or null if there is none
+	 */
+	public static String getETag(String key) {
+		Entry entry = cache.get(key);
+		return entry != null ? entry.eTag : null;
+	}
+	
+	/**
+	 * Caches a representation, unless the cache was invalidated since it was read
+	 * 
+	 * @param key
+	 * @param value
+	 * @param readGeneration the result of {@link #getGeneration()} before the value was read
+	 * @should not cache a value read before an invalidation
+	 */
+	public static void put(String key, SimpleObject value, long readGeneration) {
+		put(key, value, null, readGeneration);
+	}
+	
+	/**
+	 * Caches a representation along with its entity tag, unless the cache was invalidated since it
+	 * was read
+	 * 
+	 * @param key
+	 * @param value
+	 * @param eTag may be null
+	 * @param readGeneration the result of {@link #getGeneration()} before the value was read
+	 */
+	public static void put(String key, SimpleObject value, String eTag, long readGeneration) {
+		synchronized (cache) {
+			if (readGeneration == generation.get())
+				cache.put(key, new Entry(value, eTag, System.currentTimeMillis() + TTL));
+		}
+	}
+	
+	/**
+	 * @param resource
+	 * @param uuid the uuid of a single object
+	 * @param representation
+	 * @return the key of the representation in the fragment cache, or null if it cannot be cached
+	 */
+	public static String getFragmentKey(Object resource, String uuid, Representation representation) {
+		if (uuid == null)
+			return null;
+		StringBuilder key = new StringBuilder(resource.getClass().getName());
+		key.append('|').append(uuid);
+		key.append('|').append(representation.getRepresentation());
+		key.append('|').append(Context.getLocale());
+		return key.toString();
+	}
+	
+	/**
+	 * @param key
+	 * @return a copy of the cached representation, or null if there is none
+	 * @should return a copy of a cached fragment until it is invalidated
+	 */
+	public static SimpleObject getFragment(String key) {
+		Entry entry = getEntry(fragments, key);
+		if (entry == null) {
+			fragmentMisses.incrementAndGet();
+			return null;
+		}
+		fragmentHits.incrementAndGet();
+		SimpleObject copy = new SimpleObject();
+		copy.putAll(entry.value);
+		return copy;
+	}
+	
+	/**
+	 * Caches a copy of the representation of a single object, unless the cache was invalidated since
+	 * it was read
+	 * 
+	 * @param key
+	 * @param value
+	 * @param readGeneration the result of {@link #getGeneration()} before the value was read
+	 */
+	public static void putFragment(String key, SimpleObject value, long readGeneration) {
+		SimpleObject copy = new SimpleObject();
+		copy.putAll(value);
+		synchronized (cache) {
+			if (readGeneration == generation.get())
+				fragments.put(key, new Entry(copy, null, System.currentTimeMillis() + TTL));
+		}
+	}
+	
+	/**
+	 * Discards all cached representations. If called within a transaction, they are discarded again
+	 * when it completes, since a request reading the metadata before the transaction commits or rolls
+	 * back could cache a state that never becomes visible.
+	 */
+	public static void invalidateAll() {
+		clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				
+				@Override
+				public void afterCompletion(int status) {
+					clear();
+				}
+			});
+		}
+	}
+	
+	private static void clear() {
+		synchronized (cache) {
+			generation.incrementAndGet();
+			cache.clear();
+			fragments.clear();
+		}
+		invalidations.incrementAndGet();
+	}
+	
+	/**
+	 * @return the size of the cache and the number of hits, misses and invalidations since startup,
+	 *         along with the same for the fragments
+	 */
+	public static SimpleObject getStatistics() {
+		return getStatistics(cache, hits, misses).add("fragments", getStatistics(fragments, fragmentHits, fragmentMisses))
+		        .add("invalidations", invalidations.get());
+	}
+	
+	private static SimpleObject getStatistics(Map<String, Entry> map, AtomicLong hits, AtomicLong misses) {
+		long hitCount = hits.get();
+		long missCount = misses.get();
+		long total = hitCount + missCount;
+		return new SimpleObject().add("size", map.size()).add("hits", hitCount).add("misses", missCount).add("hitRatio",
+		    total == 0 ? 0.0 : (double) hitCount / total);
+	}
+	
+	private static class Entry {
+		
+		private final SimpleObject value;
+		
+		private final String eTag;
+		
+		private final long expires;
+		
+		public Entry(SimpleObject value, String eTag, long expires) {
+			this.value = value;
+			this.eTag = eTag;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Concept;
+import org.openmrs.OpenmrsMetadata;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Invalidates the {@link MetadataResponseCache} when metadata is written through an OpenMRS
+ * service, e.g. by the legacy UI or another module. Registered on the services in config.xml.
+ */
+public class MetadataResponseCacheAdvice implements AfterReturningAdvice {
+	
+	private static final String[] WRITE_PREFIXES = { "save", "update", "create", "retire", "unretire", "purge", "delete",
+	        "void", "unvoid", "merge" };
+	
+	/**
+	 * @see org.springframework.aop.AfterReturningAdvice#afterReturning(java.lang.Object,
+	 *      java.lang.reflect.Method, java.lang.Object[], java.lang.Object)
+	 * @should invalidate the cache when metadata is saved
+	 * @should not invalidate the cache when data is saved
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (!isWrite(method.getName()) || !hasMetadataArgument(args))
+			return;
+		MetadataResponseCache.invalidateAll();
+	}
+	
+	private boolean isWrite(String methodName) {
+		for (String prefix : WRITE_PREFIXES) {
+			if (methodName.startsWith(prefix))
+				return true;
+		}
+		return false;
+	}
+	
+	private boolean hasMetadataArgument(Object[] args) {
+		if (args == null)
+			return false;
+		for (Object arg : args) {
+			// concepts are not metadata, but e.g. drugs and concept classes refer to them
+			if (arg instanceof OpenmrsMetadata || arg instanceof Concept)
+				return true;
+		}
+		return false;
+	}
+}
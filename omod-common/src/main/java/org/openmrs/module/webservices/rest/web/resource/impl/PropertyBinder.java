@@ -0,0 +1,75 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription.Property;
+
+/**
+ * The allowed and required properties of a creatable or updatable
+ * {@link DelegatingResourceDescription}, indexed once so that checking a posted object against them
+ * does not need to copy the description. Binders are kept by their description, see
+ * {@link DelegatingResourceDescription#getPropertyBinder()}.
+ */
+class PropertyBinder {
+	
+	private final String[] names;
+	
+	private final Map<String, Integer> indexes;
+	
+	private final BitSet required;
+	
+	public PropertyBinder(DelegatingResourceDescription description) {
+		int size = description.getProperties().size();
+		names = new String[size];
+		indexes = new HashMap<String, Integer>(size * 2);
+		required = new BitSet(size);
+		int i = 0;
+		for (Entry<String, Property> property : description.getProperties().entrySet()) {
+			names[i] = property.getKey();
+			indexes.put(property.getKey(), i);
+			if (property.getValue().isRequired())
+				required.set(i);
+			i++;
+		}
+	}
+	
+	public int size() {
+		return names.length;
+	}
+	
+	/**
+	 * @param name
+	 * @return the index of the property, or -1 if it is not allowed
+	 */
+	public int indexOf(String name) {
+		Integer index = indexes.get(name);
+		return index != null ? index : -1;
+	}
+	
+	public String getName(int index) {
+		return names[index];
+	}
+	
+	/**
+	 * @return a copy of the indexes of the required properties
+	 */
+	public BitSet getRequired() {
+		return (BitSet) required.clone();
+	}
+}
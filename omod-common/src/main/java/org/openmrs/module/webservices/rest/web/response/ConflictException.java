@@ -0,0 +1,35 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.response;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception should be thrown from controllers when a request conflicts with another one, e.g.
+ * because it reuses the idempotency key of a different request.
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT, reason = "The request conflicts with another request")
+public class ConflictException extends ResponseException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public ConflictException() {
+	
+	}
+	
+	public ConflictException(String message) {
+		super(message);
+	}
+}
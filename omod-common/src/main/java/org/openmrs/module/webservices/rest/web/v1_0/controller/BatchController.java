@@ -0,0 +1,405 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.FastDateFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestUtil;
+import org.openmrs.module.webservices.rest.web.api.RestService;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
+import org.openmrs.module.webservices.rest.web.resource.api.Resource;
+import org.openmrs.module.webservices.rest.web.resource.api.CrudResource;
+import org.openmrs.module.webservices.rest.web.resource.api.Listable;
+import org.openmrs.module.webservices.rest.web.resource.api.SubResource;
+import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Executes a list of operations on resources and sub-resources in a single request and a single
+ * transaction. The posted object has a <code>requests</code> list, each entry having a
+ * <code>method</code> (GET, POST or DELETE), a <code>path</code> relative to /rest/v1 (e.g.
+ * <code>person</code>, <code>person/{uuid}</code> or <code>person/{uuid}/name</code>), an optional
+ * <code>body</code>, optional <code>params</code> (e.g. <code>v</code> or <code>limit</code>) and,
+ * for DELETE, optional <code>reason</code> and <code>purge</code> properties.
+ * <p>
+ * Each operation sees only its own params, and the headers it sets (e.g. the Location of a created
+ * object) are returned in its result rather than set on the batch response.
+ * <p>
+ * Paths and bodies may refer to the uuid of the result of an earlier operation as
+ * <code>${index}</code>, e.g. <code>person/${0}/name</code>.
+ * <p>
+ * The operations are executed in order. If one fails, the remaining ones are skipped and the whole
+ * batch is rolled back. The response has a <code>results</code> list with the status, body and
+ * headers of each executed operation.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/batch")
+public class BatchController extends BaseRestController {
+	
+	private static final Pattern BACK_REFERENCE = Pattern.compile("\\$\\{(\\d+)\\}");
+	
+	private static final FastDateFormat HTTP_DATE = FastDateFormat.getInstance("EEE, dd MMM yyyy HH:mm:ss zzz",
+	    TimeZone.getTimeZone("GMT"), Locale.US);
+	
+	private final Log log = LogFactory.getLog(getClass());
+	
+	@Autowired
+	RestService restService;
+	
+	@Autowired
+	@Qualifier("transactionManager")
+	PlatformTransactionManager transactionManager;
+	
+	/**
+	 * @param post
+	 * @param request
+	 * @param response
+	 * @return the results of the executed operations
+	 * @throws ResponseException
+	 * @should execute all operations in order
+	 * @should resolve references to the uuids of earlier results
+	 * @should stop at the first failing operation and report its error
+	 * @should return the location of a created object in its result and not on the batch response
+	 * @should use the params of each operation
+	 */
+	@RequestMapping(method = RequestMethod.POST)
+	@ResponseBody
+	public SimpleObject batch(@RequestBody SimpleObject post, final HttpServletRequest request,
+	        final HttpServletResponse response) throws ResponseException {
+		if (!(post.get("requests") instanceof List))
+			throw new IllegalArgumentException("The batch must have a list of requests");
+		final List<?> operations = (List<?>) post.get("requests");
+		final List<SimpleObject> results = new ArrayList<SimpleObject>();
+		
+		boolean committed = new TransactionTemplate(transactionManager).execute(new TransactionCallback<Boolean>() {
+			
+			@Override
+			public Boolean doInTransaction(TransactionStatus status) {
+				for (Object operation : operations) {
+					try {
+						results.add(execute((Map<?, ?>) operation, results, request, response));
+					}
+					catch (Exception ex) {
+						log.debug("Batch operation " + results.size() + " failed", ex);
+						int errorCode = getErrorCode(ex);
+						results.add(new SimpleObject().add("status", errorCode).add("body",
+						    RestUtil.wrapErrorResponse(ex, null)));
+						response.setStatus(errorCode);
+						status.setRollbackOnly();
+						return false;
+					}
+				}
+				return true;
+			}
+		});
+		
+		if (!committed) {
+			Context.clearSession();
+		}
+		SimpleObject ret = new SimpleObject();
+		ret.add("results", results);
+		ret.add("rolledBack", !committed);
+		return ret;
+	}
+	
+	private SimpleObject execute(Map<?, ?> operation, List<SimpleObject> results, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
+		String method = StringUtils.upperCase((String) operation.get("method"));
+		String path = StringUtils.strip(resolveReferences((String) operation.get("path"), results), "/");
+		if (StringUtils.isBlank(path))
+			throw new IllegalArgumentException("Every batch request must have a path");
+		String[] segments = path.split("/");
+		if (segments.length > 4)
+			throw new IllegalArgumentException("Unsupported path: " + path);
+		
+		SimpleObject body = new SimpleObject();
+		if (operation.get("body") instanceof Map) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) operation.get("body")).entrySet()) {
+				body.put((String) entry.getKey(), resolveReferences(entry.getValue(), results));
+			}
+		}
+		String reason = operation.get("reason") != null ? operation.get("reason").toString() : "web service call";
+		boolean purge = Boolean.TRUE.equals(operation.get("purge"));
+		
+		OperationRequest operationRequest = new OperationRequest(request, path, operation.get("params"));
+		OperationResponse operationResponse = new OperationResponse(response);
+		RequestContext context = RestUtil.getRequestContext(operationRequest, operationResponse);
+		Object result;
+		int status = HttpServletResponse.SC_OK;
+		if (segments.length <= 2) {
+			Resource found = restService.getResourceByName(buildResourceName(segments[0]));
+			if (!(found instanceof CrudResource))
+				throw new ResourceDoesNotSupportOperationException(found.getClass().getSimpleName()
+				        + " does not support " + method + " " + path);
+			CrudResource resource = (CrudResource) found;
+			String uuid = segments.length == 2 ? segments[1] : null;
+			if ("GET".equals(method) && uuid == null) {
+				if (!(resource instanceof Listable))
+					throw new ResourceDoesNotSupportOperationException(resource.getClass().getSimpleName()
+					        + " is not listable");
+				result = ((Listable) resource).getAll(RestUtil.getRequestContext(operationRequest, operationResponse,
+				    Representation.REF));
+			} else if ("GET".equals(method)) {
+				result = resource.retrieve(uuid, context);
+			} else if ("POST".equals(method) && uuid == null) {
+				result = resource.create(body, context);
+				status = HttpServletResponse.SC_CREATED;
+			} else if ("POST".equals(method)) {
+				result = resource.update(uuid, body, context);
+			} else if ("DELETE".equals(method) && uuid != null) {
+				if (purge)
+					resource.purge(uuid, context);
+				else
+					resource.delete(uuid, reason, context);
+				result = null;
+				status = HttpServletResponse.SC_NO_CONTENT;
+			} else {
+				throw new IllegalArgumentException("Unsupported operation: " + method + " " + path);
+			}
+		} else {
+			Resource found = restService.getResourceByName(buildResourceName(segments[0]) + "/" + segments[2]);
+			if (!(found instanceof SubResource))
+				throw new ResourceDoesNotSupportOperationException(found.getClass().getSimpleName()
+				        + " does not support " + method + " " + path);
+			SubResource resource = (SubResource) found;
+			String parentUuid = segments[1];
+			String uuid = segments.length == 4 ? segments[3] : null;
+			if ("GET".equals(method) && uuid == null) {
+				result = resource.getAll(parentUuid, context);
+			} else if ("GET".equals(method)) {
+				result = resource.retrieve(parentUuid, uuid, context);
+			} else if ("POST".equals(method) && uuid == null) {
+				result = resource.create(parentUuid, body, context);
+				status = HttpServletResponse.SC_CREATED;
+			} else if ("POST".equals(method)) {
+				result = resource.update(parentUuid, uuid, body, context);
+			} else if ("DELETE".equals(method) && uuid != null) {
+				if (purge)
+					resource.purge(parentUuid, uuid, context);
+				else
+					resource.delete(parentUuid, uuid, reason, context);
+				result = null;
+				status = HttpServletResponse.SC_NO_CONTENT;
+			} else {
+				throw new IllegalArgumentException("Unsupported operation: " + method + " " + path);
+			}
+		}
+		SimpleObject ret = new SimpleObject().add("status", status).add("body", result);
+		if (!operationResponse.headers.isEmpty())
+			ret.add("headers", operationResponse.headers);
+		return ret;
+	}
+	
+	/**
+	 * Replaces ${index} in strings, also within lists and maps, with the uuid of the result with
+	 * that index.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T resolveReferences(T value, List<SimpleObject> results) {
+		if (value instanceof String) {
+			Matcher matcher = BACK_REFERENCE.matcher((String) value);
+			StringBuffer resolved = new StringBuffer();
+			while (matcher.find()) {
+				int index = Integer.parseInt(matcher.group(1));
+				if (index >= results.size())
+					throw new IllegalArgumentException("${" + index + "} refers to a request that has not been executed");
+				Object body = results.get(index).get("body");
+				Object uuid = body instanceof Map ? ((Map<?, ?>) body).get("uuid") : null;
+				if (uuid == null)
+					throw new IllegalArgumentException("The result of request " + index + " has no uuid");
+				matcher.appendReplacement(resolved, Matcher.quoteReplacement(uuid.toString()));
+			}
+			matcher.appendTail(resolved);
+			return (T) resolved.toString();
+		} else if (value instanceof List) {
+			List<Object> resolved = new ArrayList<Object>();
+			for (Object element : (List<?>) value) {
+				resolved.add(resolveReferences(element, results));
+			}
+			return (T) resolved;
+		} else if (value instanceof Map) {
+			Map<Object, Object> resolved = new LinkedHashMap<Object, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				resolved.put(entry.getKey(), resolveReferences(entry.getValue(), results));
+			}
+			return (T) resolved;
+		}
+		return value;
+	}
+	
+	private int getErrorCode(Exception ex) {
+		ResponseStatus ann = ex.getClass().getAnnotation(ResponseStatus.class);
+		if (ann != null)
+			return ann.value().value();
+		if (RestUtil.hasCause(ex, APIAuthenticationException.class))
+			return Context.isAuthenticated() ? HttpServletResponse.SC_FORBIDDEN : HttpServletResponse.SC_UNAUTHORIZED;
+		return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+	}
+	
+	/**
+	 * The batch request as seen by one operation: its url is that of the operation's path and its
+	 * parameters are only the operation's own params
+	 */
+	private static class OperationRequest extends HttpServletRequestWrapper {
+		
+		private final String path;
+		
+		private final Map<String, String[]> parameters = new LinkedHashMap<String, String[]>();
+		
+		public OperationRequest(HttpServletRequest request, String path, Object params) {
+			super(request);
+			this.path = path;
+			if (params instanceof Map) {
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) params).entrySet()) {
+					if (entry.getValue() != null)
+						parameters.put(entry.getKey().toString(), new String[] { entry.getValue().toString() });
+				}
+			} else if (params != null) {
+				throw new IllegalArgumentException("The params of a batch request must be an object");
+			}
+		}
+		
+		@Override
+		public String getParameter(String name) {
+			String[] values = parameters.get(name);
+			return values != null ? values[0] : null;
+		}
+		
+		@Override
+		public String[] getParameterValues(String name) {
+			return parameters.get(name);
+		}
+		
+		@Override
+		@SuppressWarnings("rawtypes")
+		public Map getParameterMap() {
+			return Collections.unmodifiableMap(parameters);
+		}
+		
+		@Override
+		@SuppressWarnings("rawtypes")
+		public Enumeration getParameterNames() {
+			return Collections.enumeration(parameters.keySet());
+		}
+		
+		@Override
+		public String getQueryString() {
+			return null;
+		}
+		
+		@Override
+		public String getRequestURI() {
+			String uri = super.getRequestURI();
+			return uri.substring(0, uri.lastIndexOf("/") + 1) + path;
+		}
+		
+		@Override
+		public StringBuffer getRequestURL() {
+			String url = super.getRequestURL().toString();
+			return new StringBuffer(url.substring(0, url.lastIndexOf("/") + 1) + path);
+		}
+	}
+	
+	/**
+	 * Keeps the headers set by one operation, so that they end up in its result rather than on the
+	 * batch response
+	 */
+	private static class OperationResponse extends HttpServletResponseWrapper {
+		
+		private final SimpleObject headers = new SimpleObject();
+		
+		public OperationResponse(HttpServletResponse response) {
+			super(response);
+		}
+		
+		@Override
+		public boolean containsHeader(String name) {
+			return headers.containsKey(name);
+		}
+		
+		@Override
+		public void setHeader(String name, String value) {
+			headers.put(name, value);
+		}
+		
+		@Override
+		public void addHeader(String name, String value) {
+			headers.put(name, headers.containsKey(name) ? headers.get(name) + ", " + value : value);
+		}
+		
+		@Override
+		public void setIntHeader(String name, int value) {
+			setHeader(name, String.valueOf(value));
+		}
+		
+		@Override
+		public void addIntHeader(String name, int value) {
+			addHeader(name, String.valueOf(value));
+		}
+		
+		@Override
+		public void setDateHeader(String name, long date) {
+			setHeader(name, HTTP_DATE.format(date));
+		}
+		
+		@Override
+		public void addDateHeader(String name, long date) {
+			addHeader(name, HTTP_DATE.format(date));
+		}
+		
+		@Override
+		public void setStatus(int status) {
+		}
+		
+		@Override
+		@SuppressWarnings("deprecation")
+		public void setStatus(int status, String message) {
+		}
+	}
+}
@@ -14,16 +14,23 @@
 package org.openmrs.module.webservices.rest.web.v1_0.controller;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.module.webservices.docs.ResourceDoc;
 import org.openmrs.module.webservices.docs.ResourceDocCreator;
 import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestUtil;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -32,37 +39,121 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 /**
  * Exposes a catalog of all available resources.
+ * <p>
+ * Documenting the resources means instantiating a delegate of every handler and asking it for its
+ * representations, so the catalog is built once and kept until the application context is
+ * refreshed, i.e. a module is started or stopped, or the URI prefix changes. Filtered views of it
+ * are kept as well, and an ETag lets clients that poll it get a not modified status instead.
  */
 @Controller
 @RequestMapping("/rest/" + RestConstants.VERSION_1 + "/catalog")
-public class CatalogController extends BaseRestController {
+public class CatalogController extends BaseRestController implements ApplicationListener<ContextRefreshedEvent> {
+	
+	private static final int MAX_VIEWS = 100;
+	
+	private volatile Catalog catalog;
 	
 	/**
 	 * Gets a catalog of all available resources.
 	 *
 	 * @return
 	 * @throws Exception
+	 * @should return a not modified status if the client has the current catalog
+	 * @should not return a not modified status for the etag of another query
 	 */
 	@RequestMapping(method = RequestMethod.GET)
 	@ResponseBody
 	public Object getResourceCatalog(@RequestParam(value = "q", required = false) final String resourceName,
-	        HttpServletRequest request) throws Exception {
-		List<ResourceDoc> resourceDocList = new ArrayList<ResourceDoc>();
-		SimpleObject resourceCatalog = new SimpleObject();
+	        HttpServletRequest request, HttpServletResponse response) throws Exception {
 		String prefix = RestConstants.URI_PREFIX;
 		//strip the ending string '/rest/' because it will be added by ResourceDocCreator.create
 		if (StringUtils.isNotBlank(prefix) && prefix.endsWith("/rest/"))
 			prefix = prefix.substring(0, prefix.lastIndexOf("/rest/"));
-		if (resourceName == null) {
-			resourceDocList = ResourceDocCreator.create(prefix);
-		} else {
-			for (ResourceDoc resourceDoc : ResourceDocCreator.create(prefix)) {
-				if (resourceDoc.getName().toLowerCase().contains(resourceName.toLowerCase())) {
-					resourceDocList.add(resourceDoc);
+		
+		Catalog current = catalog;
+		if (current == null || !StringUtils.equals(current.prefix, prefix)) {
+			current = new Catalog(prefix, ResourceDocCreator.create(prefix));
+			catalog = current;
+		}
+		
+		String query = resourceName != null ? resourceName.toLowerCase() : null;
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		context.setResponse(response);
+		if (RestUtil.isNotModified(current.getETag(query), context))
+			return null;
+		return current.getView(query);
+	}
+	
+	/**
+	 * Discards the catalog, since the resources change when modules are started or stopped
+	 * 
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		catalog = null;
+	}
+	
+	/**
+	 * The documentation of all resources for a URI prefix, indexed by lower case name
+	 */
+	private static class Catalog {
+		
+		private final String prefix;
+		
+		private final long builtAt = System.currentTimeMillis();
+		
+		private final List<ResourceDoc> docs;
+		
+		private final String[] names;
+		
+		@SuppressWarnings("serial")
+		private final Map<String, SimpleObject> views = Collections
+		        .synchronizedMap(new LinkedHashMap<String, SimpleObject>(16, 0.75f, true) {
+			        
+			        @Override
+			        protected boolean removeEldestEntry(Map.Entry<String, SimpleObject> eldest) {
+				        return size() > MAX_VIEWS;
+			        }
+		        });
+		
+		public Catalog(String prefix, List<ResourceDoc> docs) {
+			this.prefix = prefix;
+			this.docs = Collections.unmodifiableList(docs);
+			names = new String[docs.size()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = docs.get(i).getName().toLowerCase();
+			}
+		}
+		
+		public String getETag(String query) {
+			StringBuilder eTag = new StringBuilder("\"catalog-").append(Long.toHexString(builtAt));
+			if (query != null)
+				eTag.append('-').append(RestUtil.digest(query));
+			return eTag.append('"').toString();
+		}
+		
+		/**
+		 * @param query a lower case part of the names of the resources to include, or null for all
+		 */
+		public SimpleObject getView(String query) {
+			String key = query != null ? query : "";
+			SimpleObject view = views.get(key);
+			if (view == null) {
+				List<ResourceDoc> matching = docs;
+				if (query != null) {
+					matching = new ArrayList<ResourceDoc>();
+					for (int i = 0; i < names.length; i++) {
+						if (names[i].contains(query))
+							matching.add(docs.get(i));
+					}
 				}
+				view = new SimpleObject();
+				view.put("catalog", matching);
+				views.put(key, view);
 			}
+			return view;
 		}
-		resourceCatalog.put("catalog", resourceDocList);
-		return new LinkedHashMap<String, Object>(resourceCatalog);
 	}
 }
@@ -13,21 +13,29 @@
  */
 package org.openmrs.module.webservices.rest.web.v1_0.controller;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.StringUtils;
 import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.CacheControlPolicy;
+import org.openmrs.module.webservices.rest.web.IdempotencyCache;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestUtil;
+import org.openmrs.module.webservices.rest.web.RestWriteJournal;
 import org.openmrs.module.webservices.rest.web.api.RestService;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.CrudResource;
 import org.openmrs.module.webservices.rest.web.resource.api.Listable;
 import org.openmrs.module.webservices.rest.web.resource.api.SearchHandler;
 import org.openmrs.module.webservices.rest.web.resource.api.Searchable;
+import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -52,6 +60,9 @@ public class MainResourceController extends BaseRestController {
 	@Autowired
 	RestService restService;
 	
+	@Autowired
+	RestWriteJournal writeJournal;
+	
 	/**
 	 * @param uuid
 	 * @param request
@@ -64,7 +75,45 @@ public class MainResourceController extends BaseRestController {
 	        HttpServletRequest request, HttpServletResponse response) throws ResponseException {
 		RequestContext context = RestUtil.getRequestContext(request, response);
 		CrudResource res = (CrudResource) restService.getResourceByName(buildResourceName(resource));
-		return res.retrieve(uuid, context);
+		Object ret = res.retrieve(uuid, context);
+		CacheControlPolicy.apply(resource, res, response);
+		return ret;
+	}
+	
+	/**
+	 * Retrieves many objects at once, for lists of uuids too long to be passed in the
+	 * {@link RestConstants#REQUEST_PROPERTY_FOR_UUIDS} parameter of a GET request. The list is
+	 * posted to the resource itself with that parameter present, so that it cannot be mistaken for
+	 * an update of an object whose uuid happens to be the parameter name.
+	 * 
+	 * @param post an object with a uuids list
+	 * @param request
+	 * @param response
+	 * @return the objects in the requested order as results and the unknown uuids as missing
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/{resource}", method = RequestMethod.POST, params = RestConstants.REQUEST_PROPERTY_FOR_UUIDS)
+	@ResponseBody
+	public SimpleObject retrieveAll(@PathVariable("resource") String resource, @RequestBody SimpleObject post,
+	        HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+		if (!(post.get(RestConstants.REQUEST_PROPERTY_FOR_UUIDS) instanceof List))
+			throw new IllegalArgumentException("The posted object must have a list of "
+			        + RestConstants.REQUEST_PROPERTY_FOR_UUIDS);
+		List<String> uuids = new ArrayList<String>();
+		for (Object uuid : (List<?>) post.get(RestConstants.REQUEST_PROPERTY_FOR_UUIDS)) {
+			uuids.add(uuid.toString());
+		}
+		return retrieveAll(resource, uuids, request, response);
+	}
+	
+	private SimpleObject retrieveAll(String resource, List<String> uuids, HttpServletRequest request,
+	        HttpServletResponse response) throws ResponseException {
+		Object res = restService.getResourceByName(buildResourceName(resource));
+		if (!(res instanceof DelegatingCrudResource))
+			throw new ResourceDoesNotSupportOperationException(res.getClass().getSimpleName()
+			        + " does not support retrieving by a list of uuids");
+		RequestContext context = RestUtil.getRequestContext(request, response);
+		return ((DelegatingCrudResource<?>) res).retrieveAll(uuids, context);
 	}
 	
 	/**
@@ -74,14 +123,22 @@ public class MainResourceController extends BaseRestController {
 	 * @return
 	 * @throws Exception
 	 */
-	@RequestMapping(value = "/{resource}", method = RequestMethod.POST)
+	@RequestMapping(value = "/{resource}", method = RequestMethod.POST, params = "!" + RestConstants.REQUEST_PROPERTY_FOR_UUIDS)
 	@ResponseBody
-	public Object create(@PathVariable("resource") String resource, @RequestBody SimpleObject post,
-	        HttpServletRequest request, HttpServletResponse response) throws ResponseException {
-		RequestContext context = RestUtil.getRequestContext(request, response);
-		CrudResource res = (CrudResource) restService.getResourceByName(buildResourceName(resource));
-		Object created = res.create(post, context);
-		return RestUtil.created(response, created);
+	public Object create(@PathVariable("resource") final String resource, @RequestBody final SimpleObject post,
+	        final HttpServletRequest request, HttpServletResponse response) throws ResponseException {
+		return IdempotencyCache.execute(request, response, post, new IdempotencyCache.Write() {
+			
+			@Override
+			public Object write(HttpServletResponse response) throws ResponseException {
+				RequestContext context = RestUtil.getRequestContext(request, response);
+				if (context.isRespondAsync() && writeJournal.isJournaled(buildResourceName(resource)))
+					return writeJournal.accept(buildResourceName(resource), post, response);
+				CrudResource res = (CrudResource) restService.getResourceByName(buildResourceName(resource));
+				Object created = res.create(post, context);
+				return RestUtil.created(response, created);
+			}
+		});
 	}
 	
 	/**
@@ -94,13 +151,19 @@ public class MainResourceController extends BaseRestController {
 	 */
 	@RequestMapping(value = "/{resource}/{uuid}", method = RequestMethod.POST)
 	@ResponseBody
-	public Object update(@PathVariable("resource") String resource, @PathVariable("uuid") String uuid,
-	        @RequestBody SimpleObject post, HttpServletRequest request, HttpServletResponse response)
+	public Object update(@PathVariable("resource") final String resource, @PathVariable("uuid") final String uuid,
+	        @RequestBody final SimpleObject post, final HttpServletRequest request, HttpServletResponse response)
 	        throws ResponseException {
-		RequestContext context = RestUtil.getRequestContext(request, response);
-		CrudResource res = (CrudResource) restService.getResourceByName(buildResourceName(resource));
-		Object updated = res.update(uuid, post, context);
-		return RestUtil.updated(response, updated);
+		return IdempotencyCache.execute(request, response, post, new IdempotencyCache.Write() {
+			
+			@Override
+			public Object write(HttpServletResponse response) throws ResponseException {
+				RequestContext context = RestUtil.getRequestContext(request, response);
+				CrudResource res = (CrudResource) restService.getResourceByName(buildResourceName(resource));
+				Object updated = res.update(uuid, post, context);
+				return RestUtil.updated(response, updated);
+			}
+		});
 	}
 	
 	/**
@@ -143,12 +206,23 @@ public class MainResourceController extends BaseRestController {
 	 * @return
 	 * @throws ResponseException
 	 */
-	@SuppressWarnings("rawtypes")
 	@RequestMapping(value = "/{resource}", method = RequestMethod.GET)
 	@ResponseBody
 	public SimpleObject get(@PathVariable("resource") String resource, HttpServletRequest request,
 	        HttpServletResponse response) throws ResponseException {
 		CrudResource res = (CrudResource) restService.getResourceByName(buildResourceName(resource));
+		SimpleObject ret = get(res, resource, request, response);
+		CacheControlPolicy.apply(resource, res, response);
+		return ret;
+	}
+		
+	@SuppressWarnings("rawtypes")
+	private SimpleObject get(CrudResource res, String resource, HttpServletRequest request, HttpServletResponse response)
+	        throws ResponseException {
+		String uuids = request.getParameter(RestConstants.REQUEST_PROPERTY_FOR_UUIDS);
+		if (uuids != null) {
+			return retrieveAll(resource, Arrays.asList(StringUtils.split(uuids, ',')), request, response);
+		}
 		
 		RequestContext context = RestUtil.getRequestContext(request, response, Representation.REF);
 		
@@ -158,6 +232,10 @@ public class MainResourceController extends BaseRestController {
 			return searchHandler.search(context).toSimpleObject();
 		}
 		
+		if (res instanceof DelegatingCrudResource && ((DelegatingCrudResource<?>) res).isCollectionNotModified(context)) {
+			return null;
+		}
+		
 		Enumeration parameters = request.getParameterNames();
 		while (parameters.hasMoreElements()) {
 			if (!RestConstants.SPECIAL_REQUEST_PARAMETERS.contains(parameters.nextElement())) {
@@ -17,6 +17,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.CacheControlPolicy;
+import org.openmrs.module.webservices.rest.web.IdempotencyCache;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestUtil;
@@ -59,7 +61,9 @@ public class MainSubResourceController extends BaseRestController {
             HttpServletResponse response) throws ResponseException {
 		RequestContext context = RestUtil.getRequestContext(request, response);
 		SubResource res = (SubResource) restService.getResourceByName(buildResourceName(resource) + "/" + subResource);
-		return res.retrieve(parentUuid, uuid, context);
+		Object ret = res.retrieve(parentUuid, uuid, context);
+		CacheControlPolicy.apply(resource + "/" + subResource, res, response);
+		return ret;
 	}
 	
 	/**
@@ -76,7 +80,9 @@ public class MainSubResourceController extends BaseRestController {
 	        throws ResponseException {
 		RequestContext context = RestUtil.getRequestContext(request, response);
 		SubResource res = (SubResource) restService.getResourceByName(buildResourceName(resource) + "/" + subResource);
-		return res.getAll(parentUuid, context);
+		SimpleObject ret = res.getAll(parentUuid, context);
+		CacheControlPolicy.apply(resource + "/" + subResource, res, response);
+		return ret;
 	}
 	
 	/**
@@ -89,13 +95,21 @@ public class MainSubResourceController extends BaseRestController {
 	 */
 	@RequestMapping(value = "/{resource}/{parentUuid}/{subResource}", method = RequestMethod.POST)
 	@ResponseBody
-	public Object create(@PathVariable("resource") String resource, @PathVariable("parentUuid") String parentUuid,
-	        @PathVariable("subResource") String subResource, @RequestBody SimpleObject post, HttpServletRequest request,
-	        HttpServletResponse response) throws ResponseException {
-		RequestContext context = RestUtil.getRequestContext(request, response);
-		SubResource res = (SubResource) restService.getResourceByName(buildResourceName(resource) + "/" + subResource);
-		Object created = res.create(parentUuid, post, context);
-		return RestUtil.created(response, created);
+	public Object create(@PathVariable("resource") final String resource,
+	        @PathVariable("parentUuid") final String parentUuid, @PathVariable("subResource") final String subResource,
+	        @RequestBody final SimpleObject post, final HttpServletRequest request, HttpServletResponse response)
+	        throws ResponseException {
+		return IdempotencyCache.execute(request, response, post, new IdempotencyCache.Write() {
+			
+			@Override
+			public Object write(HttpServletResponse response) throws ResponseException {
+				RequestContext context = RestUtil.getRequestContext(request, response);
+				SubResource res = (SubResource) restService.getResourceByName(buildResourceName(resource) + "/"
+				        + subResource);
+				Object created = res.create(parentUuid, post, context);
+				return RestUtil.created(response, created);
+			}
+		});
 	}
 	
 	/**
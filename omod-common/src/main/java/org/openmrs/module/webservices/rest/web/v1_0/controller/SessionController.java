@@ -13,9 +13,19 @@
  */
 package org.openmrs.module.webservices.rest.web.v1_0.controller;
 
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.ConversionUtil;
+import org.openmrs.module.webservices.rest.web.RestConfiguration;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.filter.BasicAuthCache;
+import org.openmrs.module.webservices.rest.web.filter.SessionTokens;
+import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,7 +35,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.context.request.WebRequest;
 
 /**
- * Controller that lets a client check the status of their session, and log out. (Authenticating is handled through a filter, and may happen through this or
+ * Controller that lets a client check the status of their session, get a token for it, and log out. (Authenticating is handled through a filter, and may happen through this or
  * any other resource.
  */
 @Controller
@@ -47,13 +57,46 @@ public class SessionController extends BaseRestController {
 	}
 	
 	/**
-	 * Logs the client out
+	 * Issues a token that the client can send as <code>Authorization: Bearer &lt;token&gt;</code>
+	 * to be authenticated as the same user without sending credentials again
+	 * 
+	 * @param request
+	 * @return the token and when it expires
+	 * @should issue a token for the authenticated user
+	 * @should fail if the user is not authenticated
+	 */
+	@RequestMapping(method = RequestMethod.POST)
+	@ResponseBody
+	public Object post(HttpServletRequest request) {
+		if (!Context.isAuthenticated())
+			throw new APIAuthenticationException("Authentication is required to get a session token");
+		long lifetime = RestConfiguration.get().getSessionTokenSeconds() * 1000L;
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), SessionTokens.getIssuer(request), lifetime);
+		return new SimpleObject().add("token", token).add("expires",
+		    ConversionUtil.convertToRepresentation(new Date(System.currentTimeMillis() + lifetime), Representation.DEFAULT));
+	}
+	
+	/**
+	 * Logs the client out, revoking the token it sent and the tokens issued to it, or forgetting the
+	 * Basic Authorization header it sent
+	 * 
+	 * @param request
 	 * @should log the client out
+	 * @should forget the basic authorization header of the request
 	 */
 	@RequestMapping(method = RequestMethod.DELETE)
 	@ResponseBody
 	@ResponseStatus(value = HttpStatus.NO_CONTENT)
-	public void delete() {
+	public void delete(HttpServletRequest request) {
+		String authorization = request.getHeader("Authorization");
+		String token = SessionTokens.getToken(request);
+		if (token != null)
+			SessionTokens.revoke(token);
+		else if (authorization != null)
+			BasicAuthCache.remove(BasicAuthCache.getKey(authorization));
+		String issuer = SessionTokens.getIssuer(request);
+		if (issuer != null)
+			SessionTokens.revokeIssuedBy(issuer);
 		Context.logout();
 	}
 	
@@ -0,0 +1,58 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller;
+
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Entry;
+import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.RestWriteJournal;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Tells clients whether an object they posted asynchronously has been created by the
+ * {@link RestWriteJournal}, and if so its uuid, or why it could not be created.
+ */
+@Controller
+@RequestMapping(value = "/rest/" + RestConstants.VERSION_1 + "/journal")
+public class WriteJournalController extends BaseRestController {
+	
+	@Autowired
+	RestWriteJournal writeJournal;
+	
+	/**
+	 * @param uuid
+	 * @return the status of the journal entry
+	 * @throws ResponseException
+	 */
+	@RequestMapping(value = "/{uuid}", method = RequestMethod.GET)
+	@ResponseBody
+	public SimpleObject retrieve(@PathVariable("uuid") String uuid) throws ResponseException {
+		Entry entry = writeJournal.getEntry(uuid);
+		User user = Context.getAuthenticatedUser();
+		// entries of other users are only shown to super users
+		if (entry == null || user == null
+		        || !(user.isSuperUser() || user.getSystemId().equals(entry.getUser())))
+			throw new ObjectNotFoundException();
+		return writeJournal.asRepresentation(entry);
+	}
+}
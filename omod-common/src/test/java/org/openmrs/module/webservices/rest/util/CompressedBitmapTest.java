@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests functionality of {@link CompressedBitmap}.
+ */
+public class CompressedBitmapTest {
+	
+	/**
+	 * @return a bitmap with a dense partition (the even numbers below 20000) and a sparse one
+	 */
+	private CompressedBitmap newBitmap() {
+		CompressedBitmap bitmap = new CompressedBitmap();
+		for (int i = 0; i < 20000; i += 2) {
+			bitmap.add(i);
+		}
+		bitmap.add(100000);
+		bitmap.add(200000);
+		return bitmap;
+	}
+	
+	/**
+	 * @see CompressedBitmap#add(int)
+	 * @verifies add values to sparse and dense partitions
+	 */
+	@Test
+	public void add_shouldAddValuesToSparseAndDensePartitions() throws Exception {
+		CompressedBitmap bitmap = newBitmap();
+		bitmap.add(4);
+		
+		Assert.assertEquals(10002, bitmap.getCardinality());
+		Assert.assertTrue(bitmap.contains(0));
+		Assert.assertTrue(bitmap.contains(19998));
+		Assert.assertFalse(bitmap.contains(19999));
+		Assert.assertTrue(bitmap.contains(100000));
+		Assert.assertFalse(bitmap.contains(100001));
+	}
+	
+	/**
+	 * @see CompressedBitmap#remove(int)
+	 * @verifies remove values from sparse and dense partitions
+	 */
+	@Test
+	public void remove_shouldRemoveValuesFromSparseAndDensePartitions() throws Exception {
+		CompressedBitmap bitmap = newBitmap();
+		
+		Assert.assertTrue(bitmap.remove(2));
+		Assert.assertFalse(bitmap.remove(3));
+		Assert.assertTrue(bitmap.remove(100000));
+		Assert.assertTrue(bitmap.remove(200000));
+		
+		Assert.assertEquals(9999, bitmap.getCardinality());
+		Assert.assertFalse(bitmap.contains(2));
+		Assert.assertFalse(bitmap.contains(100000));
+	}
+	
+	/**
+	 * @see CompressedBitmap#and(CompressedBitmap)
+	 * @verifies return the intersection of two bitmaps
+	 */
+	@Test
+	public void and_shouldReturnTheIntersectionOfTwoBitmaps() throws Exception {
+		CompressedBitmap other = new CompressedBitmap();
+		for (int i = 0; i < 20000; i += 3) {
+			other.add(i);
+		}
+		other.add(200000);
+		
+		CompressedBitmap result = newBitmap().and(other);
+		
+		Assert.assertEquals(3335, result.getCardinality());
+		Assert.assertTrue(result.contains(6));
+		Assert.assertFalse(result.contains(4));
+		Assert.assertTrue(result.contains(200000));
+		Assert.assertFalse(result.contains(100000));
+	}
+	
+	/**
+	 * @see CompressedBitmap#or(CompressedBitmap)
+	 * @verifies return the union of two bitmaps
+	 */
+	@Test
+	public void or_shouldReturnTheUnionOfTwoBitmaps() throws Exception {
+		CompressedBitmap bitmap = newBitmap();
+		CompressedBitmap result = bitmap.or(CompressedBitmap.of(1, 2, 300000));
+		
+		Assert.assertEquals(10004, result.getCardinality());
+		Assert.assertTrue(result.contains(1));
+		Assert.assertTrue(result.contains(300000));
+		Assert.assertFalse(bitmap.contains(1));
+	}
+	
+	/**
+	 * @see CompressedBitmap#andNot(CompressedBitmap)
+	 * @verifies return the difference of two bitmaps
+	 */
+	@Test
+	public void andNot_shouldReturnTheDifferenceOfTwoBitmaps() throws Exception {
+		CompressedBitmap bitmap = newBitmap();
+		CompressedBitmap result = bitmap.andNot(CompressedBitmap.of(0, 1, 2, 100000));
+		
+		Assert.assertEquals(9999, result.getCardinality());
+		Assert.assertFalse(result.contains(0));
+		Assert.assertFalse(result.contains(100000));
+		Assert.assertTrue(result.contains(200000));
+		Assert.assertTrue(bitmap.contains(0));
+	}
+	
+	/**
+	 * @see CompressedBitmap#rank(int)
+	 * @verifies return the number of values up to and including the given value
+	 */
+	@Test
+	public void rank_shouldReturnTheNumberOfValuesUpToAndIncludingTheGivenValue() throws Exception {
+		CompressedBitmap bitmap = newBitmap();
+		
+		Assert.assertEquals(1, bitmap.rank(0));
+		Assert.assertEquals(2, bitmap.rank(2));
+		Assert.assertEquals(2, bitmap.rank(3));
+		Assert.assertEquals(10000, bitmap.rank(99999));
+		Assert.assertEquals(10001, bitmap.rank(100000));
+		Assert.assertEquals(10002, bitmap.rank(300000));
+	}
+	
+	/**
+	 * @see CompressedBitmap#select(int,int)
+	 * @verifies return the requested page of values
+	 */
+	@Test
+	public void select_shouldReturnTheRequestedPageOfValues() throws Exception {
+		CompressedBitmap bitmap = newBitmap();
+		
+		Assert.assertArrayEquals(new int[] { 0, 2, 4 }, bitmap.select(0, 3));
+		Assert.assertArrayEquals(new int[] { 19998, 100000, 200000 }, bitmap.select(9999, 5));
+		Assert.assertEquals(0, bitmap.select(10002, 5).length);
+	}
+	
+	/**
+	 * @see CompressedBitmap#iterator()
+	 * @verifies iterate values in ascending order
+	 */
+	@Test
+	public void iterator_shouldIterateValuesInAscendingOrder() throws Exception {
+		CompressedBitmap bitmap = CompressedBitmap.of(70000, 5, 3, 65536, 9);
+		
+		List<Integer> values = new ArrayList<Integer>();
+		for (Integer value : bitmap) {
+			values.add(value);
+		}
+		
+		Assert.assertEquals("[3, 5, 9, 65536, 70000]", values.toString());
+		Assert.assertArrayEquals(new int[] { 3, 5, 9, 65536, 70000 }, bitmap.toArray());
+	}
+}
@@ -0,0 +1,201 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests functionality of {@link MllpServer} against a local socket.
+ */
+public class MllpServerTest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private MllpServer server;
+	
+	private Socket socket;
+	
+	@Before
+	public void before() throws Exception {
+		server = new MllpServer(new MllpServer.Handler() {
+			
+			@Override
+			public String handle(String message) {
+				return "ACK " + message;
+			}
+		}, UTF8);
+		server.start(0);
+		socket = new Socket(server.getAddress(), server.getPort());
+		socket.setSoTimeout(10000);
+	}
+	
+	@After
+	public void after() throws Exception {
+		socket.close();
+		server.stop();
+	}
+	
+	/**
+	 * @see MllpServer#start(int)
+	 * @verifies acknowledge pipelined messages in order
+	 */
+	@Test
+	public void start_shouldAcknowledgePipelinedMessagesInOrder() throws Exception {
+		OutputStream out = socket.getOutputStream();
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		for (int i = 1; i <= 3; i++) {
+			messages.write(frame("MSH|" + i));
+		}
+		out.write(messages.toByteArray());
+		out.flush();
+		
+		InputStream in = socket.getInputStream();
+		Assert.assertEquals("ACK MSH|1", readFrame(in));
+		Assert.assertEquals("ACK MSH|2", readFrame(in));
+		Assert.assertEquals("ACK MSH|3", readFrame(in));
+	}
+	
+	/**
+	 * @see MllpServer#start(int)
+	 * @verifies reassemble messages split across reads
+	 */
+	@Test
+	public void start_shouldReassembleMessagesSplitAcrossReads() throws Exception {
+		// longer than the read buffer of a connection, so it cannot arrive in a single read
+		String message = "MSH|" + StringUtils.repeat("x", 20000);
+		OutputStream out = socket.getOutputStream();
+		out.write(frame(message));
+		out.flush();
+		
+		Assert.assertEquals("ACK " + message, readFrame(socket.getInputStream()));
+	}
+	
+	/**
+	 * @see MllpServer#start(int)
+	 * @verifies close connections the filter does not allow
+	 */
+	@Test
+	public void start_shouldCloseConnectionsTheFilterDoesNotAllow() throws Exception {
+		server.setConnectionFilter(new MllpServer.ConnectionFilter() {
+			
+			@Override
+			public boolean isAllowed(InetAddress address) {
+				return false;
+			}
+		});
+		Socket refused = new Socket(server.getAddress(), server.getPort());
+		try {
+			refused.setSoTimeout(10000);
+			refused.getOutputStream().write(frame("MSH|refused"));
+			Assert.assertEquals(-1, refused.getInputStream().read());
+		}
+		catch (SocketException ex) {
+			// the connection may be reset instead of closed
+		}
+		finally {
+			refused.close();
+		}
+		
+		Assert.assertTrue(server.isRunning());
+	}
+	
+	/**
+	 * @see MllpServer#start(int)
+	 * @verifies acknowledge all messages sent while the handler is busy
+	 */
+	@Test
+	public void start_shouldAcknowledgeAllMessagesSentWhileTheHandlerIsBusy() throws Exception {
+		final CountDownLatch handling = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		MllpServer busy = new MllpServer(new MllpServer.Handler() {
+			
+			@Override
+			public String handle(String message) {
+				handling.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return "ACK " + message;
+			}
+		}, UTF8);
+		busy.start(0);
+		Socket client = new Socket(busy.getAddress(), busy.getPort());
+		try {
+			client.setSoTimeout(10000);
+			OutputStream out = client.getOutputStream();
+			out.write(frame("MSH|0"));
+			out.flush();
+			Assert.assertTrue(handling.await(10, TimeUnit.SECONDS));
+			
+			// more than the handler queues, while it is stuck on the first message
+			int count = MllpServer.MAX_QUEUED_MESSAGES * 3;
+			ByteArrayOutputStream messages = new ByteArrayOutputStream();
+			for (int i = 1; i <= count; i++) {
+				messages.write(frame("MSH|" + i));
+			}
+			out.write(messages.toByteArray());
+			out.flush();
+			release.countDown();
+			
+			InputStream in = client.getInputStream();
+			for (int i = 0; i <= count; i++) {
+				Assert.assertEquals("ACK MSH|" + i, readFrame(in));
+			}
+		}
+		finally {
+			release.countDown();
+			client.close();
+			busy.stop();
+		}
+	}
+	
+	private byte[] frame(String message) throws Exception {
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		frame.write(MllpServer.START_BLOCK);
+		frame.write(message.getBytes(UTF8));
+		frame.write(MllpServer.END_BLOCK);
+		frame.write(MllpServer.CARRIAGE_RETURN);
+		return frame.toByteArray();
+	}
+	
+	private String readFrame(InputStream in) throws Exception {
+		Assert.assertEquals(MllpServer.START_BLOCK, in.read());
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != MllpServer.END_BLOCK) {
+			Assert.assertTrue("The acknowledgment was not terminated", b >= 0);
+			message.write(b);
+		}
+		Assert.assertEquals(MllpServer.CARRIAGE_RETURN, in.read());
+		return new String(message.toByteArray(), UTF8);
+	}
+}
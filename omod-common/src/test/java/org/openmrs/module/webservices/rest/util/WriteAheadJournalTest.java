@@ -0,0 +1,156 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.util;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Entry;
+import org.openmrs.module.webservices.rest.util.WriteAheadJournal.Status;
+
+/**
+ * Tests functionality of {@link WriteAheadJournal}.
+ */
+public class WriteAheadJournalTest {
+	
+	private static final int CAPACITY = 64 * 1024;
+	
+	private File file;
+	
+	private WriteAheadJournal journal;
+	
+	@Before
+	public void before() throws Exception {
+		file = File.createTempFile("journal", ".dat");
+		file.delete();
+		journal = new WriteAheadJournal(file, CAPACITY);
+	}
+	
+	@After
+	public void after() throws Exception {
+		journal.close();
+		file.delete();
+	}
+	
+	/**
+	 * @see WriteAheadJournal#WriteAheadJournal(File,int)
+	 * @verifies keep pending entries when reopened
+	 */
+	@Test
+	public void WriteAheadJournal_shouldKeepPendingEntriesWhenReopened() throws Exception {
+		Entry first = journal.append("v1/encounter", "admin", "{\"patient\":\"1\"}");
+		Entry second = journal.append("v1/obs", null, "{\"value\":\"\u00e9\"}");
+		journal.close();
+		
+		journal = new WriteAheadJournal(file, CAPACITY);
+		
+		Assert.assertEquals(2, journal.getPending().size());
+		Entry replayed = journal.getPending().get(0);
+		Assert.assertEquals(first.getUuid(), replayed.getUuid());
+		Assert.assertEquals("v1/encounter", replayed.getResource());
+		Assert.assertEquals("admin", replayed.getUser());
+		Assert.assertEquals(first.getDateReceived(), replayed.getDateReceived());
+		Assert.assertEquals(Status.PENDING, replayed.getStatus());
+		Assert.assertNull(journal.getPending().get(1).getUser());
+		Assert.assertEquals(second.getPayload(), journal.getEntry(second.getUuid()).getPayload());
+	}
+	
+	/**
+	 * @see WriteAheadJournal#resolve(Entry,Status,String)
+	 * @verifies not replay resolved entries when reopened
+	 */
+	@Test
+	public void resolve_shouldNotReplayResolvedEntriesWhenReopened() throws Exception {
+		Entry applied = journal.append("v1/encounter", "admin", "{}");
+		Entry failed = journal.append("v1/encounter", "admin", "{}");
+		Entry pending = journal.append("v1/encounter", "admin", "{}");
+		journal.resolve(applied, Status.APPLIED, "uuid of the encounter");
+		journal.resolve(failed, Status.FAILED, "error");
+		journal.close();
+		
+		journal = new WriteAheadJournal(file, CAPACITY);
+		
+		Assert.assertEquals(1, journal.getPending().size());
+		Assert.assertEquals(pending.getUuid(), journal.getPending().get(0).getUuid());
+		Assert.assertEquals(Status.APPLIED, journal.getEntry(applied.getUuid()).getStatus());
+		Assert.assertEquals("uuid of the encounter", journal.getEntry(applied.getUuid()).getResult());
+		Assert.assertEquals(Status.FAILED, journal.getEntry(failed.getUuid()).getStatus());
+	}
+	
+	/**
+	 * @see WriteAheadJournal#WriteAheadJournal(File,int)
+	 * @verifies ignore a partly written record
+	 */
+	@Test
+	public void WriteAheadJournal_shouldIgnoreAPartlyWrittenRecord() throws Exception {
+		Entry complete = journal.append("v1/obs", "admin", "{}");
+		journal.append("v1/obs", "admin", "{}");
+		journal.close();
+		
+		// damage the second record, which starts after the length, body and checksum of the first
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			int second = 4 + raf.readInt() + 4;
+			raf.seek(second + 10);
+			byte damaged = (byte) (raf.readByte() ^ 0xff);
+			raf.seek(second + 10);
+			raf.writeByte(damaged);
+		}
+		finally {
+			raf.close();
+		}
+		
+		journal = new WriteAheadJournal(file, CAPACITY);
+		
+		Assert.assertEquals(1, journal.getPending().size());
+		Assert.assertEquals(complete.getUuid(), journal.getPending().get(0).getUuid());
+		Assert.assertNotNull(journal.append("v1/obs", "admin", "{}"));
+	}
+	
+	/**
+	 * @see WriteAheadJournal#append(String,String,String)
+	 * @verifies replace the file with the pending entries when it is full
+	 */
+	@Test
+	public void append_shouldReplaceTheFileWithThePendingEntriesWhenItIsFull() throws Exception {
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		String payload = new String(chars);
+		
+		Entry kept = journal.append("v1/obs", "admin", payload);
+		// many times what fits in the file, but only a few of them pending at a time
+		for (int i = 0; i < 1000; i++) {
+			Entry entry = journal.append("v1/obs", "admin", payload);
+			Assert.assertNotNull(entry);
+			journal.resolve(entry, Status.APPLIED, null);
+		}
+		journal.close();
+		journal = new WriteAheadJournal(file, CAPACITY);
+		Assert.assertEquals(1, journal.getPending().size());
+		Assert.assertEquals(kept.getUuid(), journal.getPending().get(0).getUuid());
+		
+		// until all pending entries do not fit anymore
+		Entry entry;
+		int appended = 0;
+		while ((entry = journal.append("v1/obs", "admin", payload)) != null) {
+			appended++;
+		}
+		Assert.assertTrue(appended > 0 && appended < CAPACITY / 1000);
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Tests functionality of {@link CacheControlPolicy}.
+ */
+public class CacheControlPolicyTest extends BaseModuleWebContextSensitiveTest {
+	
+	private void setPolicies(String value) {
+		GlobalProperty gp = new GlobalProperty(RestConstants.CACHE_CONTROL_GLOBAL_PROPERTY_NAME, value);
+		Context.getAdministrationService().saveGlobalProperty(gp);
+		new RestUtil().globalPropertyChanged(gp);
+	}
+	
+	@After
+	public void resetPolicies() {
+		RestConfiguration.reset();
+	}
+	
+	/**
+	 * @see CacheControlPolicy#getPolicy(String,boolean)
+	 * @verifies return the configured policy of a resource
+	 */
+	@Test
+	public void getPolicy_shouldReturnTheConfiguredPolicyOfAResource() throws Exception {
+		setPolicies("location=public, max-age=3600; Patient=no-store;person/name=");
+		
+		Assert.assertEquals("public, max-age=3600", CacheControlPolicy.getPolicy("location", true));
+		Assert.assertEquals("no-store", CacheControlPolicy.getPolicy("patient", false));
+		Assert.assertEquals("", CacheControlPolicy.getPolicy("person/name", false));
+	}
+	
+	/**
+	 * @see CacheControlPolicy#getPolicy(String,boolean)
+	 * @verifies return the default policies for resources that are not configured
+	 */
+	@Test
+	public void getPolicy_shouldReturnTheDefaultPoliciesForResourcesThatAreNotConfigured() throws Exception {
+		setPolicies("default.data=no-store");
+		
+		Assert.assertEquals(CacheControlPolicy.DEFAULT_METADATA_POLICY, CacheControlPolicy.getPolicy("encountertype", true));
+		Assert.assertEquals("no-store", CacheControlPolicy.getPolicy("obs", false));
+	}
+}
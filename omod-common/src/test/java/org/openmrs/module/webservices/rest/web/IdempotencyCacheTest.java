@@ -0,0 +1,232 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.response.ConflictException;
+import org.openmrs.module.webservices.rest.web.response.IllegalRequestException;
+import org.openmrs.module.webservices.rest.web.response.ObjectNotFoundException;
+import org.openmrs.module.webservices.rest.web.response.ResponseException;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests functionality of {@link IdempotencyCache}.
+ */
+public class IdempotencyCacheTest extends BaseModuleWebContextSensitiveTest {
+	
+	/**
+	 * Creates a new object on every call
+	 */
+	private static class CountingWrite implements IdempotencyCache.Write {
+		
+		int count = 0;
+		
+		@Override
+		public Object write(HttpServletResponse response) throws ResponseException {
+			count++;
+			response.setStatus(HttpServletResponse.SC_CREATED);
+			response.addHeader("Location", "http://localhost/ws/rest/v1/location/" + count);
+			return new SimpleObject().add("uuid", String.valueOf(count));
+		}
+	}
+	
+	@After
+	public void after() throws Exception {
+		IdempotencyCache.clear();
+	}
+	
+	private MockHttpServletRequest request(String key) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/ws/rest/v1/location");
+		request.addHeader(RestConstants.HEADER_IDEMPOTENCY_KEY, key);
+		return request;
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies replay the response to a request with the same key
+	 */
+	@Test
+	public void execute_shouldReplayTheResponseToARequestWithTheSameKey() throws Exception {
+		CountingWrite write = new CountingWrite();
+		SimpleObject post = new SimpleObject().add("name", "Xanadu");
+		
+		Object first = IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, write);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		Object replayed = IdempotencyCache.execute(request("key"), response, new SimpleObject().add("name", "Xanadu"),
+		    write);
+		
+		Assert.assertEquals(1, write.count);
+		Assert.assertEquals(first, replayed);
+		Assert.assertEquals(HttpServletResponse.SC_CREATED, response.getStatus());
+		Assert.assertEquals("http://localhost/ws/rest/v1/location/1", response.getHeader("Location"));
+		Assert.assertEquals("true", response.getHeader(RestConstants.HEADER_IDEMPOTENT_REPLAYED));
+		
+		IdempotencyCache.execute(request("other key"), new MockHttpServletResponse(), post, write);
+		Assert.assertEquals(2, write.count);
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies reject a key reused for a different request
+	 */
+	@Test(expected = ConflictException.class)
+	public void execute_shouldRejectAKeyReusedForADifferentRequest() throws Exception {
+		CountingWrite write = new CountingWrite();
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), new SimpleObject().add("name", "Xanadu"),
+		    write);
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), new SimpleObject().add("name", "Unknown"),
+		    write);
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies not remember failed requests
+	 */
+	@Test
+	public void execute_shouldNotRememberFailedRequests() throws Exception {
+		SimpleObject post = new SimpleObject().add("name", "Xanadu");
+		try {
+			IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, new IdempotencyCache.Write() {
+				
+				@Override
+				public Object write(HttpServletResponse response) throws ResponseException {
+					throw new ObjectNotFoundException();
+				}
+			});
+			Assert.fail("The failure should have been passed on");
+		}
+		catch (ObjectNotFoundException ex) {}
+		
+		CountingWrite write = new CountingWrite();
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, write);
+		Assert.assertEquals(1, write.count);
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies replay the response body as it was
+	 */
+	@Test
+	public void execute_shouldReplayTheResponseBodyAsItWas() throws Exception {
+		SimpleObject post = new SimpleObject().add("name", "Xanadu");
+		final SimpleObject body = new SimpleObject().add("uuid", "1").add("name", "Xanadu").add("links",
+		    Arrays.asList(new SimpleObject().add("rel", "self").add("uri", "http://localhost/ws/rest/v1/location/1")));
+		IdempotencyCache.Write write = new IdempotencyCache.Write() {
+			
+			@Override
+			public Object write(HttpServletResponse response) throws ResponseException {
+				response.setDateHeader("Last-Modified", 1000000L);
+				response.setIntHeader("X-Count", 1);
+				return body;
+			}
+		};
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, write);
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		Object replayed = IdempotencyCache.execute(request("key"), response, post, write);
+		
+		Assert.assertTrue(replayed instanceof SimpleObject);
+		Assert.assertEquals(new ObjectMapper().writeValueAsString(body), new ObjectMapper().writeValueAsString(replayed));
+		Assert.assertEquals(1000000L, response.getHeader("Last-Modified"));
+		Assert.assertEquals(1, response.getHeader("X-Count"));
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies not remember responses with a body that is too long
+	 */
+	@Test
+	public void execute_shouldNotRememberResponsesWithABodyThatIsTooLong() throws Exception {
+		final String description = StringUtils.repeat("x", IdempotencyCache.MAX_BODY_LENGTH);
+		final int[] count = { 0 };
+		IdempotencyCache.Write write = new IdempotencyCache.Write() {
+			
+			@Override
+			public Object write(HttpServletResponse response) throws ResponseException {
+				count[0]++;
+				return new SimpleObject().add("uuid", "1").add("description", description);
+			}
+		};
+		SimpleObject post = new SimpleObject().add("name", "Xanadu");
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, write);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		IdempotencyCache.execute(request("key"), response, post, write);
+		
+		Assert.assertEquals(2, count[0]);
+		Assert.assertNull(response.getHeader(RestConstants.HEADER_IDEMPOTENT_REPLAYED));
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies reject a key that is too long
+	 */
+	@Test(expected = IllegalRequestException.class)
+	public void execute_shouldRejectAKeyThatIsTooLong() throws Exception {
+		IdempotencyCache.execute(request(StringUtils.repeat("k", IdempotencyCache.MAX_KEY_LENGTH + 1)),
+		    new MockHttpServletResponse(), new SimpleObject().add("name", "Xanadu"), new CountingWrite());
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies not remember requests that sent an error
+	 */
+	@Test
+	public void execute_shouldNotRememberRequestsThatSentAnError() throws Exception {
+		SimpleObject post = new SimpleObject().add("name", "Xanadu");
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, new IdempotencyCache.Write() {
+			
+			@Override
+			public Object write(HttpServletResponse response) throws ResponseException {
+				try {
+					response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				}
+				catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+				return null;
+			}
+		});
+		
+		CountingWrite write = new CountingWrite();
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), post, write);
+		Assert.assertEquals(1, write.count);
+	}
+	
+	/**
+	 * @see IdempotencyCache#execute(javax.servlet.http.HttpServletRequest,HttpServletResponse,SimpleObject,IdempotencyCache.Write)
+	 * @verifies treat bodies with the same properties in another order as the same request
+	 */
+	@Test
+	public void execute_shouldTreatBodiesWithTheSamePropertiesInAnotherOrderAsTheSameRequest() throws Exception {
+		CountingWrite write = new CountingWrite();
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), new SimpleObject().add("name", "Xanadu")
+		        .add("description", "Somewhere"), write);
+		IdempotencyCache.execute(request("key"), new MockHttpServletResponse(), new SimpleObject().add("description",
+		    "Somewhere").add("name", "Xanadu"), write);
+		
+		Assert.assertEquals(1, write.count);
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests functionality of {@link IpAllowList}.
+ */
+public class IpAllowListTest {
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies match addresses within any of the ranges
+	 */
+	@Test
+	public void compile_shouldMatchAddressesWithinAnyOfTheRanges() throws Exception {
+		IpAllowList allowList = IpAllowList.compile(Arrays.asList("10.0.0.0/30", "192.168.1.7", "2001:db8::/32"));
+		
+		Assert.assertTrue(allowList.matches("10.0.0.3"));
+		Assert.assertFalse(allowList.matches("10.0.0.4"));
+		Assert.assertTrue(allowList.matches("192.168.1.7"));
+		Assert.assertFalse(allowList.matches("192.168.1.8"));
+		Assert.assertTrue(allowList.matches("2001:db8:ffff::1"));
+		Assert.assertFalse(allowList.matches("2001:db9::1"));
+		Assert.assertTrue(allowList.matches("::ffff:10.0.0.1"));
+	}
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies match the first and last address of a range
+	 */
+	@Test
+	public void compile_shouldMatchTheFirstAndLastAddressOfARange() throws Exception {
+		IpAllowList allowList = IpAllowList.compile(Arrays.asList("10.0.0.0/30", "172.16.0.5/31", "2001:db8::/32"));
+		
+		Assert.assertFalse(allowList.matches("9.255.255.255"));
+		Assert.assertTrue(allowList.matches("10.0.0.0"));
+		Assert.assertTrue(allowList.matches("10.0.0.3"));
+		Assert.assertFalse(allowList.matches("10.0.0.4"));
+		Assert.assertFalse(allowList.matches("172.16.0.3"));
+		Assert.assertTrue(allowList.matches("172.16.0.4"));
+		Assert.assertTrue(allowList.matches("172.16.0.5"));
+		Assert.assertFalse(allowList.matches("172.16.0.6"));
+		Assert.assertFalse(allowList.matches("2001:db7:ffff:ffff:ffff:ffff:ffff:ffff"));
+		Assert.assertTrue(allowList.matches("2001:db8::"));
+		Assert.assertTrue(allowList.matches("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+		Assert.assertFalse(allowList.matches("2001:db9::"));
+	}
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies match every address of the family for a zero mask
+	 */
+	@Test
+	public void compile_shouldMatchEveryAddressOfTheFamilyForAZeroMask() throws Exception {
+		IpAllowList ipv4 = IpAllowList.compile(Arrays.asList("0.0.0.0/0"));
+		Assert.assertTrue(ipv4.matches("0.0.0.0"));
+		Assert.assertTrue(ipv4.matches("255.255.255.255"));
+		Assert.assertTrue(ipv4.matches("::ffff:192.168.1.1"));
+		Assert.assertFalse(ipv4.matches("2001:db8::1"));
+		
+		IpAllowList ipv6 = IpAllowList.compile(Arrays.asList("::/0"));
+		Assert.assertTrue(ipv6.matches("::"));
+		Assert.assertTrue(ipv6.matches("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+		Assert.assertFalse(ipv6.matches("192.168.1.1"));
+	}
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies match only the address itself for a full mask
+	 */
+	@Test
+	public void compile_shouldMatchOnlyTheAddressItselfForAFullMask() throws Exception {
+		IpAllowList allowList = IpAllowList.compile(Arrays.asList("192.168.1.7/32", "2001:db8::1/128"));
+		
+		Assert.assertTrue(allowList.matches("192.168.1.7"));
+		Assert.assertFalse(allowList.matches("192.168.1.6"));
+		Assert.assertFalse(allowList.matches("192.168.1.8"));
+		Assert.assertTrue(allowList.matches("2001:db8::1"));
+		Assert.assertTrue(allowList.matches("2001:0db8:0000:0000:0000:0000:0000:0001"));
+		Assert.assertFalse(allowList.matches("2001:db8::"));
+		Assert.assertFalse(allowList.matches("2001:db8::2"));
+	}
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies keep a broader range added after a narrower one
+	 */
+	@Test
+	public void compile_shouldKeepABroaderRangeAddedAfterANarrowerOne() throws Exception {
+		IpAllowList narrowFirst = IpAllowList.compile(Arrays.asList("10.1.2.0/24", "10.0.0.0/8"));
+		IpAllowList broadFirst = IpAllowList.compile(Arrays.asList("10.0.0.0/8", "10.1.2.0/24"));
+		
+		for (IpAllowList allowList : Arrays.asList(narrowFirst, broadFirst)) {
+			Assert.assertTrue(allowList.matches("10.1.2.3"));
+			Assert.assertTrue(allowList.matches("10.200.0.1"));
+			Assert.assertFalse(allowList.matches("11.1.2.3"));
+		}
+	}
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies fail for an invalid mask
+	 */
+	@Test
+	public void compile_shouldFailForAnInvalidMask() throws Exception {
+		for (String candidate : Arrays.asList("10.0.0.0/33", "10.0.0.0/-1", "10.0.0.0/x", "2001:db8::/129")) {
+			try {
+				IpAllowList.compile(Arrays.asList(candidate));
+				Assert.fail("Expected " + candidate + " to be rejected");
+			}
+			catch (IllegalArgumentException ex) {}
+		}
+	}
+	
+	/**
+	 * @see IpAllowList#compile(List)
+	 * @verifies fail for a malformed ip
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void compile_shouldFailForAMalformedIp() throws Exception {
+		IpAllowList.compile(Arrays.asList("2001:db8::1::2/64"));
+	}
+	
+	/**
+	 * @see IpAllowList#matches(String)
+	 * @verifies allow every address if the list is empty
+	 */
+	@Test
+	public void matches_shouldAllowEveryAddressIfTheListIsEmpty() throws Exception {
+		IpAllowList allowList = IpAllowList.compile(new ArrayList<String>());
+		
+		Assert.assertTrue(allowList.matches("10.0.0.1"));
+		Assert.assertTrue(allowList.matches("2001:db8::1"));
+	}
+	
+	/**
+	 * @see IpAllowList#matches(String)
+	 * @verifies fail for malformed addresses
+	 */
+	@Test
+	public void matches_shouldFailForMalformedAddresses() throws Exception {
+		IpAllowList allowList = IpAllowList.compile(Arrays.asList("0.0.0.0/0", "::/0"));
+		for (String ip : Arrays.asList("", "10.0.0", "10.0.0.256", "10.0.0.1.2", "1::2::3", "12345::1", "1:2:3:4:5:6:7:8:9",
+		    "::ffff:10.0.0.256")) {
+			try {
+				allowList.matches(ip);
+				Assert.fail("Expected " + ip + " to be rejected");
+			}
+			catch (IllegalArgumentException ex) {}
+		}
+	}
+	
+	/**
+	 * @see IpAllowList#matches(String)
+	 * @verifies not resolve host names
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void matches_shouldNotResolveHostNames() throws Exception {
+		IpAllowList.compile(Arrays.asList("127.0.0.1")).matches("localhost");
+	}
+}
@@ -13,8 +13,10 @@
  */
 package org.openmrs.module.webservices.rest.web;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.api.APIException;
+import org.springframework.mock.web.MockHttpServletRequest;
 
 public class RequestContextTest {
 	
@@ -36,4 +38,48 @@ public class RequestContextTest {
 		new RequestContext().setLimit(null);
 	}
 	
+	/**
+	 * @see RequestContext#isReturnMinimal()
+	 * @verifies return true for a prefer header asking for a minimal return
+	 */
+	@Test
+	public void isReturnMinimal_shouldReturnTrueForAPreferHeaderAskingForAMinimalReturn() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(RestConstants.HEADER_PREFER, "respond-async, return = minimal");
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		
+		Assert.assertTrue(context.isReturnMinimal());
+	}
+	
+	/**
+	 * @see RequestContext#isReturnMinimal()
+	 * @verifies return false if no minimal return was asked for
+	 */
+	@Test
+	public void isReturnMinimal_shouldReturnFalseIfNoMinimalReturnWasAskedFor() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(RestConstants.HEADER_PREFER, "return=representation");
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		
+		Assert.assertFalse(context.isReturnMinimal());
+		Assert.assertFalse(new RequestContext().isReturnMinimal());
+	}
+	
+	/**
+	 * @see RequestContext#isRespondAsync()
+	 * @verifies return true for a prefer header asking for an asynchronous response
+	 */
+	@Test
+	public void isRespondAsync_shouldReturnTrueForAPreferHeaderAskingForAnAsynchronousResponse() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(RestConstants.HEADER_PREFER, "return=minimal; respond-async");
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		
+		Assert.assertTrue(context.isRespondAsync());
+		Assert.assertFalse(new RequestContext().isRespondAsync());
+	}
+	
 }
@@ -0,0 +1,56 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Tests functionality of {@link ResourcePrivileges}.
+ */
+public class ResourcePrivilegesTest extends BaseModuleWebContextSensitiveTest {
+	
+	/**
+	 * @see ResourcePrivileges#canView(Class)
+	 * @verifies return false if no service method is known
+	 */
+	@Test
+	public void canView_shouldReturnFalseIfNoServiceMethodIsKnown() throws Exception {
+		Assert.assertFalse(ResourcePrivileges.canView(SimpleObject.class));
+	}
+	
+	/**
+	 * @see ResourcePrivileges#canView(Class)
+	 * @verifies return true if the user may retrieve objects of the class
+	 */
+	@Test
+	public void canView_shouldReturnTrueIfTheUserMayRetrieveObjectsOfTheClass() throws Exception {
+		Assert.assertTrue(ResourcePrivileges.canView(Location.class));
+	}
+	
+	/**
+	 * @see ResourcePrivileges#requireCreate(Class)
+	 * @verifies reject an anonymous user
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void requireCreate_shouldRejectAnAnonymousUser() throws Exception {
+		Context.logout();
+		ResourcePrivileges.requireCreate(Location.class);
+	}
+}
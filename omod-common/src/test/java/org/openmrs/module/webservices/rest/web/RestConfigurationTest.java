@@ -0,0 +1,68 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Tests functionality of {@link RestConfiguration}.
+ */
+public class RestConfigurationTest extends BaseModuleWebContextSensitiveTest {
+	
+	@After
+	public void resetConfiguration() {
+		RestConfiguration.reset();
+	}
+	
+	/**
+	 * @see RestConfiguration#reset()
+	 * @verifies load the changed values when next needed
+	 */
+	@Test
+	public void reset_shouldLoadTheChangedValuesWhenNextNeeded() throws Exception {
+		RestConfiguration before = RestConfiguration.get();
+		Assert.assertSame(before, RestConfiguration.get());
+		Assert.assertEquals(RestConstants.MAX_RESULTS_DEFAULT.intValue(), before.getDefaultLimit());
+		
+		GlobalProperty gp = new GlobalProperty(RestConstants.MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME, "7");
+		Context.getAdministrationService().saveGlobalProperty(gp);
+		new RestUtil().globalPropertyChanged(gp);
+		
+		RestConfiguration after = RestConfiguration.get();
+		Assert.assertNotSame(before, after);
+		Assert.assertEquals(7, after.getDefaultLimit());
+		Assert.assertEquals(7, new RequestContext().getLimit().intValue());
+	}
+	
+	/**
+	 * @see RestConfiguration#get()
+	 * @verifies load the snapshot when no user is authenticated
+	 */
+	@Test
+	public void get_shouldLoadTheSnapshotWhenNoUserIsAuthenticated() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(RestConstants.MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME, "7"));
+		RestConfiguration.reset();
+		Context.logout();
+		
+		Assert.assertEquals(7, RestConfiguration.get().getDefaultLimit());
+		Assert.assertFalse(Context.hasPrivilege(PrivilegeConstants.VIEW_GLOBAL_PROPERTIES));
+	}
+}
@@ -14,15 +14,19 @@
 package org.openmrs.module.webservices.rest.web;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.RestUtil;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 /**
  * Tests for the {@link RestUtil} class.
@@ -138,4 +142,75 @@ public class RestUtilTest {
 		    includeAllParam));
 	}
 	
+	/**
+	 * @see RestUtil#isNotModified(String,RequestContext)
+	 * @verifies return true and set the status if the request has a matching If-None-Match header
+	 */
+	@Test
+	public void isNotModified_shouldReturnTrueAndSetTheStatusIfTheRequestHasAMatchingIfNoneMatchHeader()
+	        throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/v1/location/uuid");
+		request.addHeader(RestConstants.HEADER_IF_NONE_MATCH, "\"other\", W/\"uuid-1\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		context.setResponse(response);
+		
+		Assert.assertTrue(RestUtil.isNotModified("\"uuid-1\"", context));
+		Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		Assert.assertEquals("\"uuid-1\"", response.getHeader(RestConstants.HEADER_ETAG));
+		Assert.assertFalse(RestUtil.isNotModified("\"uuid-2\"", context));
+	}
+	
+	/**
+	 * @see RestUtil#isNotModified(String,RequestContext)
+	 * @verifies return false for requests other than GET
+	 */
+	@Test
+	public void isNotModified_shouldReturnFalseForRequestsOtherThanGET() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/rest/v1/batch");
+		request.addHeader(RestConstants.HEADER_IF_NONE_MATCH, "\"uuid-1\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		context.setResponse(response);
+		
+		Assert.assertFalse(RestUtil.isNotModified("\"uuid-1\"", context));
+		Assert.assertNull(response.getHeader(RestConstants.HEADER_ETAG));
+	}
+	
+	/**
+	 * @see RestUtil#isNotModified(String,Date,RequestContext)
+	 * @verifies return true if the request has a later If-Modified-Since header
+	 */
+	@Test
+	public void isNotModified_shouldReturnTrueIfTheRequestHasALaterIfModifiedSinceHeader() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/v1/location");
+		request.addHeader(RestConstants.HEADER_IF_MODIFIED_SINCE, new Date(2000000L));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		RequestContext context = new RequestContext();
+		context.setRequest(request);
+		context.setResponse(response);
+		
+		Assert.assertTrue(RestUtil.isNotModified("\"1-1e8480\"", new Date(1999999L), context));
+		Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		Assert.assertFalse(RestUtil.isNotModified("\"1-1e8480\"", new Date(3000000L), context));
+	}
+	
+	/**
+	 * @see RestUtil#created(HttpServletResponse,Object)
+	 * @verifies not add a second Location header
+	 */
+	@Test
+	public void created_shouldNotAddASecondLocationHeader() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		response.setHeader("Location", "http://localhost/ws/rest/v1/location/1");
+		
+		RestUtil.created(response, new SimpleObject().add("uri", "http://localhost/ws/rest/v1/location/2"));
+		
+		Assert.assertEquals(HttpServletResponse.SC_CREATED, response.getStatus());
+		Assert.assertEquals(1, response.getHeaders("Location").size());
+		Assert.assertEquals("http://localhost/ws/rest/v1/location/1", response.getHeader("Location"));
+	}
+	
 }
@@ -0,0 +1,61 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.Location;
+
+/**
+ * Tests functionality of {@link UuidResolutionCache}.
+ */
+public class UuidResolutionCacheTest {
+	
+	/**
+	 * @see UuidResolutionCache#contains(Class,String)
+	 * @verifies return false if the cache is not open
+	 */
+	@Test
+	public void contains_shouldReturnFalseIfTheCacheIsNotOpen() throws Exception {
+		UuidResolutionCache.put(Concept.class, "uuid", new Concept());
+		
+		Assert.assertFalse(UuidResolutionCache.contains(Concept.class, "uuid"));
+		Assert.assertNull(UuidResolutionCache.get(Concept.class, "uuid"));
+	}
+	
+	/**
+	 * @see UuidResolutionCache#put(Class,String,Object)
+	 * @verifies keep resolved objects until the outermost open is closed
+	 */
+	@Test
+	public void put_shouldKeepResolvedObjectsUntilTheOutermostOpenIsClosed() throws Exception {
+		Concept concept = new Concept();
+		UuidResolutionCache.open();
+		try {
+			UuidResolutionCache.open();
+			UuidResolutionCache.put(Concept.class, "uuid", concept);
+			UuidResolutionCache.put(Location.class, "unknown", null);
+			UuidResolutionCache.close();
+			
+			Assert.assertSame(concept, UuidResolutionCache.get(Concept.class, "uuid"));
+			Assert.assertFalse(UuidResolutionCache.contains(Location.class, "uuid"));
+			Assert.assertTrue(UuidResolutionCache.contains(Location.class, "unknown"));
+		}
+		finally {
+			UuidResolutionCache.close();
+		}
+		Assert.assertFalse(UuidResolutionCache.contains(Concept.class, "uuid"));
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.User;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Tests functionality of {@link BasicAuthCacheAdvice}.
+ */
+public class BasicAuthCacheAdviceTest extends BaseModuleWebContextSensitiveTest {
+	
+	/**
+	 * Like the user service of core versions that notify privilege listeners on every check
+	 */
+	private interface PrivilegeListeners {
+		
+		void notifyPrivilegeListeners(User user, String privilege, boolean hasPrivilege);
+	}
+	
+	@After
+	public void revokeTokens() {
+		SessionTokens.revokeAll();
+	}
+	
+	/**
+	 * @see BasicAuthCacheAdvice#afterReturning(Object,Method,Object[],Object)
+	 * @verifies revoke the tokens of a saved user
+	 */
+	@Test
+	public void afterReturning_shouldRevokeTheTokensOfASavedUser() throws Exception {
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), null, 60000);
+		User user = Context.getAuthenticatedUser();
+		
+		new BasicAuthCacheAdvice().afterReturning(user, UserService.class.getMethod("saveUser", User.class, String.class),
+		    new Object[] { user, null }, null);
+		Assert.assertNull(SessionTokens.get(token));
+	}
+	
+	/**
+	 * @see BasicAuthCacheAdvice#afterReturning(Object,Method,Object[],Object)
+	 * @verifies keep the tokens when privileges are checked
+	 */
+	@Test
+	public void afterReturning_shouldKeepTheTokensWhenPrivilegesAreChecked() throws Exception {
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), null, 60000);
+		User user = Context.getAuthenticatedUser();
+		
+		Context.hasPrivilege("Some Privilege");
+		new BasicAuthCacheAdvice().afterReturning(null, PrivilegeListeners.class.getMethod("notifyPrivilegeListeners",
+		    User.class, String.class, boolean.class), new Object[] { user, "Some Privilege", true }, null);
+		Assert.assertEquals(user, SessionTokens.get(token).getAuthenticatedUser());
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Tests functionality of {@link BasicAuthCache}.
+ */
+public class BasicAuthCacheTest extends BaseModuleWebContextSensitiveTest {
+	
+	private static final String AUTHORIZATION = "Basic YWRtaW46dGVzdA==";
+	
+	private static final String PRIVILEGE = "Privilege Proxied For Another Request";
+	
+	@After
+	public void clearCache() {
+		BasicAuthCache.invalidateAll();
+	}
+	
+	/**
+	 * @see BasicAuthCache#get(String)
+	 * @verifies return an authenticated context until it expires
+	 */
+	@Test
+	public void get_shouldReturnAnAuthenticatedContextUntilItExpires() throws Exception {
+		String key = BasicAuthCache.getKey(AUTHORIZATION);
+		Assert.assertFalse(key.contains("YWRtaW46dGVzdA"));
+		Assert.assertEquals(key, BasicAuthCache.getKey(AUTHORIZATION));
+		
+		BasicAuthCache.put(key, Context.getAuthenticatedUser(), 60000);
+		UserContext userContext = BasicAuthCache.get(key);
+		Assert.assertNotSame(Context.getUserContext(), userContext);
+		Assert.assertEquals(Context.getAuthenticatedUser(), userContext.getAuthenticatedUser());
+		Assert.assertNotSame(userContext, BasicAuthCache.get(key));
+		
+		BasicAuthCache.put(key, Context.getAuthenticatedUser(), -1);
+		Assert.assertNull(BasicAuthCache.get(key));
+	}
+	
+	/**
+	 * @see BasicAuthCache#get(String)
+	 * @verifies not let proxy privileges leak between requests
+	 */
+	@Test
+	public void get_shouldNotLetProxyPrivilegesLeakBetweenRequests() throws Exception {
+		Person person = new Person();
+		person.addName(new PersonName("Proxy", null, "Tester"));
+		person.setGender("F");
+		User user = new User(person);
+		user.setUsername("proxytester");
+		user = Context.getUserService().saveUser(user, "Proxytest123");
+		String key = BasicAuthCache.getKey(AUTHORIZATION);
+		BasicAuthCache.put(key, user, 60000);
+		
+		// two requests with the same header, each checking the privilege before the other adds it
+		final UserContext[] userContexts = { BasicAuthCache.get(key), BasicAuthCache.get(key) };
+		final boolean[] hadPrivilege = new boolean[2];
+		for (UserContext userContext : userContexts) {
+			userContext.hasPrivilege(PRIVILEGE);
+		}
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		Thread[] requests = new Thread[2];
+		for (int i = 0; i < requests.length; i++) {
+			final int request = i;
+			requests[i] = new Thread() {
+				
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						if (request == 0)
+							userContexts[request].addProxyPrivilege(PRIVILEGE);
+						barrier.await();
+						hadPrivilege[request] = userContexts[request].hasPrivilege(PRIVILEGE);
+					}
+					catch (Exception ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+			};
+			requests[i].start();
+		}
+		for (Thread request : requests) {
+			request.join(10000);
+		}
+		
+		Assert.assertTrue(hadPrivilege[0]);
+		Assert.assertFalse(hadPrivilege[1]);
+		Assert.assertFalse(BasicAuthCache.get(key).hasPrivilege(PRIVILEGE));
+	}
+	
+	/**
+	 * @see BasicAuthCache#remove(String)
+	 * @verifies forget only the given header
+	 */
+	@Test
+	public void remove_shouldForgetOnlyTheGivenHeader() throws Exception {
+		String key = BasicAuthCache.getKey(AUTHORIZATION);
+		BasicAuthCache.put(key, Context.getAuthenticatedUser(), 60000);
+		
+		BasicAuthCache.remove(BasicAuthCache.getKey(AUTHORIZATION + "x"));
+		Assert.assertNotNull(BasicAuthCache.get(key));
+		BasicAuthCache.remove(key);
+		Assert.assertNull(BasicAuthCache.get(key));
+	}
+}
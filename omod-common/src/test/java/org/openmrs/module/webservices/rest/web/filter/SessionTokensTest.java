@@ -0,0 +1,94 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.filter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+
+/**
+ * Tests functionality of {@link SessionTokens}.
+ */
+public class SessionTokensTest extends BaseModuleWebContextSensitiveTest {
+	
+	@After
+	public void revokeTokens() {
+		SessionTokens.revokeAll();
+	}
+	
+	/**
+	 * @see SessionTokens#issue(User,String,long)
+	 * @verifies issue a token that stands for the user until it is revoked
+	 */
+	@Test
+	public void issue_shouldIssueATokenThatStandsForTheUserUntilItIsRevoked() throws Exception {
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), null, 60000);
+		Assert.assertNotSame(token, SessionTokens.issue(Context.getAuthenticatedUser(), null, 60000));
+		Assert.assertEquals(Context.getAuthenticatedUser(), SessionTokens.get(token).getAuthenticatedUser());
+		Assert.assertNull(SessionTokens.get(token + "x"));
+		
+		SessionTokens.revoke(token);
+		Assert.assertNull(SessionTokens.get(token));
+		Assert.assertNull(SessionTokens.get(SessionTokens.issue(Context.getAuthenticatedUser(), null, -1)));
+	}
+	
+	/**
+	 * @see SessionTokens#issue(User,String,long)
+	 * @verifies give every request with the token a context of its own
+	 */
+	@Test
+	public void issue_shouldGiveEveryRequestWithTheTokenAContextOfItsOwn() throws Exception {
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), null, 60000);
+		UserContext first = SessionTokens.get(token);
+		UserContext second = SessionTokens.get(token);
+		Assert.assertNotSame(first, second);
+		Assert.assertNotSame(Context.getUserContext(), first);
+		
+		first.logout();
+		Assert.assertEquals(Context.getAuthenticatedUser(), second.getAuthenticatedUser());
+		Assert.assertTrue(Context.isAuthenticated());
+	}
+	
+	/**
+	 * @see SessionTokens#revokeIssuedBy(String)
+	 * @verifies revoke only the tokens issued to the given client
+	 */
+	@Test
+	public void revokeIssuedBy_shouldRevokeOnlyTheTokensIssuedToTheGivenClient() throws Exception {
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), "session one", 60000);
+		String other = SessionTokens.issue(Context.getAuthenticatedUser(), "session two", 60000);
+		
+		SessionTokens.revokeIssuedBy("session one");
+		Assert.assertNull(SessionTokens.get(token));
+		Assert.assertNotNull(SessionTokens.get(other));
+	}
+	
+	/**
+	 * @see SessionTokens#revoke(User)
+	 * @verifies revoke only the tokens of the given user
+	 */
+	@Test
+	public void revoke_shouldRevokeOnlyTheTokensOfTheGivenUser() throws Exception {
+		String token = SessionTokens.issue(Context.getAuthenticatedUser(), null, 60000);
+		
+		SessionTokens.revoke(new User(4242));
+		Assert.assertNotNull(SessionTokens.get(token));
+		SessionTokens.revoke(Context.getAuthenticatedUser());
+		Assert.assertNull(SessionTokens.get(token));
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DelegatingResourceDescriptionTest {
+	
+	/**
+	 * @see DelegatingResourceDescription#getPropertyBinder()
+	 * @verifies index the properties only once
+	 */
+	@Test
+	public void getPropertyBinder_shouldIndexThePropertiesOnlyOnce() throws Exception {
+		DelegatingResourceDescription description = new DelegatingResourceDescription();
+		description.addRequiredProperty("name");
+		description.addProperty("description");
+		
+		PropertyBinder binder = description.getPropertyBinder();
+		Assert.assertSame(binder, description.getPropertyBinder());
+		Assert.assertEquals(2, binder.size());
+		Assert.assertTrue(binder.getRequired().get(binder.indexOf("name")));
+	}
+	
+	/**
+	 * @see DelegatingResourceDescription#getPropertyBinder()
+	 * @verifies index the properties again after they change
+	 */
+	@Test
+	public void getPropertyBinder_shouldIndexThePropertiesAgainAfterTheyChange() throws Exception {
+		DelegatingResourceDescription description = new DelegatingResourceDescription();
+		description.addProperty("name");
+		PropertyBinder binder = description.getPropertyBinder();
+		
+		description.removeProperty("name");
+		
+		Assert.assertNotSame(binder, description.getPropertyBinder());
+		Assert.assertEquals(-1, description.getPropertyBinder().indexOf("name"));
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.ObsService;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+/**
+ * Tests functionality of {@link MetadataResponseCacheAdvice}.
+ */
+public class MetadataResponseCacheAdviceTest {
+	
+	/**
+	 * @see MetadataResponseCacheAdvice#afterReturning(Object,Method,Object[],Object)
+	 * @verifies invalidate the cache when metadata is saved
+	 */
+	@Test
+	public void afterReturning_shouldInvalidateTheCacheWhenMetadataIsSaved() throws Exception {
+		MetadataResponseCache.put("location", new SimpleObject(), MetadataResponseCache.getGeneration());
+		
+		Location location = new Location();
+		new MetadataResponseCacheAdvice().afterReturning(location, LocationService.class.getMethod("saveLocation",
+		    Location.class), new Object[] { location }, null);
+		
+		Assert.assertNull(MetadataResponseCache.get("location"));
+	}
+	
+	/**
+	 * @see MetadataResponseCacheAdvice#afterReturning(Object,Method,Object[],Object)
+	 * @verifies not invalidate the cache when data is saved
+	 */
+	@Test
+	public void afterReturning_shouldNotInvalidateTheCacheWhenDataIsSaved() throws Exception {
+		SimpleObject location = new SimpleObject();
+		MetadataResponseCache.put("location", location, MetadataResponseCache.getGeneration());
+		
+		Obs obs = new Obs();
+		new MetadataResponseCacheAdvice().afterReturning(obs, ObsService.class.getMethod("saveObs", Obs.class,
+		    String.class), new Object[] { obs, null }, null);
+		
+		Assert.assertSame(location, MetadataResponseCache.get("location"));
+	}
+}
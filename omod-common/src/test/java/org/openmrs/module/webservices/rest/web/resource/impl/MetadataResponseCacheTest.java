@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.resource.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+/**
+ * Tests functionality of {@link MetadataResponseCache}.
+ */
+public class MetadataResponseCacheTest {
+	
+	/**
+	 * @see MetadataResponseCache#get(String)
+	 * @verifies return a cached representation until it is invalidated
+	 */
+	@Test
+	public void get_shouldReturnACachedRepresentationUntilItIsInvalidated() throws Exception {
+		SimpleObject location = new SimpleObject().add("name", "Xanadu");
+		MetadataResponseCache.put("location", location, MetadataResponseCache.getGeneration());
+		
+		Assert.assertSame(location, MetadataResponseCache.get("location"));
+		MetadataResponseCache.invalidateAll();
+		Assert.assertNull(MetadataResponseCache.get("location"));
+	}
+	
+	/**
+	 * @see MetadataResponseCache#put(String,SimpleObject,long)
+	 * @verifies not cache a value read before an invalidation
+	 */
+	@Test
+	public void put_shouldNotCacheAValueReadBeforeAnInvalidation() throws Exception {
+		long generation = MetadataResponseCache.getGeneration();
+		MetadataResponseCache.invalidateAll();
+		MetadataResponseCache.put("location", new SimpleObject(), generation);
+		
+		Assert.assertNull(MetadataResponseCache.get("location"));
+	}
+	
+	/**
+	 * @see MetadataResponseCache#getFragment(String)
+	 * @verifies return a copy of a cached fragment until it is invalidated
+	 */
+	@Test
+	public void getFragment_shouldReturnACopyOfACachedFragmentUntilItIsInvalidated() throws Exception {
+		SimpleObject ref = new SimpleObject().add("display", "Xanadu");
+		MetadataResponseCache.putFragment("location", ref, MetadataResponseCache.getGeneration());
+		ref.add("type", "changed after it was cached");
+		
+		SimpleObject cached = MetadataResponseCache.getFragment("location");
+		Assert.assertEquals("Xanadu", cached.get("display"));
+		Assert.assertFalse(cached.containsKey("type"));
+		cached.add("type", "changed by a caller");
+		Assert.assertFalse(MetadataResponseCache.getFragment("location").containsKey("type"));
+		
+		MetadataResponseCache.invalidateAll();
+		Assert.assertNull(MetadataResponseCache.getFragment("location"));
+	}
+}
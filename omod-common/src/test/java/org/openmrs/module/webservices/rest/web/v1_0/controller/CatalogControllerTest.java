@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.webservices.rest.web.v1_0.controller;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+
+public class CatalogControllerTest extends BaseModuleWebContextSensitiveTest {
+	
+	private CatalogController controller;
+	
+	@Before
+	public void before() {
+		controller = new CatalogController();
+	}
+	
+	/**
+	 * @see CatalogController#getResourceCatalog(String,HttpServletRequest,HttpServletResponse)
+	 * @verifies return a not modified status if the client has the current catalog
+	 */
+	@Test
+	public void getResourceCatalog_shouldReturnANotModifiedStatusIfTheClientHasTheCurrentCatalog() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		Object catalog = controller.getResourceCatalog(null, new MockHttpServletRequest("GET", "/catalog"), response);
+		Assert.assertNotNull(catalog);
+		String eTag = (String) response.getHeader("ETag");
+		Assert.assertNotNull(eTag);
+		
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog");
+		request.addHeader("If-None-Match", eTag);
+		response = new MockHttpServletResponse();
+		Assert.assertNull(controller.getResourceCatalog(null, request, response));
+		Assert.assertEquals(304, response.getStatus());
+		
+		response = new MockHttpServletResponse();
+		Assert.assertSame(catalog, controller.getResourceCatalog(null, new MockHttpServletRequest("GET", "/catalog"),
+		    response));
+		Assert.assertEquals(eTag, response.getHeader("ETag"));
+		
+		controller.onApplicationEvent(new ContextRefreshedEvent(new StaticWebApplicationContext()));
+		response = new MockHttpServletResponse();
+		Assert.assertNotSame(catalog, controller.getResourceCatalog(null, new MockHttpServletRequest("GET", "/catalog"),
+		    response));
+	}
+	
+	/**
+	 * @see CatalogController#getResourceCatalog(String,HttpServletRequest,HttpServletResponse)
+	 * @verifies not return a not modified status for the etag of another query
+	 */
+	@Test
+	public void getResourceCatalog_shouldNotReturnANotModifiedStatusForTheEtagOfAnotherQuery() throws Exception {
+		// "an" and "c0" have the same String.hashCode()
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.getResourceCatalog("c0", new MockHttpServletRequest("GET", "/catalog"), response);
+		String eTag = (String) response.getHeader("ETag");
+		
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/catalog");
+		request.addHeader("If-None-Match", eTag);
+		response = new MockHttpServletResponse();
+		Assert.assertNotNull(controller.getResourceCatalog("an", request, response));
+		Assert.assertFalse(eTag.equals(response.getHeader("ETag")));
+	}
+}
@@ -32,10 +32,12 @@ import javax.xml.xpath.XPathFactory;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.test.Util;
 import org.openmrs.module.webservices.rest.web.RestConstants;
+import org.openmrs.module.webservices.rest.web.resource.impl.MetadataResponseCache;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -57,6 +59,15 @@ public abstract class MainResourceControllerTest extends BaseModuleWebContextSen
 	@Autowired
 	private List<DefaultAnnotationHandlerMapping> handlerMappings;
 	
+	/**
+	 * Tests may load different data for the same uuids, so representations must not be cached
+	 * across them
+	 */
+	@Before
+	public void clearMetadataResponseCache() {
+		MetadataResponseCache.invalidateAll();
+	}
+	
 	/**
 	 * Creates a request from the given parameters.
 	 * <p>
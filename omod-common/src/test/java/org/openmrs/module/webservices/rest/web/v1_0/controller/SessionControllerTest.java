@@ -1,11 +1,16 @@
 package org.openmrs.module.webservices.rest.web.v1_0.controller;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.openmrs.module.webservices.rest.web.v1_0.controller.SessionController;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.webservices.rest.web.filter.BasicAuthCache;
+import org.openmrs.module.webservices.rest.web.filter.SessionTokens;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpSession;
@@ -30,16 +35,31 @@ public class SessionControllerTest extends BaseModuleWebContextSensitiveTest {
 	}
 	
 	/**
-	 * @see SessionController#delete()
+	 * @see SessionController#delete(HttpServletRequest)
 	 * @verifies log the client out
 	 */
 	@Test
 	public void delete_shouldLogTheClientOut() throws Exception {
 		Assert.assertTrue(Context.isAuthenticated());
-		controller.delete();
+		controller.delete(new MockHttpServletRequest());
 		Assert.assertFalse(Context.isAuthenticated());
 	}
 	
+	/**
+	 * @see SessionController#delete(HttpServletRequest)
+	 * @verifies forget the basic authorization header of the request
+	 */
+	@Test
+	public void delete_shouldForgetTheBasicAuthorizationHeaderOfTheRequest() throws Exception {
+		String authorization = "Basic YWRtaW46dGVzdA==";
+		BasicAuthCache.put(BasicAuthCache.getKey(authorization), Context.getAuthenticatedUser(), 60000);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Authorization", authorization);
+		
+		controller.delete(request);
+		Assert.assertNull(BasicAuthCache.get(BasicAuthCache.getKey(authorization)));
+	}
+	
 	/**
 	 * @see SessionController#get(WebRequest)
 	 * @verifies return the session id if the user is authenticated
@@ -64,4 +84,33 @@ public class SessionControllerTest extends BaseModuleWebContextSensitiveTest {
 		Assert.assertEquals(SESSION_ID, PropertyUtils.getProperty(ret, "sessionId"));
 		Assert.assertEquals(false, PropertyUtils.getProperty(ret, "authenticated"));
 	}
+	
+	/**
+	 * @see SessionController#post(HttpServletRequest)
+	 * @verifies issue a token for the authenticated user
+	 */
+	@Test
+	public void post_shouldIssueATokenForTheAuthenticatedUser() throws Exception {
+		HttpServletRequest session = ((ServletWebRequest) request).getRequest();
+		Object ret = controller.post(session);
+		String token = (String) PropertyUtils.getProperty(ret, "token");
+		Assert.assertNotNull(PropertyUtils.getProperty(ret, "expires"));
+		Assert.assertEquals(Context.getAuthenticatedUser(), SessionTokens.get(token).getAuthenticatedUser());
+		Assert.assertNotSame(Context.getUserContext(), SessionTokens.get(token));
+		
+		controller.delete(new MockHttpServletRequest());
+		Assert.assertNotNull(SessionTokens.get(token));
+		controller.delete(session);
+		Assert.assertNull(SessionTokens.get(token));
+	}
+	
+	/**
+	 * @see SessionController#post(HttpServletRequest)
+	 * @verifies fail if the user is not authenticated
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void post_shouldFailIfTheUserIsNotAuthenticated() throws Exception {
+		Context.logout();
+		controller.post(new MockHttpServletRequest());
+	}
 }
@@ -17,8 +17,8 @@ import java.io.IOException;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.openmrs.api.context.Context;
 import org.openmrs.module.webservices.docs.ResourceDocCreator;
+import org.openmrs.module.webservices.rest.web.RestConfiguration;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.response.ConversionException;
 import org.springframework.stereotype.Controller;
@@ -52,8 +52,7 @@ public class HelpController {
 		
 		baseUrl.append(request.getContextPath());
 		
-		String url = Context.getAdministrationService().getGlobalProperty(RestConstants.URI_PREFIX_GLOBAL_PROPERTY_NAME,
-		    baseUrl.toString());
+		String url = RestConfiguration.get().getProperty(RestConstants.URI_PREFIX_GLOBAL_PROPERTY_NAME, baseUrl.toString());
 		
 		url += "/ws";
 		
@@ -71,6 +71,9 @@ public class SettingsFormController {
 		props.add(RestConstants.ALLOWED_IPS_GLOBAL_PROPERTY_NAME);
 		props.add(RestConstants.MAX_RESULTS_DEFAULT_GLOBAL_PROPERTY_NAME);
 		props.add(RestConstants.MAX_RESULTS_ABSOLUTE_GLOBAL_PROPERTY_NAME);
+		props.add(RestConstants.CACHE_CONTROL_GLOBAL_PROPERTY_NAME);
+		props.add(RestConstants.BASIC_AUTH_CACHE_SECONDS_GLOBAL_PROPERTY_NAME);
+		props.add(RestConstants.SESSION_TOKEN_SECONDS_GLOBAL_PROPERTY_NAME);
 		
 		//remove the properties we dont want to edit
 		for (GlobalProperty gp : Context.getAdministrationService().getGlobalPropertiesByPrefix(RestConstants.MODULE_ID)) {